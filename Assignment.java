@@ -1,8 +1,13 @@
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
+import textbook.ArrayQueue;
+import textbook.BinaryTree;
 import textbook.LinkedBinaryTree;
-import textbook.LinkedQueue;
 import textbook.Position;
 
 public class Assignment {
@@ -32,10 +37,13 @@ public class Assignment {
 		if (expression == null) {
 			throw new IllegalArgumentException("Expression string was null");
 		}
-		// break up the expression string using spaces, into a queue
-		LinkedQueue<String> tokens = new LinkedQueue<String>();
-		for (String token : expression.split(" ")) {
-			tokens.enqueue(token);
+		// break up the expression string using spaces, into a queue (of canonical tokens, so repeated
+		// variables and values share one String), sized up front so it never has to grow (blank input
+		// splits into no parts, and is rejected below like any other invalid expression)
+		String[] parts = expression.split(" ");
+		ArrayQueue<String> tokens = new ArrayQueue<String>(Math.max(1, parts.length));
+		for (String token : parts) {
+			tokens.enqueue(Tokens.intern(token));
 		}
 		// recursively build the tree
 		return prefix2tree(tokens);
@@ -51,7 +59,7 @@ public class Assignment {
 	 * @throws IllegalArgumentException
 	 *             if expression was not a valid expression
 	 */
-	private static LinkedBinaryTree<String> prefix2tree(LinkedQueue<String> tokens) throws IllegalArgumentException {
+	private static LinkedBinaryTree<String> prefix2tree(ArrayQueue<String> tokens) throws IllegalArgumentException {
 		LinkedBinaryTree<String> tree = new LinkedBinaryTree<String>();
 
 		// use the next element of the queue to build the root
@@ -82,10 +90,21 @@ public class Assignment {
 	 * @param b
 	 * @return true if the trees have the same structure and values, false otherwise
 	 */
-	public static boolean equals(LinkedBinaryTree<String> a, LinkedBinaryTree<String> b) {
+	public static boolean equals(BinaryTree<String> a, BinaryTree<String> b) {
 		return equals(a, b, a.root(), b.root());
 	}
 	
+	/**
+	 * Test to see if two trees are identical, as equals(BinaryTree, BinaryTree) does
+	 * (kept for callers compiled against this signature)
+	 * @param a
+	 * @param b
+	 * @return true if the trees have the same structure and values, false otherwise
+	 */
+	public static boolean equals(LinkedBinaryTree<String> a, LinkedBinaryTree<String> b) {
+		return equals((BinaryTree<String>) a, (BinaryTree<String>) b);
+	}
+	
 	//private helper method to check whether two subtrees are equal
 	private static boolean equalsSubtree(LinkedBinaryTree<String> tree, Position<String> a, Position<String> b) {
 		return equals(tree, tree, a, b);
@@ -99,7 +118,7 @@ public class Assignment {
 	 * @param bRoot a position in the second tree (corresponding to a position in the first)
 	 * @return true if the subtrees rooted at the given positions are identical
 	 */
-	private static boolean equals(LinkedBinaryTree<String> aTree, LinkedBinaryTree<String> bTree, Position<String> aRoot, Position<String> bRoot) {
+	private static boolean equals(BinaryTree<String> aTree, BinaryTree<String> bTree, Position<String> aRoot, Position<String> bRoot) {
 		//if either of the positions is null, then they are the same only if they are both null
 		if(aRoot == null || bRoot == null) {
 			return (aRoot == null) && (bRoot == null);
@@ -107,7 +126,8 @@ public class Assignment {
 		//first check that the elements stored in the current positions are the same
 		String a = aRoot.getElement();
 		String b = bRoot.getElement();
-		if((a==null && b==null) || a.equals(b)) {
+		//(canonical tokens are the same object, so most matches are found without comparing characters)
+		if(a == b || (a != null && a.equals(b))) {
 			//then recursively check if the left subtrees are the same...
 			boolean left = equals(aTree, bTree, aTree.left(aRoot), bTree.left(bRoot));
 			//...and if the right subtrees are the same
@@ -138,7 +158,7 @@ public class Assignment {
 	 * @throws IllegalArgumentException
 	 *             if tree was not a valid expression
 	 */
-	public static String tree2prefix(LinkedBinaryTree<String> tree) throws IllegalArgumentException {
+	public static String tree2prefix(BinaryTree<String> tree) throws IllegalArgumentException {
 		
 		if (!isArithmeticExpression(tree)) {
 			throw new IllegalArgumentException();
@@ -151,8 +171,22 @@ public class Assignment {
 		return listString;
 	}
 	
+	/**
+	 * Give a tree in prefix notation, as tree2prefix(BinaryTree) does (kept for
+	 * callers compiled against this signature)
+	 * 
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return prefix notation expression of the tree
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static String tree2prefix(LinkedBinaryTree<String> tree) throws IllegalArgumentException {
+		return tree2prefix((BinaryTree<String>) tree);
+	}
+	
 	// private helper method to run a preOrder traversal and fill passed ArrayList with strings of each element
-	private static void preOrderTraversal(Position<String> p, ArrayList<String> snapshot, LinkedBinaryTree<String> tree) {
+	private static void preOrderTraversal(Position<String> p, ArrayList<String> snapshot, BinaryTree<String> tree) {
 		
 		if (tree.isExternal(p)) {
 			snapshot.add(p.getElement());
@@ -189,7 +223,7 @@ public class Assignment {
 	 * @throws IllegalArgumentException
 	 *             if tree was not a valid expression
 	 */
-	public static String tree2infix(LinkedBinaryTree<String> tree) throws IllegalArgumentException {
+	public static String tree2infix(BinaryTree<String> tree) throws IllegalArgumentException {
 		
 		if (!isArithmeticExpression(tree)) {
 			throw new IllegalArgumentException();
@@ -203,8 +237,22 @@ public class Assignment {
 		
 	}
 	
+	/**
+	 * Give a tree in infix notation, as tree2infix(BinaryTree) does (kept for
+	 * callers compiled against this signature)
+	 * 
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return infix notation expression of the tree
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static String tree2infix(LinkedBinaryTree<String> tree) throws IllegalArgumentException {
+		return tree2infix((BinaryTree<String>) tree);
+	}
+	
 	//private helper method to in order traversal and fill passed ArrayList with nodes' elements in inOrder, separated by parentheses where necessary
-	private static void inOrderTraversal(Position<String> p, ArrayList<String> snapshot, LinkedBinaryTree<String> tree) {
+	private static void inOrderTraversal(Position<String> p, ArrayList<String> snapshot, BinaryTree<String> tree) {
 		
 		//leaf nodes (i.e. integers and variables don't get surrounded by parentheses
 		if (tree.isExternal(p)) {
@@ -242,6 +290,7 @@ public class Assignment {
 		}
 		
 		simplify(tree, tree.root());
+		markValid(tree);
 		
 		return tree;
 	}
@@ -256,19 +305,25 @@ public class Assignment {
 		simplify(tree, tree.left(p));
 		simplify(tree, tree.right(p));
 		
+		simplifyNode(tree, p);
+	}
+	
+	//helper method to simplify a single operator, once both of its subtrees have been simplified
+	static void simplifyNode(LinkedBinaryTree<String> tree, Position<String> p) {
+		
 		//current node is internal
 		try {
 			int left = Integer.parseInt(tree.left(p).getElement());
 			int right = Integer.parseInt(tree.right(p).getElement());
 				
 			if (p.getElement().equals("+")) {
-				tree.set(p, Integer.toString(left + right));
+				tree.set(p, Tokens.constant(left + right));
 			}
 			else if (p.getElement().equals("-")) {
-				tree.set(p, Integer.toString(left - right));
+				tree.set(p, Tokens.constant(left - right));
 			}
 			else if (p.getElement().equals("*")) {
-				tree.set(p, Integer.toString(left * right));
+				tree.set(p, Tokens.constant(left * right));
 			}
 				
 			//because both children are numbers, both children are leaves, and can be freely removed
@@ -309,6 +364,7 @@ public class Assignment {
 		}
 		
 		simplifyFancy(tree, tree.root());
+		markValid(tree);
 		return tree;
 	}
 	
@@ -322,19 +378,25 @@ public class Assignment {
 		simplifyFancy(tree, tree.left(p));
 		simplifyFancy(tree, tree.right(p));
 		
+		simplifyFancyNode(tree, p);
+	}
+	
+	//helper method to apply the simplify rules to a single operator, once both of its subtrees have been simplified
+	static void simplifyFancyNode(LinkedBinaryTree<String> tree, Position<String> p) {
+		
 		//current node is internal, so run simplify rules
 		try {
 			int left = Integer.parseInt(tree.left(p).getElement());
 			int right = Integer.parseInt(tree.right(p).getElement());
 								
 			if (p.getElement().equals("+")) {
-				tree.set(p, Integer.toString(left + right));
+				tree.set(p, Tokens.constant(left + right));
 			}
 			else if (p.getElement().equals("-")) {
-				tree.set(p, Integer.toString(left - right));
+				tree.set(p, Tokens.constant(left - right));
 			}
 			else if (p.getElement().equals("*")) {
-				tree.set(p, Integer.toString(left * right));
+				tree.set(p, Tokens.constant(left * right));
 			}
 								
 			tree.remove(tree.left(p));
@@ -359,8 +421,8 @@ public class Assignment {
 			
 			else if (tree.left(p).getElement().equals("0") || tree.right(p).getElement().equals("0")){
 				tree.set(p, "0");
-				removeSubtree(tree, tree.left(p));
-				removeSubtree(tree, tree.right(p));
+				tree.prune(tree.left(p));
+				tree.prune(tree.right(p));
 			}
 		}
 		
@@ -385,26 +447,43 @@ public class Assignment {
 			
 			else if (equalsSubtree(tree, tree.left(p), tree.right(p))) {
 				tree.set(p, "0");
-				removeSubtree(tree, tree.left(p));
-				removeSubtree(tree, tree.right(p));
+				tree.prune(tree.left(p));
+				tree.prune(tree.right(p));
 			}
 		}
 		
 	}
-	
-	//private helper method to remove the entirety of a subtree's nodes
-	private static void removeSubtree(LinkedBinaryTree<String> tree, Position<String> p) {
-		
-		if (p != null) {
-		
-			if (tree.left(p) != null) {
-				removeSubtree(tree, tree.left(p));
+
+	//helper method to simplify a whole tree (as simplify or simplifyFancy do) without recursion, so deep
+	//trees don't overflow the stack, checking every interval nodes whether to stop part way
+	static void simplifyIteratively(LinkedBinaryTree<String> tree, boolean fancy, BooleanSupplier cancelled,
+			int interval) throws CancellationException {
+		
+		//post-order traversal, with a null above each operator whose operands are on the stack
+		ArrayList<Position<String>> stack = new ArrayList<>();
+		stack.add(tree.root());
+		int visited = 0;
+		while (!stack.isEmpty()) {
+			if (++visited % interval == 0 && cancelled.getAsBoolean()) {
+				throw new CancellationException();
+			}
+			Position<String> p = stack.remove(stack.size() - 1);
+			if (p == null) {
+				//both operands of the operator below have been simplified
+				Position<String> operator = stack.remove(stack.size() - 1);
+				if (fancy) {
+					simplifyFancyNode(tree, operator);
+				}
+				else {
+					simplifyNode(tree, operator);
+				}
 			}
-			if (tree.right(p) != null) {
-				removeSubtree(tree, tree.right(p));
+			else if (tree.isInternal(p)) {
+				stack.add(p);
+				stack.add(null);
+				stack.add(tree.right(p));
+				stack.add(tree.left(p));
 			}
-			
-			tree.remove(p);
 		}
 	}
 
@@ -433,16 +512,17 @@ public class Assignment {
 			throw new IllegalArgumentException();
 		}
 		
-		inOrderTraversalReplace(tree.root(), tree, variable, value);
+		inOrderTraversalReplace(tree.root(), tree, variable, Tokens.constant(value));
+		substituted(tree, Collections.singleton(variable));
 		return tree;
 		
 	}
 	
-	private static void inOrderTraversalReplace(Position<String> p, LinkedBinaryTree<String> tree, String variable, int value) {
+	private static void inOrderTraversalReplace(Position<String> p, LinkedBinaryTree<String> tree, String variable, String value) {
 		if (p != null) {
 			inOrderTraversalReplace(tree.left(p), tree, variable, value);
 			if (p.getElement().equals(variable)){
-				tree.set(p, Integer.toString(value));
+				tree.set(p, value);
 			}
 			inOrderTraversalReplace(tree.right(p), tree, variable, value);
 		}
@@ -472,6 +552,7 @@ public class Assignment {
 		}
 		
 		inOrderTraversalReplace(tree.root(), tree, map);
+		substituted(tree, map.keySet());
 		return tree;
 	}
 	
@@ -486,7 +567,7 @@ public class Assignment {
 					throw new IllegalArgumentException();
 				}
 				//else change the node's element to what the variable is mapped to
-				tree.set(p, Integer.toString(map.get(p.getElement())));
+				tree.set(p, Tokens.constant(map.get(p.getElement())));
 			}
 			inOrderTraversalReplace(tree.right(p), tree, map);
 		}
@@ -498,21 +579,73 @@ public class Assignment {
 	 * 
 	 * Ideally, this method should run in O(n) expected time
 	 * 
+	 * The result is remembered until the tree is next modified, so checking a tree
+	 * again (e.g. when it is passed to several methods of this class in a row)
+	 * takes O(1) time. Methods of this class which modify a tree and always leave
+	 * it valid (simplify, simplifyFancy and substitute) keep it remembered as valid.
+	 * 
 	 * @param tree
 	 *            - a tree representing an arithmetic expression
 	 * @return true if the tree is not null and it obeys the structure of an
 	 *              arithmetic expression. Otherwise, it returns false
 	 */
-	public static boolean isArithmeticExpression(LinkedBinaryTree<String> tree) {
+	public static boolean isArithmeticExpression(BinaryTree<String> tree) {
 		
 		if (tree == null) {
 			return false;
 		}
 		
-		return inOrderTraversalCheck(tree.root(), tree);
+		//only a LinkedBinaryTree keeps a modification count, so only those can be remembered
+		if (!(tree instanceof LinkedBinaryTree)) {
+			return inOrderTraversalCheck(tree.root(), tree);
+		}
+		LinkedBinaryTree<String> linkedTree = (LinkedBinaryTree<String>) tree;
+		
+		//already checked, and not modified since
+		if (linkedTree.isChecked()) {
+			return true;
+		}
+		
+		boolean valid = inOrderTraversalCheck(tree.root(), tree);
+		if (valid) {
+			markValid(linkedTree);
+		}
+		return valid;
+	}
+	
+	/**
+	 * Identify if a tree represents a valid arithmetic expression, as
+	 * isArithmeticExpression(BinaryTree) does (kept for callers compiled against
+	 * this signature)
+	 * 
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return true if the tree is not null and it obeys the structure of an
+	 *              arithmetic expression. Otherwise, it returns false
+	 */
+	public static boolean isArithmeticExpression(LinkedBinaryTree<String> tree) {
+		return isArithmeticExpression((BinaryTree<String>) tree);
+	}
+	
+	//helper method to remember that a tree is valid as it is now (until its next modification)
+	static void markValid(LinkedBinaryTree<String> tree) {
+		tree.markChecked();
+	}
+	
+	//helper method to remember whether a tree is still valid after substituting for some variables. In a valid
+	//expression the internal nodes are exactly the ones holding operators, so replacing leaves always leaves it
+	//valid, but a variable which is an operator replaces an operator with a number, and the tree must be checked again
+	//(which it will be, as substituting has modified it since it was last marked)
+	static void substituted(LinkedBinaryTree<String> tree, Collection<String> variables) {
+		for (String variable : variables) {
+			if (PrefixTokenizer.isOperator(variable)) {
+				return;
+			}
+		}
+		markValid(tree);
 	}
 	
-	private static boolean inOrderTraversalCheck(Position<String> p, LinkedBinaryTree<String> tree) {
+	private static boolean inOrderTraversalCheck(Position<String> p, BinaryTree<String> tree) {
 
 		//null elements are not allowed
 		if (p.getElement() == null) {
@@ -0,0 +1,375 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
+
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+/**
+ * Versions of the methods of Assignment which run on an executor and return a
+ * CompletableFuture, so that callers which must not block (e.g. an event loop)
+ * can wait for large trees to be processed without holding up a thread
+ *
+ * Cancelling the future of simplify, simplifyFancy or substitute stops the
+ * traversal soon afterwards (the traversals check for cancellation every
+ * CHECK_INTERVAL nodes, and are not recursive). A traversal which is stopped
+ * part way leaves the tree as a valid expression, but only partly simplified
+ * or substituted.
+ *
+ * The batch methods (the ones ending in All) process many expressions, giving
+ * one future for all of the results. Small expressions are grouped together
+ * into tasks of about BATCH_SIZE nodes (or characters), rather than each
+ * having a task of its own. If any task fails, the future fails with its
+ * exception straight away, and the tasks which haven't finished are cancelled.
+ */
+public class AsyncAssignment {
+
+	/**
+	 * How many nodes a traversal processes between checks for cancellation
+	 */
+	public static final int CHECK_INTERVAL = 1024;
+
+	/**
+	 * About how many nodes (or characters, for expressions in prefix notation)
+	 * each task of a batch method processes
+	 */
+	public static final int BATCH_SIZE = 1 << 14;
+
+	private final Executor executor;
+
+	/**
+	 * Creates an AsyncAssignment which runs its tasks in the common ForkJoinPool
+	 */
+	public AsyncAssignment() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates an AsyncAssignment which runs its tasks with an executor
+	 *
+	 * @param executor
+	 *            - the executor to run tasks with
+	 * @throws IllegalArgumentException
+	 *             if executor is null
+	 */
+	public AsyncAssignment(Executor executor) throws IllegalArgumentException {
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor was null");
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * Build a tree from an expression in prefix notation, as Assignment.prefix2tree
+	 * does
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @return a future of the tree, which completes exceptionally with an
+	 *         IllegalArgumentException if expression was not a valid expression
+	 */
+	public CompletableFuture<LinkedBinaryTree<String>> prefix2tree(String expression) {
+		return run(cancelled -> Assignment.prefix2tree(expression));
+	}
+
+	/**
+	 * Give a tree in prefix notation, as Assignment.tree2prefix does
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return a future of the expression, which completes exceptionally with an
+	 *         IllegalArgumentException if tree was not a valid expression
+	 */
+	public CompletableFuture<String> tree2prefix(LinkedBinaryTree<String> tree) {
+		return run(cancelled -> Assignment.tree2prefix(tree));
+	}
+
+	/**
+	 * Give a tree in infix notation with parenthesis, as Assignment.tree2infix does
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return a future of the expression, which completes exceptionally with an
+	 *         IllegalArgumentException if tree was not a valid expression
+	 */
+	public CompletableFuture<String> tree2infix(LinkedBinaryTree<String> tree) {
+		return run(cancelled -> Assignment.tree2infix(tree));
+	}
+
+	/**
+	 * Simplify a tree in place, as Assignment.simplify does
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return a future of the simplified tree, which completes exceptionally with
+	 *         an IllegalArgumentException if tree was not a valid expression
+	 */
+	public CompletableFuture<LinkedBinaryTree<String>> simplify(LinkedBinaryTree<String> tree) {
+		return run(cancelled -> simplify(tree, false, cancelled));
+	}
+
+	/**
+	 * Simplify a tree in place, as Assignment.simplifyFancy does
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return a future of the simplified tree, which completes exceptionally with
+	 *         an IllegalArgumentException if tree was not a valid expression
+	 */
+	public CompletableFuture<LinkedBinaryTree<String>> simplifyFancy(LinkedBinaryTree<String> tree) {
+		return run(cancelled -> simplify(tree, true, cancelled));
+	}
+
+	/**
+	 * Replace all instances of a variable in a tree with a value, as
+	 * Assignment.substitute does
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @param variable
+	 *            - a variable label that might exist in the tree
+	 * @param value
+	 *            - an integer value that the variable represents
+	 * @return a future of the tree, which completes exceptionally with an
+	 *         IllegalArgumentException if tree was not a valid expression, or
+	 *         variable is null
+	 */
+	public CompletableFuture<LinkedBinaryTree<String>> substitute(LinkedBinaryTree<String> tree, String variable,
+			int value) {
+		return run(cancelled -> {
+			if (variable == null) {
+				throw new IllegalArgumentException("Variable was null");
+			}
+			HashMap<String, Integer> map = new HashMap<>();
+			map.put(variable, value);
+			return substitute(tree, map, cancelled);
+		});
+	}
+
+	/**
+	 * Replace all instances of the variables in a map with their values, as
+	 * Assignment.substitute does
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @param map
+	 *            - a map of variable labels to integer values
+	 * @return a future of the tree, which completes exceptionally with an
+	 *         IllegalArgumentException if tree was not a valid expression, or map
+	 *         is null, or tries to substitute a null into the tree
+	 */
+	public CompletableFuture<LinkedBinaryTree<String>> substitute(LinkedBinaryTree<String> tree,
+			HashMap<String, Integer> map) {
+		return run(cancelled -> substitute(tree, map, cancelled));
+	}
+
+	/**
+	 * Build a tree from each of a list of expressions in prefix notation
+	 *
+	 * @param expressions
+	 *            - arithmetic expressions in prefix notation
+	 * @return a future of the trees, in the same order, which completes
+	 *         exceptionally with an IllegalArgumentException if any expression was
+	 *         not a valid expression
+	 */
+	public CompletableFuture<List<LinkedBinaryTree<String>>> prefix2treeAll(List<String> expressions) {
+		return runAll(expressions, String::length, (expression, cancelled) -> Assignment.prefix2tree(expression));
+	}
+
+	/**
+	 * Give each of a list of trees in prefix notation
+	 *
+	 * @param trees
+	 *            - trees representing arithmetic expressions
+	 * @return a future of the expressions, in the same order, which completes
+	 *         exceptionally with an IllegalArgumentException if any tree was not a
+	 *         valid expression
+	 */
+	public CompletableFuture<List<String>> tree2prefixAll(List<LinkedBinaryTree<String>> trees) {
+		return runAll(trees, LinkedBinaryTree::size, (tree, cancelled) -> Assignment.tree2prefix(tree));
+	}
+
+	/**
+	 * Simplify each of a list of trees in place, as Assignment.simplify (or
+	 * Assignment.simplifyFancy) does
+	 *
+	 * @param trees
+	 *            - trees representing arithmetic expressions
+	 * @param fancy
+	 *            - true to also apply the rules of simplifyFancy
+	 * @return a future of the simplified trees, in the same order, which completes
+	 *         exceptionally with an IllegalArgumentException if any tree was not a
+	 *         valid expression
+	 */
+	public CompletableFuture<List<LinkedBinaryTree<String>>> simplifyAll(List<LinkedBinaryTree<String>> trees,
+			boolean fancy) {
+		return runAll(trees, LinkedBinaryTree::size, (tree, cancelled) -> simplify(tree, fancy, cancelled));
+	}
+
+	/**
+	 * Replace all instances of the variables in a map with their values, in each
+	 * of a list of trees
+	 *
+	 * @param trees
+	 *            - trees representing arithmetic expressions
+	 * @param map
+	 *            - a map of variable labels to integer values
+	 * @return a future of the trees, in the same order, which completes
+	 *         exceptionally with an IllegalArgumentException if any tree was not a
+	 *         valid expression, or map is null, or tries to substitute a null into
+	 *         any tree
+	 */
+	public CompletableFuture<List<LinkedBinaryTree<String>>> substituteAll(List<LinkedBinaryTree<String>> trees,
+			HashMap<String, Integer> map) {
+		return runAll(trees, LinkedBinaryTree::size, (tree, cancelled) -> substitute(tree, map, cancelled));
+	}
+
+	//an operation which may check whether it has been cancelled
+	private interface Operation<T, R> {
+		R apply(T input, BooleanSupplier cancelled);
+	}
+
+	//an operation with no input
+	private interface Task<R> {
+		R apply(BooleanSupplier cancelled);
+	}
+
+	//helper method to run an operation with the executor, giving a future which it checks for cancellation
+	private <R> CompletableFuture<R> run(Task<R> task) {
+		CompletableFuture<R> future = new CompletableFuture<>();
+		executor.execute(() -> {
+			if (future.isDone()) {
+				//cancelled before it started
+				return;
+			}
+			try {
+				future.complete(task.apply(future::isCancelled));
+			} catch (Throwable e) {
+				//(if the future has already been cancelled, this does nothing)
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	//helper method to run an operation on every input, grouping inputs into tasks of about BATCH_SIZE
+	private <T, R> CompletableFuture<List<R>> runAll(List<T> inputs, ToIntFunction<T> weight,
+			Operation<T, R> operation) {
+		if (inputs == null) {
+			CompletableFuture<List<R>> failed = new CompletableFuture<>();
+			failed.completeExceptionally(new IllegalArgumentException("List was null"));
+			return failed;
+		}
+
+		//split the inputs into consecutive batches, each of which is one task
+		ArrayList<CompletableFuture<List<R>>> batches = new ArrayList<>();
+		int start = 0;
+		int total = 0;
+		for (int i = 0; i < inputs.size(); i++) {
+			T input = inputs.get(i);
+			total += (input == null) ? 1 : weight.applyAsInt(input);
+			if (total >= BATCH_SIZE || i == inputs.size() - 1) {
+				List<T> batch = inputs.subList(start, i + 1);
+				batches.add(run(cancelled -> {
+					ArrayList<R> results = new ArrayList<>(batch.size());
+					for (T item : batch) {
+						if (cancelled.getAsBoolean()) {
+							throw new CancellationException();
+						}
+						if (item == null) {
+							throw new IllegalArgumentException("Input was null");
+						}
+						results.add(operation.apply(item, cancelled));
+					}
+					return results;
+				}));
+				start = i + 1;
+				total = 0;
+			}
+		}
+
+		//the first batch to fail fails the whole future with its own exception (not wrapped in a
+		//CompletionException, as allOf would), and the whole future completes once every batch has
+		CompletableFuture<List<R>> all = new CompletableFuture<>();
+		AtomicInteger remaining = new AtomicInteger(batches.size());
+		for (CompletableFuture<List<R>> batch : batches) {
+			batch.whenComplete((part, e) -> {
+				if (e != null) {
+					boolean wrapped = (e instanceof CompletionException && e.getCause() != null);
+					all.completeExceptionally(wrapped ? e.getCause() : e);
+				}
+				else if (remaining.decrementAndGet() == 0) {
+					ArrayList<R> results = new ArrayList<>(inputs.size());
+					for (CompletableFuture<List<R>> done : batches) {
+						results.addAll(done.join());
+					}
+					all.complete(results);
+				}
+			});
+		}
+		if (batches.isEmpty()) {
+			all.complete(new ArrayList<>());
+		}
+		//once the whole future has failed or been cancelled, the batches still to run are cancelled
+		all.whenComplete((results, e) -> {
+			if (e != null) {
+				for (CompletableFuture<List<R>> batch : batches) {
+					batch.cancel(false);
+				}
+			}
+		});
+		return all;
+	}
+
+	//helper method to simplify a tree without recursion, stopping if cancelled
+	private static LinkedBinaryTree<String> simplify(LinkedBinaryTree<String> tree, boolean fancy,
+			BooleanSupplier cancelled) throws IllegalArgumentException {
+		if (!Assignment.isArithmeticExpression(tree)) {
+			throw new IllegalArgumentException();
+		}
+
+		Assignment.simplifyIteratively(tree, fancy, cancelled, CHECK_INTERVAL);
+		Assignment.markValid(tree);
+		return tree;
+	}
+
+	//helper method to substitute into a tree without recursion, stopping if cancelled
+	private static LinkedBinaryTree<String> substitute(LinkedBinaryTree<String> tree, HashMap<String, Integer> map,
+			BooleanSupplier cancelled) throws IllegalArgumentException {
+		if (!Assignment.isArithmeticExpression(tree) || map == null) {
+			throw new IllegalArgumentException();
+		}
+
+		ArrayList<Position<String>> stack = new ArrayList<>();
+		stack.add(tree.root());
+		int visited = 0;
+		while (!stack.isEmpty()) {
+			if (++visited % CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+				throw new CancellationException();
+			}
+			Position<String> p = stack.remove(stack.size() - 1);
+			if (map.containsKey(p.getElement())) {
+				Integer value = map.get(p.getElement());
+				//trying to change a variable to a null element throws IllegalArgumentException
+				if (value == null) {
+					throw new IllegalArgumentException();
+				}
+				tree.set(p, Tokens.constant(value));
+			}
+			if (tree.isInternal(p)) {
+				stack.add(tree.right(p));
+				stack.add(tree.left(p));
+			}
+		}
+		Assignment.substituted(tree, map.keySet());
+		return tree;
+	}
+}
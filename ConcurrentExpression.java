@@ -0,0 +1,259 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+import textbook.LinkedBinaryTree;
+
+/**
+ * An arithmetic expression tree which can be shared between threads, some of
+ * which update it (with the methods of Assignment) while others read it
+ *
+ * Updates take a write lock and change the tree in place, in the time the
+ * change itself takes. Reads never walk the mutable tree while a writer could be
+ * changing it: they use an immutable snapshot (a PersistentExpression) of the
+ * tree as it was after the last update. An update only discards the snapshot,
+ * and the first read after it makes a new one under the read lock; every later
+ * read is handed that snapshot without any locking at all, so readers don't
+ * contend with each other and a long traversal by one reader never holds up a
+ * writer.
+ *
+ * An update is atomic: if it fails part way through (e.g. substitute meets a
+ * variable mapped to null), the tree is put back as it was before the update,
+ * from the snapshot if there is one, or else from a copy made for that update.
+ * Only updates which can fail make such a copy.
+ */
+public class ConcurrentExpression {
+
+	private final StampedLock lock = new StampedLock();
+
+	//guarded by lock
+	private LinkedBinaryTree<String> tree;
+
+	//the tree as it was after the last update (or null if it hasn't been made since)
+	private volatile PersistentExpression snapshot;
+
+	//held by the one reader making a new snapshot
+	private final Object snapshotting = new Object();
+
+	/**
+	 * Creates a shared expression holding a copy of a tree (so later changes to
+	 * the given tree don't affect it)
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public ConcurrentExpression(LinkedBinaryTree<String> tree) throws IllegalArgumentException {
+		if (!Assignment.isArithmeticExpression(tree)) {
+			throw new IllegalArgumentException();
+		}
+		this.tree = tree.copy();
+		Assignment.markValid(this.tree);
+	}
+
+	/**
+	 * Creates a shared expression from an arithmetic expression in prefix notation
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression
+	 */
+	public ConcurrentExpression(String expression) throws IllegalArgumentException {
+		this.tree = Assignment.prefix2tree(expression);
+	}
+
+	/**
+	 * Returns an immutable snapshot of the expression, as it was after the last
+	 * update. This takes O(1) time, except for the first read after an update,
+	 * which makes the snapshot in O(n) time.
+	 *
+	 * @return the snapshot
+	 */
+	public PersistentExpression snapshot() {
+		PersistentExpression current = snapshot;
+		if (current != null) {
+			return current;
+		}
+		long stamp = lock.readLock();
+		try {
+			//(making a snapshot walks the tree, which may record things in its nodes, so only one reader does it)
+			synchronized (snapshotting) {
+				current = snapshot;
+				if (current == null) {
+					current = PersistentExpression.fromTree(tree);
+					snapshot = current;
+				}
+				return current;
+			}
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Makes a new LinkedBinaryTree holding a copy of the expression, which the
+	 * caller is free to change
+	 *
+	 * @return the copy
+	 */
+	public LinkedBinaryTree<String> copy() {
+		long stamp = lock.readLock();
+		try {
+			LinkedBinaryTree<String> copy = tree.copy();
+			Assignment.markValid(copy);
+			return copy;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	public int size() {
+		return snapshot().size();
+	}
+
+	/**
+	 * @return the expression in prefix notation, as given by Assignment.tree2prefix
+	 */
+	public String tree2prefix() {
+		return snapshot().toPrefix();
+	}
+
+	/**
+	 * @return the expression in infix notation with parenthesis, as given by
+	 *         Assignment.tree2infix
+	 */
+	public String tree2infix() {
+		return snapshot().toInfix();
+	}
+
+	/**
+	 * Evaluate the expression, substituting the given values for variables
+	 * (without changing the shared tree)
+	 *
+	 * @param bindings
+	 *            - a map of variable labels to integer values
+	 * @return the value of the expression
+	 * @throws IllegalArgumentException
+	 *             if bindings is null, or the expression uses a variable which is
+	 *             missing from (or null in) bindings
+	 */
+	public int evaluate(Map<String, Integer> bindings) throws IllegalArgumentException {
+		return snapshot().evaluate(bindings);
+	}
+
+	/**
+	 * Simplify the shared tree in place, as Assignment.simplify does
+	 */
+	public void simplify() {
+		update(tree -> Assignment.simplify(tree), false);
+	}
+
+	/**
+	 * Simplify the shared tree in place, as Assignment.simplifyFancy does
+	 */
+	public void simplifyFancy() {
+		update(tree -> Assignment.simplifyFancy(tree), false);
+	}
+
+	/**
+	 * Replace all instances of a variable in the shared tree with a value, as
+	 * Assignment.substitute does
+	 *
+	 * @param variable
+	 *            - a variable label that might exist in the tree
+	 * @param value
+	 *            - an integer value that the variable represents
+	 * @throws IllegalArgumentException
+	 *             if variable is null
+	 */
+	public void substitute(String variable, int value) throws IllegalArgumentException {
+		//(substituting for an operator leaves an invalid expression, which must be undone)
+		update(tree -> Assignment.substitute(tree, variable, value),
+				variable == null || PrefixTokenizer.isOperator(variable));
+	}
+
+	/**
+	 * Replace all instances of the variables in a map with their values in the
+	 * shared tree, as Assignment.substitute does. If the map would put a null into
+	 * the tree, the tree is left unchanged.
+	 *
+	 * @param map
+	 *            - a map of variable labels to integer values
+	 * @throws IllegalArgumentException
+	 *             if map is null, or tries to substitute a null into the tree
+	 */
+	public void substitute(HashMap<String, Integer> map) throws IllegalArgumentException {
+		update(tree -> Assignment.substitute(tree, map), mayFail(map));
+	}
+
+	/**
+	 * Change the shared tree in place, while holding the write lock. The change
+	 * must leave the tree a valid expression, otherwise the tree is put back as it
+	 * was and IllegalArgumentException is thrown. The change must not keep any
+	 * reference to the tree or its positions, or use this ConcurrentExpression
+	 * (the lock is not reentrant).
+	 *
+	 * @param change
+	 *            - the change to make to the tree
+	 * @throws IllegalArgumentException
+	 *             if change is null, or left the tree as an invalid expression
+	 */
+	public void update(Consumer<LinkedBinaryTree<String>> change) throws IllegalArgumentException {
+		update(change, true);
+	}
+
+	//helper method to change the tree while holding the write lock, copying it first (if there is no snapshot
+	//to put back) only if the change may fail
+	private void update(Consumer<LinkedBinaryTree<String>> change, boolean mayFail) throws IllegalArgumentException {
+		if (change == null) {
+			throw new IllegalArgumentException("Change was null");
+		}
+		long stamp = lock.writeLock();
+		try {
+			//readers still get the old snapshot (if there is one) until the update is done
+			PersistentExpression before = snapshot;
+			LinkedBinaryTree<String> backup = null;
+			if (before == null && mayFail) {
+				backup = tree.copy();
+				Assignment.markValid(backup);
+			}
+			try {
+				change.accept(tree);
+				if (!Assignment.isArithmeticExpression(tree)) {
+					throw new IllegalArgumentException("Tree was left as an invalid expression");
+				}
+			} catch (RuntimeException e) {
+				if (before != null) {
+					tree = before.toTree();
+				}
+				else if (backup != null) {
+					tree = backup;
+				}
+				throw e;
+			}
+			snapshot = null;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	//helper method to find whether substituting a map may fail (or leave an invalid expression) part way
+	private static boolean mayFail(Map<String, Integer> map) {
+		if (map == null) {
+			return false;
+		}
+		for (Map.Entry<String, Integer> binding : map.entrySet()) {
+			String variable = binding.getKey();
+			if (binding.getValue() == null || (variable != null && PrefixTokenizer.isOperator(variable))) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,408 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+/**
+ * Storage for many arithmetic expression trees at once, in a few shared arrays
+ * of ints instead of one LinkedBinaryTree and one Node object per position
+ *
+ * Each node is an index into the arrays, and each tree is identified by the index
+ * of its root. Nodes are allocated by bumping a counter, and are never freed one
+ * at a time: clear() frees every tree in the arena at once, ready for the next
+ * batch. Every distinct variable or value is stored once, in a dictionary shared
+ * by all the trees.
+ *
+ * An arena is not thread-safe.
+ */
+public class ExpressionArena {
+
+	//codes of the operators (any code of 0 or more is an index into the dictionary of leaves)
+	private static final int PLUS = -1;
+	private static final int MINUS = -2;
+	private static final int TIMES = -3;
+
+	private static final int NONE = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int[] codes;
+	private int[] lefts;
+	private int[] rights;
+	private int top = 0; // index of the next free node
+
+	private final ArrayList<String> leaves = new ArrayList<>();
+	private final HashMap<String, Integer> leafCodes = new HashMap<>();
+
+	/**
+	 * Create an empty arena
+	 */
+	public ExpressionArena() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Create an empty arena with room for the given number of nodes before it
+	 * has to grow
+	 *
+	 * @param capacity
+	 *            - the number of nodes to make room for
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative
+	 */
+	public ExpressionArena(int capacity) throws IllegalArgumentException {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity must not be negative");
+		}
+		codes = new int[capacity];
+		lefts = new int[capacity];
+		rights = new int[capacity];
+	}
+
+	/**
+	 * @return the number of nodes allocated in the arena since it was last cleared
+	 */
+	public int size() {
+		return top;
+	}
+
+	/**
+	 * Free every tree in the arena at once. Root indices returned before the arena
+	 * was cleared must not be used again.
+	 */
+	public void clear() {
+		top = 0;
+		leaves.clear();
+		leafCodes.clear();
+	}
+
+	/**
+	 * Make sure there is room for at least the given number of further nodes
+	 * without the arena having to grow
+	 *
+	 * @param nodes
+	 *            - the number of nodes about to be allocated
+	 */
+	public void ensureCapacity(int nodes) {
+		int needed = top + nodes;
+		if (needed > codes.length) {
+			int capacity = Math.max(needed, codes.length * 2);
+			codes = Arrays.copyOf(codes, capacity);
+			lefts = Arrays.copyOf(lefts, capacity);
+			rights = Arrays.copyOf(rights, capacity);
+		}
+	}
+
+	/**
+	 * Add a tree for an arithmetic expression in prefix notation to the arena.
+	 * The same expressions are accepted as Assignment.prefix2tree accepts.
+	 *
+	 * This method runs in O(n) time, and doesn't allocate any objects per node
+	 * (apart from variables and values not seen before in this arena)
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @return the index of the root of the new tree
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression
+	 */
+	public int parse(String expression) throws IllegalArgumentException {
+		PrefixTokenizer tokens = new PrefixTokenizer(expression);
+		int root = top;
+
+		//operators whose children haven't both been allocated yet
+		int[] pending = new int[16];
+		boolean[] hasLeft = new boolean[16];
+		int depth = 0;
+
+		try {
+			String token;
+			while ((token = tokens.next()) != null) {
+				int node = allocate(codeOf(token));
+				if (depth > 0) {
+					if (hasLeft[depth - 1]) {
+						rights[pending[--depth]] = node;
+					}
+					else {
+						lefts[pending[depth - 1]] = node;
+						hasLeft[depth - 1] = true;
+					}
+				}
+				if (codes[node] < 0) {
+					if (depth == pending.length) {
+						pending = Arrays.copyOf(pending, depth * 2);
+						hasLeft = Arrays.copyOf(hasLeft, depth * 2);
+					}
+					pending[depth] = node;
+					hasLeft[depth] = false;
+					depth++;
+				}
+				else if (depth == 0) {
+					return root;
+				}
+			}
+		} catch (IOException e) {
+			//can't happen, the tokenizer is reading from a String
+			throw new UncheckedIOException(e);
+		}
+
+		//ran out of tokens before the expression was complete, so give back the nodes
+		top = root;
+		throw new IllegalArgumentException("String was not a valid arithmetic expression in prefix notation");
+	}
+
+	/**
+	 * Copy a LinkedBinaryTree into the arena, in a single pass over the tree
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return the index of the root of the copy
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public int copyOf(LinkedBinaryTree<String> tree) throws IllegalArgumentException {
+		if (!Assignment.isArithmeticExpression(tree)) {
+			throw new IllegalArgumentException();
+		}
+		ensureCapacity(tree.size());
+
+		//positions still to be copied, with the node whose child each one becomes
+		ArrayList<Position<String>> positions = new ArrayList<>();
+		int[] parents = new int[16];
+		positions.add(tree.root());
+		parents[0] = NONE;
+		int root = top;
+
+		while (!positions.isEmpty()) {
+			int last = positions.size() - 1;
+			Position<String> p = positions.remove(last);
+			int parent = parents[last];
+			int node = allocate(codeOf(p.getElement()));
+			//nodes are copied in preorder, so a left child always comes straight after its parent
+			if (parent != NONE) {
+				if (node == parent + 1) {
+					lefts[parent] = node;
+				}
+				else {
+					rights[parent] = node;
+				}
+			}
+			if (tree.isInternal(p)) {
+				if (last + 2 > parents.length) {
+					parents = Arrays.copyOf(parents, parents.length * 2);
+				}
+				positions.add(tree.right(p));
+				parents[last] = node;
+				positions.add(tree.left(p));
+				parents[last + 1] = node;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Build a LinkedBinaryTree from a tree in the arena
+	 *
+	 * @param root
+	 *            - the index of the root of a tree in the arena
+	 * @return a new LinkedBinaryTree with the same structure and values
+	 */
+	public LinkedBinaryTree<String> toTree(int root) {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		ArrayList<Position<String>> positions = new ArrayList<>();
+		int[] nodes = new int[16];
+		int depth = 0;
+
+		positions.add(tree.addRoot(elementOf(root)));
+		nodes[depth++] = root;
+		while (depth > 0) {
+			int node = nodes[--depth];
+			Position<String> p = positions.remove(depth);
+			if (codes[node] < 0) {
+				if (depth + 2 > nodes.length) {
+					nodes = Arrays.copyOf(nodes, nodes.length * 2);
+				}
+				positions.add(tree.addRight(p, elementOf(rights[node])));
+				nodes[depth++] = rights[node];
+				positions.add(tree.addLeft(p, elementOf(lefts[node])));
+				nodes[depth++] = lefts[node];
+			}
+		}
+		return tree;
+	}
+
+	/**
+	 * Output a tree in the arena in prefix notation, the same as
+	 * Assignment.tree2prefix would give for the same tree
+	 *
+	 * @param root
+	 *            - the index of the root of a tree in the arena
+	 * @return prefix notation expression of the tree
+	 */
+	public String toPrefix(int root) {
+		StringBuilder out = new StringBuilder();
+		int[] nodes = new int[16];
+		int depth = 0;
+		nodes[depth++] = root;
+		while (depth > 0) {
+			int node = nodes[--depth];
+			if (node != root) {
+				out.append(' ');
+			}
+			out.append(elementOf(node));
+			if (codes[node] < 0) {
+				if (depth + 2 > nodes.length) {
+					nodes = Arrays.copyOf(nodes, nodes.length * 2);
+				}
+				nodes[depth++] = rights[node];
+				nodes[depth++] = lefts[node];
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Output a tree in the arena in infix notation with parenthesis, the same as
+	 * Assignment.tree2infix would give for the same tree
+	 *
+	 * @param root
+	 *            - the index of the root of a tree in the arena
+	 * @return infix notation expression of the tree
+	 */
+	public String toInfix(int root) {
+		StringBuilder out = new StringBuilder();
+		//each entry is a node and how many of its parts have been output (0 = none, 1 = left operand, 2 = right operand)
+		int[] nodes = new int[16];
+		int[] states = new int[16];
+		int depth = 0;
+		nodes[depth] = root;
+		states[depth++] = 0;
+		while (depth > 0) {
+			int node = nodes[depth - 1];
+			int state = states[depth - 1];
+			if (codes[node] >= 0) {
+				out.append(elementOf(node));
+				depth--;
+				continue;
+			}
+			if (depth + 1 > nodes.length) {
+				nodes = Arrays.copyOf(nodes, nodes.length * 2);
+				states = Arrays.copyOf(states, states.length * 2);
+			}
+			if (state == 0) {
+				out.append('(');
+				states[depth - 1] = 1;
+				nodes[depth] = lefts[node];
+				states[depth++] = 0;
+			}
+			else if (state == 1) {
+				out.append(elementOf(node));
+				states[depth - 1] = 2;
+				nodes[depth] = rights[node];
+				states[depth++] = 0;
+			}
+			else {
+				out.append(')');
+				depth--;
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Evaluate a tree in the arena, substituting the given values for variables
+	 *
+	 * @param root
+	 *            - the index of the root of a tree in the arena
+	 * @param bindings
+	 *            - a map of variable labels to integer values
+	 * @return the value of the expression
+	 * @throws IllegalArgumentException
+	 *             if bindings is null, or the expression uses a variable which is
+	 *             missing from (or null in) bindings
+	 */
+	public int evaluate(int root, Map<String, Integer> bindings) throws IllegalArgumentException {
+		if (bindings == null) {
+			throw new IllegalArgumentException("Bindings were null");
+		}
+		//nodes still to be visited (negative entries mark operators whose operands are on the value stack)
+		int[] nodes = new int[16];
+		int[] values = new int[16];
+		int depth = 0;
+		int count = 0;
+		nodes[depth++] = root;
+		while (depth > 0) {
+			int entry = nodes[--depth];
+			if (entry < 0) {
+				int node = ~entry;
+				int right = values[--count];
+				int left = values[--count];
+				values[count++] = StreamingEvaluator.apply(elementOf(node).charAt(0), left, right);
+				continue;
+			}
+			if (codes[entry] >= 0) {
+				if (count == values.length) {
+					values = Arrays.copyOf(values, count * 2);
+				}
+				values[count++] = StreamingEvaluator.valueOf(elementOf(entry), bindings);
+				continue;
+			}
+			if (depth + 3 > nodes.length) {
+				nodes = Arrays.copyOf(nodes, nodes.length * 2);
+			}
+			nodes[depth++] = ~entry;
+			nodes[depth++] = rights[entry];
+			nodes[depth++] = lefts[entry];
+		}
+		return values[0];
+	}
+
+	//private helper method to allocate the next node, growing the arrays if needed
+	private int allocate(int code) {
+		if (top == codes.length) {
+			ensureCapacity(Math.max(1, top));
+		}
+		codes[top] = code;
+		lefts[top] = NONE;
+		rights[top] = NONE;
+		return top++;
+	}
+
+	//private helper method to find the code for an element, adding leaves to the dictionary when first seen
+	private int codeOf(String element) {
+		if (element.equals("+")) {
+			return PLUS;
+		}
+		if (element.equals("-")) {
+			return MINUS;
+		}
+		if (element.equals("*")) {
+			return TIMES;
+		}
+		Integer code = leafCodes.get(element);
+		if (code == null) {
+			code = leaves.size();
+			leaves.add(element);
+			leafCodes.put(element, code);
+		}
+		return code;
+	}
+
+	//private helper method to find the element stored at a node
+	private String elementOf(int node) {
+		switch (codes[node]) {
+		case PLUS:
+			return "+";
+		case MINUS:
+			return "-";
+		case TIMES:
+			return "*";
+		default:
+			return leaves.get(codes[node]);
+		}
+	}
+}
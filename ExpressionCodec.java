@@ -0,0 +1,360 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import textbook.BinaryTree;
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+/**
+ * A compact binary format for arithmetic expression trees
+ *
+ * An encoded expression is:
+ *  - a dictionary of the variables (and any values not written in the usual way,
+ *    like "007"): a varint count, then each name as a varint length and UTF-8 bytes
+ *  - the nodes in preorder, each starting with a 1 byte opcode:
+ *      0, 1, 2      the operators +, - and *
+ *      3            a number, followed by its zigzag varint encoding
+ *      4            a name, followed by its varint index in the dictionary
+ *      16 to 255    the number (opcode - 16), i.e. small numbers take one byte
+ *
+ * Decoding reads straight from the given ByteBuffer (which may be direct or
+ * memory-mapped) without copying it first, and builds the tree top-down, so it
+ * needs none of the splitting and queueing done by Assignment.prefix2tree.
+ */
+public class ExpressionCodec {
+
+	static final int PLUS = 0;
+	static final int MINUS = 1;
+	static final int TIMES = 2;
+	static final int NUMBER = 3;
+	static final int NAME = 4;
+	static final int SMALL_NUMBER = 16;
+
+	private static final int MAX_SMALL_NUMBER = 255 - SMALL_NUMBER;
+
+	/**
+	 * Encode a tree
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return a buffer holding the encoded tree, ready to be read
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static ByteBuffer encode(BinaryTree<String> tree) throws IllegalArgumentException {
+		if (!Assignment.isArithmeticExpression(tree)) {
+			throw new IllegalArgumentException();
+		}
+		ArrayList<Position<String>> preorder = new ArrayList<>(tree.size());
+		ArrayList<Position<String>> stack = new ArrayList<>();
+		stack.add(tree.root());
+		while (!stack.isEmpty()) {
+			Position<String> p = stack.remove(stack.size() - 1);
+			preorder.add(p);
+			if (tree.isInternal(p)) {
+				stack.add(tree.right(p));
+				stack.add(tree.left(p));
+			}
+		}
+
+		//first find the names for the dictionary, in the order they are first used
+		HashMap<String, Integer> ids = new HashMap<>();
+		ArrayList<String> names = new ArrayList<>();
+		for (Position<String> p : preorder) {
+			String element = p.getElement();
+			if (opcodeOf(element) == NAME && !ids.containsKey(element)) {
+				ids.put(element, names.size());
+				names.add(element);
+			}
+		}
+
+		Output out = new Output(preorder.size() + 16);
+		out.putVarint(names.size());
+		for (String name : names) {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			out.putVarint(bytes.length);
+			out.put(bytes);
+		}
+		for (Position<String> p : preorder) {
+			String element = p.getElement();
+			int opcode = opcodeOf(element);
+			if (opcode == NAME) {
+				out.put(NAME);
+				out.putVarint(ids.get(element));
+			}
+			else if (opcode == NUMBER) {
+				int value = Integer.parseInt(element);
+				if (value >= 0 && value <= MAX_SMALL_NUMBER) {
+					out.put(SMALL_NUMBER + value);
+				}
+				else {
+					out.put(NUMBER);
+					out.putVarint((value << 1) ^ (value >> 31));
+				}
+			}
+			else {
+				out.put(opcode);
+			}
+		}
+		return ByteBuffer.wrap(out.bytes, 0, out.size);
+	}
+
+	/**
+	 * Encode a tree and write it to a channel
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @param out
+	 *            - the channel to write the encoded tree to
+	 * @throws IOException
+	 *             if out could not be written
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static void write(BinaryTree<String> tree, WritableByteChannel out) throws IOException, IllegalArgumentException {
+		ByteBuffer buffer = encode(tree);
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * Decode a tree, starting at the position of the buffer. Afterwards the
+	 * position of the buffer is just after the encoded tree.
+	 *
+	 * @param in
+	 *            - a buffer holding an encoded tree
+	 * @return the decoded tree
+	 * @throws IllegalArgumentException
+	 *             if the buffer did not hold a valid encoded tree
+	 */
+	public static LinkedBinaryTree<String> decode(ByteBuffer in) throws IllegalArgumentException {
+		try {
+			String[] names = readDictionary(in);
+			LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+
+			//operators whose children haven't both been added yet
+			ArrayList<Position<String>> pending = new ArrayList<>();
+			boolean[] hasLeft = new boolean[16];
+
+			while (true) {
+				int opcode = in.get() & 0xFF;
+				String element = elementOf(opcode, in, names);
+				Position<String> p;
+				int depth = pending.size();
+				if (tree.isEmpty()) {
+					p = tree.addRoot(element);
+				}
+				else if (hasLeft[depth - 1]) {
+					p = tree.addRight(pending.remove(depth - 1), element);
+					depth--;
+				}
+				else {
+					p = tree.addLeft(pending.get(depth - 1), element);
+					hasLeft[depth - 1] = true;
+				}
+				if (opcode <= TIMES) {
+					if (depth == hasLeft.length) {
+						hasLeft = Arrays.copyOf(hasLeft, depth * 2);
+					}
+					pending.add(p);
+					hasLeft[depth] = false;
+				}
+				else if (depth == 0) {
+					return tree;
+				}
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Not a valid encoded expression");
+		}
+	}
+
+	/**
+	 * Evaluate an encoded tree without decoding it into a tree first, starting at
+	 * the position of the buffer. Afterwards the position of the buffer is just
+	 * after the encoded tree.
+	 *
+	 * @param in
+	 *            - a buffer holding an encoded tree
+	 * @param bindings
+	 *            - a map of variable labels to integer values
+	 * @return the value of the expression
+	 * @throws IllegalArgumentException
+	 *             if the buffer did not hold a valid encoded tree, bindings is null,
+	 *             or the expression uses a variable which is missing from (or null
+	 *             in) bindings
+	 */
+	public static int evaluate(ByteBuffer in, Map<String, Integer> bindings) throws IllegalArgumentException {
+		if (bindings == null) {
+			throw new IllegalArgumentException("Bindings were null");
+		}
+		try {
+			String[] names = readDictionary(in);
+
+			//operators still waiting for operands, with their left operand once it is known
+			int[] operators = new int[16];
+			int[] lefts = new int[16];
+			boolean[] hasLeft = new boolean[16];
+			int depth = 0;
+
+			while (true) {
+				int opcode = in.get() & 0xFF;
+				if (opcode <= TIMES) {
+					if (depth == operators.length) {
+						operators = Arrays.copyOf(operators, depth * 2);
+						lefts = Arrays.copyOf(lefts, depth * 2);
+						hasLeft = Arrays.copyOf(hasLeft, depth * 2);
+					}
+					operators[depth] = opcode;
+					hasLeft[depth] = false;
+					depth++;
+					continue;
+				}
+
+				int value;
+				if (opcode == NAME) {
+					value = StreamingEvaluator.valueOf(names[getVarint(in)], bindings);
+				}
+				else if (opcode == NUMBER) {
+					int zigzag = getVarint(in);
+					value = (zigzag >>> 1) ^ -(zigzag & 1);
+				}
+				else if (opcode >= SMALL_NUMBER) {
+					value = opcode - SMALL_NUMBER;
+				}
+				else {
+					throw new IllegalArgumentException("Not a valid encoded expression");
+				}
+
+				//a value completes every operator above it which already has its left operand
+				while (depth > 0 && hasLeft[depth - 1]) {
+					depth--;
+					value = StreamingEvaluator.apply("+-*".charAt(operators[depth]), lefts[depth], value);
+				}
+				if (depth == 0) {
+					return value;
+				}
+				lefts[depth - 1] = value;
+				hasLeft[depth - 1] = true;
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Not a valid encoded expression");
+		}
+	}
+
+	//helper method to read the dictionary at the start of an encoded tree
+	static String[] readDictionary(ByteBuffer in) throws IllegalArgumentException {
+		int count = getVarint(in);
+		if (count < 0 || count > in.remaining()) {
+			throw new IllegalArgumentException("Not a valid encoded expression");
+		}
+		String[] names = new String[count];
+		for (int i = 0; i < count; i++) {
+			int length = getVarint(in);
+			if (length < 0 || length > in.remaining()) {
+				throw new IllegalArgumentException("Not a valid encoded expression");
+			}
+			ByteBuffer bytes = in.slice();
+			bytes.limit(length);
+			names[i] = StandardCharsets.UTF_8.decode(bytes).toString();
+			in.position(in.position() + length);
+		}
+		return names;
+	}
+
+	//helper method to read the rest of a node, given its opcode
+	static String elementOf(int opcode, ByteBuffer in, String[] names) throws IllegalArgumentException {
+		switch (opcode) {
+		case PLUS:
+			return "+";
+		case MINUS:
+			return "-";
+		case TIMES:
+			return "*";
+		case NUMBER:
+			int zigzag = getVarint(in);
+			return Tokens.constant((zigzag >>> 1) ^ -(zigzag & 1));
+		case NAME:
+			return names[getVarint(in)];
+		default:
+			if (opcode < SMALL_NUMBER) {
+				throw new IllegalArgumentException("Not a valid encoded expression");
+			}
+			return Tokens.constant(opcode - SMALL_NUMBER);
+		}
+	}
+
+	//helper method to read an unsigned varint (7 bits per byte, least significant first)
+	static int getVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Not a valid encoded expression");
+	}
+
+	//private helper method to choose the opcode for an element (numbers only count if written the usual way)
+	private static int opcodeOf(String element) {
+		if (element.equals("+")) {
+			return PLUS;
+		}
+		if (element.equals("-")) {
+			return MINUS;
+		}
+		if (element.equals("*")) {
+			return TIMES;
+		}
+		try {
+			if (Integer.toString(Integer.parseInt(element)).equals(element)) {
+				return NUMBER;
+			}
+		} catch (NumberFormatException e) {
+			//it's a variable
+		}
+		return NAME;
+	}
+
+	//a growable array of bytes being written
+	private static final class Output {
+		private byte[] bytes;
+		private int size = 0;
+
+		private Output(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		private void put(int b) {
+			if (size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, size * 2);
+			}
+			bytes[size++] = (byte) b;
+		}
+
+		private void put(byte[] more) {
+			if (size + more.length > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(size + more.length, size * 2));
+			}
+			System.arraycopy(more, 0, bytes, size, more.length);
+			size += more.length;
+		}
+
+		private void putVarint(int value) {
+			while ((value & ~0x7F) != 0) {
+				put((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			put(value);
+		}
+	}
+}
@@ -0,0 +1,344 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import textbook.LinkedBinaryTree;
+
+/**
+ * A batch job which reads expressions in prefix notation, one per line, and
+ * writes each of them out again after transforming it (e.g. with
+ * Assignment.simplify)
+ *
+ * The job is split into five stages, each running on its own thread (a virtual
+ * thread where the runtime supports them), so that reading, parsing,
+ * transforming, rendering and writing all overlap:
+ *
+ * <pre>
+ * read -&gt; parse -&gt; transform -&gt; serialize -&gt; write
+ * </pre>
+ *
+ * Neighbouring stages are connected by a bounded RingBuffer, so a slow stage
+ * holds up the ones before it instead of letting the queues grow. The number
+ * of items each stage has handled, the time it has spent working, and the
+ * number of items waiting for it can be read from stages() while the job runs.
+ *
+ * If any stage fails (e.g. an invalid expression, or an IOException), every
+ * stage stops and run throws the first exception. run doesn't wait for the read
+ * stage if it is blocked reading (e.g. from a socket or standard input, which
+ * can't be interrupted); that stage stops once its read returns.
+ */
+public class ExpressionPipeline {
+
+	/**
+	 * The capacity of each queue between stages, unless another is given
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	//how many times a stage spins waiting for its queue before it starts to sleep
+	private static final int SPINS = 100;
+
+	//how long a stage first sleeps between checks of its queue once it has stopped spinning, doubling
+	//each time it finds the queue still full or empty, up to MAX_PARK_NANOS (reached after MAX_DOUBLINGS)
+	private static final long MIN_PARK_NANOS = 1_000;
+	private static final long MAX_PARK_NANOS = 1_000_000;
+	private static final int MAX_DOUBLINGS = 10;
+
+	private final Function<LinkedBinaryTree<String>, LinkedBinaryTree<String>> transform;
+	private final Function<LinkedBinaryTree<String>, String> serialize;
+	private final int capacity;
+
+	private volatile List<Stage> stages = Collections.emptyList();
+
+	/**
+	 * Creates a pipeline
+	 *
+	 * @param transform
+	 *            - what to do to each tree, e.g. Assignment::simplify
+	 * @param serialize
+	 *            - how to write each tree, e.g. Assignment::tree2prefix
+	 * @param capacity
+	 *            - the capacity of each queue between stages
+	 * @throws IllegalArgumentException
+	 *             if transform or serialize is null, or capacity is not positive
+	 */
+	public ExpressionPipeline(Function<LinkedBinaryTree<String>, LinkedBinaryTree<String>> transform,
+			Function<LinkedBinaryTree<String>, String> serialize, int capacity) throws IllegalArgumentException {
+		if (transform == null || serialize == null) {
+			throw new IllegalArgumentException("Stage was null");
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity was not positive");
+		}
+		this.transform = transform;
+		this.serialize = serialize;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Creates a pipeline with queues of DEFAULT_CAPACITY
+	 *
+	 * @param transform
+	 *            - what to do to each tree, e.g. Assignment::simplify
+	 * @param serialize
+	 *            - how to write each tree, e.g. Assignment::tree2prefix
+	 * @throws IllegalArgumentException
+	 *             if transform or serialize is null
+	 */
+	public ExpressionPipeline(Function<LinkedBinaryTree<String>, LinkedBinaryTree<String>> transform,
+			Function<LinkedBinaryTree<String>, String> serialize) throws IllegalArgumentException {
+		this(transform, serialize, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Run the job, returning once every line has been written (out is flushed,
+	 * but not closed)
+	 *
+	 * @param in
+	 *            - expressions in prefix notation, one per line
+	 * @param out
+	 *            - where to write the results, one per line
+	 * @throws IOException
+	 *             if in could not be read or out could not be written
+	 * @throws IllegalArgumentException
+	 *             if in or out is null, or a line was not a valid expression
+	 */
+	public void run(Reader in, Writer out) throws IOException, IllegalArgumentException {
+		if (in == null || out == null) {
+			throw new IllegalArgumentException("Reader or writer was null");
+		}
+		BufferedReader lines = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
+
+		RingBuffer<String> read = new RingBuffer<>(capacity);
+		RingBuffer<LinkedBinaryTree<String>> parsed = new RingBuffer<>(capacity);
+		RingBuffer<LinkedBinaryTree<String>> transformed = new RingBuffer<>(capacity);
+		RingBuffer<String> serialized = new RingBuffer<>(capacity);
+		Stage reader = new Stage("read", null);
+		Stage parser = new Stage("parse", read);
+		Stage transformer = new Stage("transform", parsed);
+		Stage serializer = new Stage("serialize", transformed);
+		Stage writer = new Stage("write", serialized);
+		stages = List.of(reader, parser, transformer, serializer, writer);
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		ExecutorService threads = Threads.newThreadPerTaskExecutor("ExpressionPipeline stage");
+		List<Future<?>> running = new ArrayList<>();
+		try {
+			running.add(threads.submit(() -> guard(failure, () -> {
+				while (failure.get() == null) {
+					long start = System.nanoTime();
+					String line = lines.readLine();
+					if (line == null) {
+						break;
+					}
+					reader.handled(start);
+					put(read, line, failure);
+				}
+				read.close();
+			})));
+			running.add(threads.submit(
+					() -> guard(failure, () -> relay(parser, read, Assignment::prefix2tree, parsed, failure))));
+			running.add(threads.submit(
+					() -> guard(failure, () -> relay(transformer, parsed, transform, transformed, failure))));
+			running.add(threads.submit(
+					() -> guard(failure, () -> relay(serializer, transformed, serialize, serialized, failure))));
+			running.add(threads.submit(() -> guard(failure, () -> {
+				String line;
+				while ((line = take(serialized, failure)) != null) {
+					long start = System.nanoTime();
+					out.write(line);
+					out.write('\n');
+					writer.handled(start);
+				}
+				out.flush();
+			})));
+			//the later stages all stop soon after a failure, but the read stage may be blocked reading, so
+			//it is only waited for if nothing has failed (when the other stages have taken all it read)
+			for (int i = running.size() - 1; i >= 0; i--) {
+				if (i == 0 && failure.get() != null) {
+					break;
+				}
+				try {
+					running.get(i).get();
+				} catch (ExecutionException e) {
+					//guard never lets an exception out of a stage
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure.compareAndSet(null, e);
+		} finally {
+			threads.shutdownNow();
+		}
+
+		Throwable cause = failure.get();
+		if (cause instanceof UncheckedIOException) {
+			throw ((UncheckedIOException) cause).getCause();
+		}
+		if (cause instanceof IOException) {
+			throw (IOException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		if (cause instanceof InterruptedException) {
+			throw new InterruptedIOException("Interrupted while waiting for the stages to finish");
+		}
+	}
+
+	/**
+	 * @return the stages of the current (or last) run, in order
+	 */
+	public List<Stage> stages() {
+		return stages;
+	}
+
+	/**
+	 * The statistics of one stage of a run, which may be read while it is running
+	 */
+	public static final class Stage {
+		private final String name;
+		private final RingBuffer<?> input;
+
+		//only written by the thread running the stage
+		private volatile long items;
+		private volatile long busyNanos;
+
+		private Stage(String name, RingBuffer<?> input) {
+			this.name = name;
+			this.input = input;
+		}
+
+		//record that an item was handled, which started at the given time
+		private void handled(long start) {
+			busyNanos += System.nanoTime() - start;
+			items++;
+		}
+
+		/**
+		 * @return the name of the stage
+		 */
+		public String name() {
+			return name;
+		}
+
+		/**
+		 * @return the number of items the stage has handled
+		 */
+		public long items() {
+			return items;
+		}
+
+		/**
+		 * @return the time the stage has spent handling items (not waiting for
+		 *         them), in nanoseconds
+		 */
+		public long busyNanos() {
+			return busyNanos;
+		}
+
+		/**
+		 * @return the number of items the stage can handle per second of work, or 0
+		 *         if it hasn't handled any yet
+		 */
+		public double throughput() {
+			long busy = busyNanos;
+			return (busy == 0) ? 0 : items * 1e9 / busy;
+		}
+
+		/**
+		 * @return the number of items waiting to be handled by the stage (always 0
+		 *         for the first stage, which reads its items itself)
+		 */
+		public int queueDepth() {
+			return (input == null) ? 0 : input.size();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d items, %.0f items/s, %d queued", name, items, throughput(), queueDepth());
+		}
+	}
+
+	//the body of a stage, which may throw IOException
+	private interface Body {
+		void run() throws IOException;
+	}
+
+	//helper method to run the body of a stage, recording the first failure of any stage
+	private static void guard(AtomicReference<Throwable> failure, Body body) {
+		try {
+			body.run();
+		} catch (Throwable e) {
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	//helper method for the middle stages, which apply a function to each item
+	private static <I, O> void relay(Stage stage, RingBuffer<I> in, Function<? super I, ? extends O> function,
+			RingBuffer<O> out, AtomicReference<Throwable> failure) {
+		I item;
+		while ((item = take(in, failure)) != null) {
+			long start = System.nanoTime();
+			O result = function.apply(item);
+			stage.handled(start);
+			put(out, result, failure);
+		}
+		out.close();
+	}
+
+	//helper method to add an item to a queue, waiting while it is full (unless a stage has failed)
+	private static <E> void put(RingBuffer<E> queue, E item, AtomicReference<Throwable> failure) {
+		int spins = 0;
+		while (!queue.offer(item)) {
+			if (failure.get() != null) {
+				return;
+			}
+			spins = pause(spins);
+		}
+	}
+
+	//helper method to take an item from a queue, waiting while it is empty
+	//(null once the queue is closed and empty, or a stage has failed)
+	private static <E> E take(RingBuffer<E> queue, AtomicReference<Throwable> failure) {
+		int spins = 0;
+		while (true) {
+			E item = queue.poll();
+			if (item != null) {
+				return item;
+			}
+			if (queue.isDrained() || failure.get() != null) {
+				return null;
+			}
+			spins = pause(spins);
+		}
+	}
+
+	//helper method to wait a little longer each time a stage finds its queue full or empty
+	private static int pause(int spins) {
+		if (spins < SPINS) {
+			Thread.onSpinWait();
+		}
+		else {
+			int doublings = spins - SPINS;
+			LockSupport.parkNanos(Math.min(MIN_PARK_NANOS << doublings, MAX_PARK_NANOS));
+		}
+		//(no need to count any further once the longest pause is reached, and the count must not overflow)
+		return Math.min(spins + 1, SPINS + MAX_DOUBLINGS);
+	}
+}
@@ -0,0 +1,211 @@
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Function;
+
+import textbook.LinkedBinaryTree;
+
+/**
+ * A stage of a pipeline of expressions, which applies one of the methods of
+ * Assignment to each expression it receives, and publishes the results in the
+ * same order
+ *
+ * Stages are connected by subscribing each stage to the one before it, e.g.
+ *
+ * <pre>
+ * ExpressionProcessor&lt;String, LinkedBinaryTree&lt;String&gt;&gt; parse = ExpressionProcessor.parse();
+ * ExpressionProcessor&lt;LinkedBinaryTree&lt;String&gt;, LinkedBinaryTree&lt;String&gt;&gt; simplify = ExpressionProcessor.simplify();
+ * parse.subscribe(simplify);
+ * </pre>
+ *
+ * Each stage honours backpressure in both directions, so however slow a later
+ * stage is, the memory used by a pipeline is bounded. A stage requests items
+ * from the stage before it batchSize at a time, only once it has processed the
+ * previous batch, and it buffers about batchSize results for each of its
+ * subscribers: once that buffer is full, it waits for the subscriber to take
+ * some before processing any more.
+ *
+ * That wait blocks the thread delivering items to the stage, which is a thread
+ * of the executor of the stage before it. So the factory methods give each
+ * stage's work a thread of its own (see Threads), rather than using the common
+ * ForkJoinPool, whose few workers (one, on a single processor) could all be
+ * tied up by a chain of waiting stages. A stage made with the constructor
+ * should be given a similar executor.
+ *
+ * If the method fails for an item (e.g. an invalid expression), the stage
+ * cancels its subscription and its subscribers receive the exception through
+ * onError (any results not yet delivered to them are dropped). Trees are
+ * changed in place and handed on, so a tree should only be used by one
+ * pipeline at a time.
+ *
+ * @param <T>
+ *            the type of items received
+ * @param <R>
+ *            the type of items published
+ */
+public class ExpressionProcessor<T, R> extends SubmissionPublisher<R> implements Flow.Processor<T, R> {
+
+	/**
+	 * How many items a stage made by one of the factory methods requests at a
+	 * time, and buffers for each subscriber
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	//the executor of the stages made by the factory methods, whose threads may block
+	private static final ExecutorService STAGES = Threads.newThreadPerTaskExecutor("ExpressionProcessor stage");
+
+	private final Function<? super T, ? extends R> operation;
+	private final int batchSize;
+
+	//only used by the thread delivering items to this stage
+	private Flow.Subscription subscription;
+	private int received;
+	private boolean failed;
+
+	/**
+	 * Creates a stage which applies an operation to each item
+	 *
+	 * @param operation
+	 *            - the operation to apply to each item
+	 * @param executor
+	 *            - the executor used to deliver results to subscribers (whose
+	 *            threads block while a subscriber's buffer is full, so it should
+	 *            be able to make more threads as they do)
+	 * @param batchSize
+	 *            - how many items to request at a time, and to buffer for each
+	 *            subscriber
+	 * @throws IllegalArgumentException
+	 *             if operation or executor is null, or batchSize is not positive
+	 */
+	public ExpressionProcessor(Function<? super T, ? extends R> operation, Executor executor, int batchSize)
+			throws IllegalArgumentException {
+		super(checkedExecutor(executor), checkedBatchSize(batchSize));
+		if (operation == null) {
+			throw new IllegalArgumentException("Operation was null");
+		}
+		this.operation = operation;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return a stage which builds a tree from each expression in prefix notation,
+	 *         as Assignment.prefix2tree does
+	 */
+	public static ExpressionProcessor<String, LinkedBinaryTree<String>> parse() {
+		return of(Assignment::prefix2tree);
+	}
+
+	/**
+	 * @param map
+	 *            - a map of variable labels to integer values
+	 * @return a stage which replaces the variables in each tree with their values,
+	 *         as Assignment.substitute does
+	 * @throws IllegalArgumentException
+	 *             if map is null
+	 */
+	public static ExpressionProcessor<LinkedBinaryTree<String>, LinkedBinaryTree<String>> substitute(
+			HashMap<String, Integer> map) throws IllegalArgumentException {
+		if (map == null) {
+			throw new IllegalArgumentException("Map was null");
+		}
+		return of(tree -> Assignment.substitute(tree, map));
+	}
+
+	/**
+	 * @return a stage which simplifies each tree, as Assignment.simplify does
+	 */
+	public static ExpressionProcessor<LinkedBinaryTree<String>, LinkedBinaryTree<String>> simplify() {
+		return of(Assignment::simplify);
+	}
+
+	/**
+	 * @return a stage which simplifies each tree, as Assignment.simplifyFancy does
+	 */
+	public static ExpressionProcessor<LinkedBinaryTree<String>, LinkedBinaryTree<String>> simplifyFancy() {
+		return of(Assignment::simplifyFancy);
+	}
+
+	/**
+	 * @return a stage which gives each tree in prefix notation, as
+	 *         Assignment.tree2prefix does
+	 */
+	public static ExpressionProcessor<LinkedBinaryTree<String>, String> tree2prefix() {
+		return of(Assignment::tree2prefix);
+	}
+
+	/**
+	 * @return a stage which gives each tree in infix notation with parenthesis, as
+	 *         Assignment.tree2infix does
+	 */
+	public static ExpressionProcessor<LinkedBinaryTree<String>, String> tree2infix() {
+		return of(Assignment::tree2infix);
+	}
+
+	//helper method to make a stage with the default executor and batch size
+	private static <T, R> ExpressionProcessor<T, R> of(Function<T, R> operation) {
+		return new ExpressionProcessor<>(operation, STAGES, DEFAULT_BATCH_SIZE);
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			//a stage only processes one stream of items
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		subscription.request(batchSize);
+	}
+
+	@Override
+	public void onNext(T item) {
+		if (failed) {
+			//items which were already on their way when this stage failed are dropped
+			return;
+		}
+		R result;
+		try {
+			result = operation.apply(item);
+		} catch (RuntimeException e) {
+			failed = true;
+			subscription.cancel();
+			closeExceptionally(e);
+			return;
+		}
+		//blocks while any subscriber's buffer is full (see the class comment)
+		submit(result);
+
+		//only ask for the next batch once this one has been processed
+		if (++received == batchSize) {
+			received = 0;
+			subscription.request(batchSize);
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		closeExceptionally(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		close();
+	}
+
+	//helper methods to check the arguments of the constructor before they are passed to SubmissionPublisher
+	private static Executor checkedExecutor(Executor executor) throws IllegalArgumentException {
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor was null");
+		}
+		return executor;
+	}
+
+	private static int checkedBatchSize(int batchSize) throws IllegalArgumentException {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size was not positive");
+		}
+		return batchSize;
+	}
+}
@@ -0,0 +1,382 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A server which answers requests to parse, simplify, substitute into, render
+ * and evaluate arithmetic expressions, over a TCP or Unix-domain socket, so that
+ * many processes can share one evaluator
+ *
+ * Each request is one line, a command followed by its arguments, and gets one
+ * line in reply, either "OK result" or "ERR message". Expressions are given in
+ * prefix notation (as by Assignment.prefix2tree) and are the rest of the line
+ * after the command and any bindings. Bindings are one word, of the form
+ * x=1,y=-2 (or - for no bindings).
+ *
+ * <pre>
+ * PARSE expression                  OK expression in prefix notation
+ * SIMPLIFY expression               OK simplified expression in prefix notation
+ * SIMPLIFYFANCY expression          OK simplified expression in prefix notation
+ * SUBSTITUTE bindings expression    OK expression in prefix notation
+ * INFIX expression                  OK expression in infix notation
+ * EVALUATE bindings expression      OK value
+ * QUIT                              OK (and the connection is closed)
+ * </pre>
+ *
+ * A request longer than MAX_LINE_LENGTH characters is answered with ERR without
+ * being kept in memory, and so is a request which fails for any other reason.
+ *
+ * A client may send several requests without waiting for the replies. Replies
+ * are sent in the same order, and are only flushed once no more requests are
+ * waiting to be read, so a batch of requests is answered with few writes.
+ *
+ * Each connection is handled by its own thread: a virtual thread where the
+ * runtime supports them (Java 21 and later), otherwise a thread from a cached
+ * pool. Parsed expressions are immutable, so they are cached and shared
+ * between all connections, up to CACHE_SIZE expressions and CACHE_CHARS
+ * characters of expression text.
+ */
+public class ExpressionServer implements Closeable {
+
+	/**
+	 * The most parsed expressions kept in the cache
+	 */
+	public static final int CACHE_SIZE = 1024;
+
+	/**
+	 * The most characters of expression text kept in the cache
+	 */
+	public static final int CACHE_CHARS = 1 << 22;
+
+	/**
+	 * The longest request line which is read, in characters
+	 */
+	public static final int MAX_LINE_LENGTH = 1 << 20;
+
+	//the longest wait between attempts to accept a connection, after repeated failures
+	private static final long MAX_BACKOFF_MILLIS = 1000;
+
+	private final ServerSocketChannel server;
+	private final SocketAddress address;
+	private final ExecutorService connections;
+	private final Thread acceptor;
+	private final Set<SocketChannel> open = ConcurrentHashMap.newKeySet();
+	private final int maxLineLength;
+	private final int cacheChars;
+
+	//the most recently used parsed expressions, keyed by their text, least recently used first
+	//(guarded by itself, as is cachedChars)
+	private final LinkedHashMap<String, PersistentExpression> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private long cachedChars = 0;
+
+	private ExpressionServer(ServerSocketChannel server, int maxLineLength, int cacheChars) throws IOException {
+		this.server = server;
+		this.maxLineLength = maxLineLength;
+		this.cacheChars = cacheChars;
+		this.address = server.getLocalAddress();
+		this.connections = Threads.newThreadPerTaskExecutor("ExpressionServer connection");
+		this.acceptor = new Thread(this::accept, "ExpressionServer " + address);
+		acceptor.setDaemon(true);
+	}
+
+	/**
+	 * Start a server listening on an address
+	 *
+	 * @param address
+	 *            - an InetSocketAddress (with port 0 for any free port), or a
+	 *            UnixDomainSocketAddress for a socket file which doesn't exist yet
+	 * @return the running server
+	 * @throws IOException
+	 *             if the address could not be bound
+	 * @throws IllegalArgumentException
+	 *             if address is null
+	 */
+	public static ExpressionServer start(SocketAddress address) throws IOException, IllegalArgumentException {
+		return start(address, MAX_LINE_LENGTH, CACHE_CHARS);
+	}
+
+	//start, with the limits on the length of a line and the characters in the cache given explicitly
+	static ExpressionServer start(SocketAddress address, int maxLineLength, int cacheChars)
+			throws IOException, IllegalArgumentException {
+		if (address == null) {
+			throw new IllegalArgumentException("Address was null");
+		}
+		ServerSocketChannel channel = (address instanceof UnixDomainSocketAddress)
+				? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+				: ServerSocketChannel.open();
+		try {
+			channel.bind(address);
+			ExpressionServer server = new ExpressionServer(channel, maxLineLength, cacheChars);
+			server.acceptor.start();
+			return server;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the address the server is listening on (with the port it was
+	 *         given, if it was started on port 0)
+	 */
+	public SocketAddress address() {
+		return address;
+	}
+
+	/**
+	 * Stop listening, and close every open connection. For a Unix-domain socket,
+	 * the socket file is deleted.
+	 *
+	 * @throws IOException
+	 *             if the socket could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		server.close();
+		connections.shutdownNow();
+		for (SocketChannel client : open) {
+			client.close();
+		}
+		if (address instanceof UnixDomainSocketAddress) {
+			Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+		}
+	}
+
+	//the loop of the accepting thread, which hands each new connection to its own thread
+	private void accept() {
+		long backoff = 0;
+		while (server.isOpen()) {
+			try {
+				SocketChannel client = server.accept();
+				backoff = 0;
+				open.add(client);
+				try {
+					connections.execute(() -> serve(client));
+				} catch (RejectedExecutionException e) {
+					//the server is being closed
+					open.remove(client);
+					client.close();
+				}
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				//a failed connection doesn't stop the server, but repeated failures (e.g. running out of file
+				//descriptors) are waited out, for twice as long each time
+				backoff = (backoff == 0) ? 1 : Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException interrupted) {
+					return;
+				}
+			}
+		}
+	}
+
+	//answer the requests of one connection until it is closed or sends QUIT
+	private void serve(SocketChannel client) {
+		try (SocketChannel channel = client) {
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+			BufferedWriter out = new BufferedWriter(
+					new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+			StringBuilder buffer = new StringBuilder();
+			String line;
+			while ((line = readLine(in, buffer, maxLineLength)) != null) {
+				boolean quit = line.equals("QUIT");
+				if (line == TOO_LONG) {
+					out.write("ERR Request was longer than " + maxLineLength + " characters");
+				}
+				else {
+					out.write(quit ? "OK" : respond(line));
+				}
+				out.write('\n');
+				if (quit) {
+					out.flush();
+					return;
+				}
+				//only flush once every request which has already arrived has been answered
+				if (!in.ready()) {
+					out.flush();
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			//the client went away, or the server is being closed
+		} finally {
+			open.remove(client);
+		}
+	}
+
+	//what readLine gives for a line which was too long
+	private static final String TOO_LONG = new String("");
+
+	//helper method to read a line (ended by \n or \r\n) of at most max characters, giving TOO_LONG (once the
+	//rest of the line has been skipped) if it is longer, or null at the end of the stream
+	private static String readLine(BufferedReader in, StringBuilder line, int max) throws IOException {
+		line.setLength(0);
+		boolean tooLong = false;
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c < 0) {
+				if (line.length() == 0 && !tooLong) {
+					return null;
+				}
+				break;
+			}
+			if (line.length() < max + 1) {
+				line.append((char) c);
+			}
+			else {
+				tooLong = true;
+			}
+		}
+		int length = line.length();
+		if (length > 0 && line.charAt(length - 1) == '\r') {
+			length--;
+		}
+		if (tooLong || length > max) {
+			return TOO_LONG;
+		}
+		return line.substring(0, length);
+	}
+
+	/**
+	 * Work out the reply to a single request line (other than QUIT)
+	 *
+	 * @param request
+	 *            - a request, without its line terminator
+	 * @return the reply, without a line terminator
+	 */
+	String respond(String request) {
+		try {
+			int space = request.indexOf(' ');
+			if (space < 0) {
+				throw new IllegalArgumentException("Missing arguments");
+			}
+			String command = request.substring(0, space);
+			String arguments = request.substring(space + 1);
+			switch (command) {
+			case "PARSE":
+				return "OK " + parse(arguments).toPrefix();
+			case "SIMPLIFY":
+				return "OK " + parse(arguments).simplify().toPrefix();
+			case "SIMPLIFYFANCY":
+				return "OK " + parse(arguments).simplifyFancy().toPrefix();
+			case "INFIX":
+				return "OK " + parse(arguments).toInfix();
+			case "SUBSTITUTE":
+			case "EVALUATE": {
+				int split = arguments.indexOf(' ');
+				if (split < 0) {
+					throw new IllegalArgumentException("Missing expression");
+				}
+				HashMap<String, Integer> bindings = bindings(arguments.substring(0, split));
+				PersistentExpression expression = parse(arguments.substring(split + 1));
+				if (command.equals("SUBSTITUTE")) {
+					return "OK " + expression.substitute(bindings).toPrefix();
+				}
+				return "OK " + expression.evaluate(bindings);
+			}
+			default:
+				throw new IllegalArgumentException("Unknown command " + command);
+			}
+		} catch (IllegalArgumentException e) {
+			String message = e.getMessage();
+			if (message == null) {
+				message = "Not a valid expression";
+			}
+			//a reply must fit on one line
+			return "ERR " + message.replace('\n', ' ').replace('\r', ' ');
+		} catch (RuntimeException e) {
+			//a bug shouldn't cost the client its connection
+			return "ERR Internal error (" + e.getClass().getName() + ")";
+		}
+	}
+
+	//helper method to parse an expression, or find it in the cache if it has been parsed before
+	private PersistentExpression parse(String expression) throws IllegalArgumentException {
+		PersistentExpression parsed;
+		synchronized (cache) {
+			parsed = cache.get(expression);
+		}
+		if (parsed == null) {
+			//two connections may parse the same expression at once, which is harmless
+			parsed = PersistentExpression.of(expression);
+			cache(expression, parsed);
+		}
+		return parsed;
+	}
+
+	//helper method to add a parsed expression to the cache, then drop the least recently used ones until
+	//the cache is within its limits
+	private void cache(String expression, PersistentExpression parsed) {
+		if (expression.length() > cacheChars) {
+			return;
+		}
+		synchronized (cache) {
+			PersistentExpression previous = cache.put(expression, parsed);
+			if (previous == null) {
+				cachedChars += expression.length();
+			}
+			Iterator<Map.Entry<String, PersistentExpression>> eldest = cache.entrySet().iterator();
+			while (cache.size() > CACHE_SIZE || cachedChars > cacheChars) {
+				cachedChars -= eldest.next().getKey().length();
+				eldest.remove();
+			}
+		}
+	}
+
+	//helper method to read bindings of the form x=1,y=-2 (or - for none)
+	private static HashMap<String, Integer> bindings(String word) throws IllegalArgumentException {
+		HashMap<String, Integer> bindings = new HashMap<>();
+		if (word.equals("-")) {
+			return bindings;
+		}
+		for (String binding : word.split(",")) {
+			int equals = binding.lastIndexOf('=');
+			if (equals <= 0) {
+				throw new IllegalArgumentException("Not a valid binding: " + binding);
+			}
+			try {
+				bindings.put(binding.substring(0, equals), Integer.parseInt(binding.substring(equals + 1)));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Not a valid binding: " + binding);
+			}
+		}
+		return bindings;
+	}
+
+	//the number of expressions in the cache (for testing)
+	int cached() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	//the number of characters of expression text in the cache (for testing)
+	long cachedChars() {
+		synchronized (cache) {
+			return cachedChars;
+		}
+	}
+}
@@ -0,0 +1,441 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import textbook.BinaryTree;
+import textbook.LinkedBinaryTree;
+
+/**
+ * A persistent, append-only store of encoded expression trees (see
+ * ExpressionCodec), where any expression can be looked up by its id in O(1) time
+ * without reading the others
+ *
+ * A store is a directory holding two files:
+ *  - a data file of records, each an int length, an int CRC32 checksum and the
+ *    encoded tree
+ *  - an index file, read and written through FileChannel.map, holding a header
+ *    (the number of ids and the generation of the data file) followed by the
+ *    offset of each id's record in the data file
+ *
+ * A record is written and forced to disk before its offset is added to the index,
+ * and the index's count is updated last. If the process stops part way through an
+ * append, opening the store again finds the last complete, correctly checksummed
+ * record and discards anything after it. Deleted ids keep their record until
+ * compact() rewrites the data file without them (ids don't change). The index
+ * is mapped as a single buffer, so a store holds at most MAX_IDS ids.
+ *
+ * All methods are synchronized, so a store can be shared between threads.
+ */
+public class ExpressionStore implements Closeable {
+
+	private static final String INDEX_FILE = "expressions.idx";
+	private static final String DATA_PREFIX = "expressions.";
+	private static final String DATA_SUFFIX = ".dat";
+
+	//layout of the index file
+	private static final int COUNT = 0;
+	private static final int GENERATION = 8;
+	private static final int HEADER_SIZE = 16;
+	private static final int ENTRY_SIZE = 8;
+	private static final int INITIAL_ENTRIES = 1024;
+
+	/**
+	 * The most ids a store can give out, as every entry of the index must be
+	 * within the 2GB a single mapped buffer can hold
+	 */
+	public static final int MAX_IDS = (Integer.MAX_VALUE - HEADER_SIZE) / ENTRY_SIZE;
+
+	//an index entry is the offset of the record, ~offset once deleted, or PURGED once compacted away
+	private static final long PURGED = Long.MIN_VALUE;
+
+	//layout of a record
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	//data files are mapped in segments, since a single mapping is limited to 2GB
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	private final Path directory;
+	private FileChannel indexChannel;
+	private MappedByteBuffer index;
+	private FileChannel dataChannel;
+	private long dataEnd;
+	private long generation;
+	private int count;
+	private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+	//private constructor, stores are made with open
+	private ExpressionStore(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Open the store in a directory, creating it if it doesn't exist yet, and
+	 * recovering from any append which was interrupted
+	 *
+	 * @param directory
+	 *            - the directory holding the store
+	 * @return the opened store
+	 * @throws IOException
+	 *             if the store could not be opened
+	 */
+	public static ExpressionStore open(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		ExpressionStore store = new ExpressionStore(directory);
+		store.load();
+		return store;
+	}
+
+	/**
+	 * @return the number of ids given out by the store (including deleted ones)
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Add an expression tree to the store
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return the id of the expression in the store
+	 * @throws IOException
+	 *             if the store could not be written
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 * @throws IllegalStateException
+	 *             if the store already holds MAX_IDS ids
+	 */
+	public synchronized int append(BinaryTree<String> tree)
+			throws IOException, IllegalArgumentException, IllegalStateException {
+		if (count == MAX_IDS) {
+			throw new IllegalStateException("Store can't hold more than " + MAX_IDS + " ids");
+		}
+		ByteBuffer encoded = ExpressionCodec.encode(tree);
+		long offset = dataEnd;
+		writeRecord(dataChannel, offset, encoded);
+		dataChannel.force(false);
+		dataEnd = offset + RECORD_HEADER_SIZE + encoded.limit();
+
+		if (entryOffset(count + 1) > index.capacity()) {
+			mapIndex(Math.min(2L * (index.capacity() - HEADER_SIZE) / ENTRY_SIZE, MAX_IDS));
+		}
+		index.putLong(entryOffset(count), offset);
+		index.force();
+		index.putLong(COUNT, count + 1);
+		index.force();
+		return count++;
+	}
+
+	/**
+	 * Look up an expression, decoding it into a tree
+	 *
+	 * @param id
+	 *            - the id given when the expression was added
+	 * @return the expression tree, or null if it has been deleted
+	 * @throws IOException
+	 *             if the store could not be read, or the record is corrupt
+	 * @throws IllegalArgumentException
+	 *             if there is no expression with that id
+	 */
+	public synchronized LinkedBinaryTree<String> get(int id) throws IOException, IllegalArgumentException {
+		ByteBuffer encoded = lookup(id);
+		return (encoded == null) ? null : ExpressionCodec.decode(encoded);
+	}
+
+	/**
+	 * Look up an expression and evaluate it straight from its encoding, without
+	 * decoding it into a tree
+	 *
+	 * @param id
+	 *            - the id given when the expression was added
+	 * @param bindings
+	 *            - a map of variable labels to integer values
+	 * @return the value of the expression
+	 * @throws IOException
+	 *             if the store could not be read, or the record is corrupt
+	 * @throws IllegalArgumentException
+	 *             if there is no expression with that id (or it has been deleted),
+	 *             or a variable it uses is missing from (or null in) bindings
+	 */
+	public synchronized int evaluate(int id, Map<String, Integer> bindings) throws IOException, IllegalArgumentException {
+		ByteBuffer encoded = lookup(id);
+		if (encoded == null) {
+			throw new IllegalArgumentException("Expression " + id + " has been deleted");
+		}
+		return ExpressionCodec.evaluate(encoded, bindings);
+	}
+
+	/**
+	 * Delete an expression. Its id is not reused, and its record stays in the data
+	 * file until the store is compacted.
+	 *
+	 * @param id
+	 *            - the id given when the expression was added
+	 * @throws IllegalArgumentException
+	 *             if there is no expression with that id
+	 */
+	public synchronized void delete(int id) throws IllegalArgumentException {
+		long entry = entry(id);
+		if (entry >= 0) {
+			index.putLong(entryOffset(id), ~entry);
+			index.force();
+		}
+	}
+
+	/**
+	 * Rewrite the data file without the records of deleted expressions. The new
+	 * data file is only used once it is complete and the index pointing at it has
+	 * replaced the old index, so the store is never left half compacted.
+	 *
+	 * @throws IOException
+	 *             if the store could not be compacted
+	 */
+	public synchronized void compact() throws IOException {
+		long newGeneration = generation + 1;
+		Path newIndexFile = directory.resolve(INDEX_FILE + ".tmp");
+		long newDataEnd = 0;
+		try (FileChannel newData = FileChannel.open(dataFile(newGeneration), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+				FileChannel newIndex = FileChannel.open(newIndexFile, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer entries = ByteBuffer.allocate(entryOffset(count));
+			entries.putLong(COUNT, count);
+			entries.putLong(GENERATION, newGeneration);
+			for (int id = 0; id < count; id++) {
+				long entry = entry(id);
+				if (entry < 0) {
+					entries.putLong(entryOffset(id), PURGED);
+					continue;
+				}
+				ByteBuffer encoded = lookup(id);
+				writeRecord(newData, newDataEnd, encoded);
+				entries.putLong(entryOffset(id), newDataEnd);
+				newDataEnd += RECORD_HEADER_SIZE + encoded.limit();
+			}
+			newData.force(false);
+			while (entries.hasRemaining()) {
+				newIndex.write(entries);
+			}
+			newIndex.force(false);
+		}
+
+		//switch over to the new files, making sure the rename (and the new data file) survive a crash
+		close();
+		Files.move(newIndexFile, directory.resolve(INDEX_FILE), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		forceDirectory();
+		load();
+	}
+
+	/**
+	 * Close the files of the store
+	 *
+	 * @throws IOException
+	 *             if a file could not be closed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		index.force();
+		indexChannel.close();
+		dataChannel.close();
+		segments = new MappedByteBuffer[0];
+	}
+
+	//private helper method to find the encoded tree for an id, checking its checksum (null if deleted)
+	private ByteBuffer lookup(int id) throws IOException, IllegalArgumentException {
+		long offset = entry(id);
+		if (offset < 0) {
+			return null;
+		}
+		ByteBuffer record = read(offset, RECORD_HEADER_SIZE);
+		int length = record.getInt(0);
+		int checksum = record.getInt(4);
+		if (length < 0 || offset + RECORD_HEADER_SIZE + length > dataEnd) {
+			throw new IOException("Record " + id + " is corrupt");
+		}
+		ByteBuffer encoded = read(offset + RECORD_HEADER_SIZE, length);
+		if (checksumOf(encoded) != checksum) {
+			throw new IOException("Record " + id + " failed its checksum");
+		}
+		return encoded;
+	}
+
+	//private helper method to get a view of part of the data file, through its mapped segments where possible
+	private ByteBuffer read(long offset, int length) throws IOException {
+		int segment = (int) (offset / SEGMENT_SIZE);
+		long start = offset - segment * SEGMENT_SIZE;
+		if (start + length <= SEGMENT_SIZE) {
+			if (segment >= segments.length) {
+				segments = Arrays.copyOf(segments, segment + 1);
+			}
+			MappedByteBuffer mapped = segments[segment];
+			if (mapped == null || mapped.capacity() < start + length) {
+				long mappedLength = Math.min(SEGMENT_SIZE, dataEnd - segment * SEGMENT_SIZE);
+				mapped = dataChannel.map(FileChannel.MapMode.READ_ONLY, segment * SEGMENT_SIZE, mappedLength);
+				segments[segment] = mapped;
+			}
+			ByteBuffer view = mapped.duplicate();
+			view.position((int) start).limit((int) start + length);
+			return view.slice();
+		}
+
+		//the range crosses from one segment into the next, so just read it
+		ByteBuffer copy = ByteBuffer.allocate(length);
+		readFully(copy, offset);
+		return copy;
+	}
+
+	//private helper method to open the files of the store, recovering from any append which was interrupted
+	private void load() throws IOException {
+		indexChannel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long entries = (indexChannel.size() - HEADER_SIZE) / ENTRY_SIZE;
+		if (entries > MAX_IDS) {
+			throw new IOException("Index file is corrupt");
+		}
+		mapIndex(Math.max(INITIAL_ENTRIES, entries));
+		long storedCount = index.getLong(COUNT);
+		if (storedCount < 0 || storedCount > Math.max(INITIAL_ENTRIES, entries)) {
+			throw new IOException("Index file is corrupt");
+		}
+		count = (int) storedCount;
+		generation = index.getLong(GENERATION);
+		dataChannel = FileChannel.open(dataFile(generation), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		segments = new MappedByteBuffer[0];
+
+		//the data ends after the last record in the index, as long as that record is complete
+		long fileSize = dataChannel.size();
+		dataEnd = 0;
+		for (int id = count - 1; id >= 0; id--) {
+			long entry = index.getLong(entryOffset(id));
+			if (entry == PURGED) {
+				continue;
+			}
+			long end = recordEnd((entry < 0) ? ~entry : entry, fileSize);
+			if (end >= 0) {
+				dataEnd = end;
+				break;
+			}
+			//the append of this record never finished, so forget its id
+			count = id;
+		}
+		index.putLong(COUNT, count);
+		index.force();
+		dataChannel.truncate(dataEnd);
+		deleteOtherGenerations();
+	}
+
+	//private helper method to find the end of a complete record with a correct checksum (or -1 if there isn't one)
+	private long recordEnd(long offset, long fileSize) throws IOException {
+		if (offset + RECORD_HEADER_SIZE > fileSize) {
+			return -1;
+		}
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		readFully(header, offset);
+		int length = header.getInt(0);
+		long end = offset + RECORD_HEADER_SIZE + length;
+		if (length < 0 || end > fileSize) {
+			return -1;
+		}
+		ByteBuffer encoded = ByteBuffer.allocate(length);
+		readFully(encoded, offset + RECORD_HEADER_SIZE);
+		return (checksumOf(encoded) == header.getInt(4)) ? end : -1;
+	}
+
+	//private helper method to fill a buffer from the data file, starting at the given offset, ready to be read
+	private void readFully(ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (dataChannel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of data file");
+			}
+		}
+		buffer.flip();
+	}
+
+	//private helper method to remove data files left behind by a compaction which didn't finish (or did)
+	private void deleteOtherGenerations() throws IOException {
+		Path current = dataFile(generation);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, DATA_PREFIX + "*" + DATA_SUFFIX)) {
+			for (Path file : files) {
+				if (!file.equals(current)) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+		Files.deleteIfExists(directory.resolve(INDEX_FILE + ".tmp"));
+	}
+
+	//private helper method to (re)map the index file with room for the given number of entries
+	private void mapIndex(long entries) throws IOException {
+		index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + entries * ENTRY_SIZE);
+	}
+
+	//private helper method to find the index entry of an id
+	private long entry(int id) throws IllegalArgumentException {
+		if (id < 0 || id >= count) {
+			throw new IllegalArgumentException("No expression with id " + id);
+		}
+		return index.getLong(entryOffset(id));
+	}
+
+	//helper method to find the position of an id's entry in the index file (or, for MAX_IDS, the end of the
+	//last entry), computed in long so that it can't overflow
+	static int entryOffset(int id) throws IllegalStateException {
+		long offset = HEADER_SIZE + (long) id * ENTRY_SIZE;
+		if (id < 0 || offset > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Id " + id + " is outside the index");
+		}
+		return (int) offset;
+	}
+
+	//private helper method to force the directory itself to disk, so renames and new files in it are kept
+	private void forceDirectory() throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory, StandardOpenOption.READ);
+		} catch (IOException e) {
+			//some platforms (e.g. Windows) can't open a directory, and keep its entries without this
+			return;
+		}
+		try (FileChannel opened = channel) {
+			opened.force(true);
+		}
+	}
+
+	//private helper method to find the data file of a generation
+	private Path dataFile(long generation) {
+		return directory.resolve(DATA_PREFIX + generation + DATA_SUFFIX);
+	}
+
+	//private helper method to write a record (header and encoded tree) at the given offset of a data file
+	private static void writeRecord(FileChannel data, long offset, ByteBuffer encoded) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		header.putInt(0, encoded.remaining());
+		header.putInt(4, checksumOf(encoded));
+		ByteBuffer[] record = { header, encoded.duplicate() };
+		long written = 0;
+		long length = RECORD_HEADER_SIZE + encoded.remaining();
+		data.position(offset);
+		while (written < length) {
+			written += data.write(record);
+		}
+	}
+
+	//private helper method to find the CRC32 checksum of the remaining bytes of a buffer
+	private static int checksumOf(ByteBuffer bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes.duplicate());
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import textbook.AbstractBinaryTree;
+import textbook.BinaryTree;
+import textbook.Position;
+
+/**
+ * A read-only binary tree for an arithmetic expression, stored outside the Java
+ * heap so that the garbage collector never has to scan its nodes
+ *
+ * Each node is a fixed-width record in a direct ByteBuffer, holding its kind
+ * (operator, numeric value or variable), a numeric value or the id of a variable,
+ * and the record numbers of its children and parent. Variable names are kept once
+ * each on the heap. Since a ByteBuffer can hold at most 2 GiB, the records are
+ * split into chunks of a fixed number of records each, so a tree can have up to
+ * Integer.MAX_VALUE nodes, and growing it never copies a full chunk.
+ *
+ * Positions are lightweight views of a record, created when they are asked
+ * for, so read-side methods of Assignment (tree2prefix, tree2infix,
+ * isArithmeticExpression and equals) work on this tree as they do on a
+ * LinkedBinaryTree.
+ *
+ * The off-heap memory is released when the tree is garbage collected.
+ */
+public class OffHeapBinaryTree extends AbstractBinaryTree<String> {
+
+	//layout of a record
+	private static final int RECORD_SIZE = 20;
+	private static final int KIND = 0;
+	private static final int VALUE = 4;
+	private static final int LEFT = 8;
+	private static final int RIGHT = 12;
+	private static final int PARENT = 16;
+
+	//kinds of node
+	private static final int NUMBER = 0;
+	private static final int VARIABLE = 1;
+	private static final int PLUS = 2;
+	private static final int MINUS = 3;
+	private static final int TIMES = 4;
+
+	private static final int NONE = -1;
+
+	//records are stored in chunks of 2^CHUNK_SHIFT records, so the offset of a record in its chunk fits in an int
+	private static final int CHUNK_SHIFT = 20;
+
+	private final int shift;
+	private final int mask;
+	private ByteBuffer[] chunks = new ByteBuffer[1];
+	private int size = 0;
+
+	//anything stored at a leaf which isn't an int in its usual form is kept here, once each
+	private final ArrayList<String> names = new ArrayList<>();
+	private final HashMap<String, Integer> nameIds = new HashMap<>();
+
+	//a read-only view of one record
+	private static final class NodeView implements Position<String> {
+		private final OffHeapBinaryTree tree;
+		private final int node;
+
+		private NodeView(OffHeapBinaryTree tree, int node) {
+			this.tree = tree;
+			this.node = node;
+		}
+
+		@Override
+		public String getElement() {
+			return tree.elementOf(node);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof NodeView) && ((NodeView) o).tree == tree && ((NodeView) o).node == node;
+		}
+
+		@Override
+		public int hashCode() {
+			return node;
+		}
+	}
+
+	//private constructor, trees are made with parse or copyOf
+	private OffHeapBinaryTree(int capacity, int shift) {
+		this.shift = shift;
+		this.mask = (1 << shift) - 1;
+		chunks[0] = allocate(Math.max(1, Math.min(capacity, 1 << shift)));
+	}
+
+	/**
+	 * Build an off-heap tree for an arithmetic expression in prefix notation. The
+	 * same expressions are accepted as Assignment.prefix2tree accepts.
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @return a tree representing the expression
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression
+	 */
+	public static OffHeapBinaryTree parse(String expression) throws IllegalArgumentException {
+		return parse(expression, CHUNK_SHIFT);
+	}
+
+	//parse, storing the records in chunks of 2^shift records (smaller chunks are used by tests)
+	static OffHeapBinaryTree parse(String expression, int shift) throws IllegalArgumentException {
+		PrefixTokenizer tokens = new PrefixTokenizer(expression);
+		OffHeapBinaryTree tree = new OffHeapBinaryTree(expression.length() / 2 + 1, shift);
+
+		//operators whose children haven't both been added yet
+		int[] pending = new int[16];
+		boolean[] hasLeft = new boolean[16];
+		int depth = 0;
+
+		try {
+			String token;
+			while ((token = tokens.next()) != null) {
+				int parent = NONE;
+				if (depth > 0) {
+					parent = pending[depth - 1];
+				}
+				int node = tree.append(token, parent);
+				if (depth > 0) {
+					if (hasLeft[depth - 1]) {
+						tree.put(parent, RIGHT, node);
+						depth--;
+					}
+					else {
+						tree.put(parent, LEFT, node);
+						hasLeft[depth - 1] = true;
+					}
+				}
+				if (PrefixTokenizer.isOperator(token)) {
+					if (depth == pending.length) {
+						pending = Arrays.copyOf(pending, depth * 2);
+						hasLeft = Arrays.copyOf(hasLeft, depth * 2);
+					}
+					pending[depth] = node;
+					hasLeft[depth] = false;
+					depth++;
+				}
+				else if (depth == 0) {
+					return tree;
+				}
+			}
+		} catch (IOException e) {
+			//can't happen, the tokenizer is reading from a String
+			throw new UncheckedIOException(e);
+		}
+
+		//ran out of tokens before the expression was complete
+		throw new IllegalArgumentException("String was not a valid arithmetic expression in prefix notation");
+	}
+
+	/**
+	 * Copy a tree representing an arithmetic expression (e.g. a LinkedBinaryTree)
+	 * into off-heap storage
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return an off-heap tree with the same structure and values
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static OffHeapBinaryTree copyOf(BinaryTree<String> tree) throws IllegalArgumentException {
+		return copyOf(tree, CHUNK_SHIFT);
+	}
+
+	//copyOf, storing the records in chunks of 2^shift records (smaller chunks are used by tests)
+	static OffHeapBinaryTree copyOf(BinaryTree<String> tree, int shift) throws IllegalArgumentException {
+		if (!Assignment.isArithmeticExpression(tree)) {
+			throw new IllegalArgumentException();
+		}
+		OffHeapBinaryTree copy = new OffHeapBinaryTree(tree.size(), shift);
+
+		//positions still to be copied, with the record whose child each one becomes
+		ArrayList<Position<String>> positions = new ArrayList<>();
+		int[] parents = new int[16];
+		positions.add(tree.root());
+		parents[0] = NONE;
+
+		while (!positions.isEmpty()) {
+			int last = positions.size() - 1;
+			Position<String> p = positions.remove(last);
+			int parent = parents[last];
+			int node = copy.append(p.getElement(), parent);
+			//records are copied in preorder, so a left child always comes straight after its parent
+			if (parent != NONE) {
+				copy.put(parent, (node == parent + 1 ? LEFT : RIGHT), node);
+			}
+			if (tree.isInternal(p)) {
+				if (last + 2 > parents.length) {
+					parents = Arrays.copyOf(parents, parents.length * 2);
+				}
+				positions.add(tree.right(p));
+				parents[last] = node;
+				positions.add(tree.left(p));
+				parents[last + 1] = node;
+			}
+		}
+		return copy;
+	}
+
+	//private helper method to allocate a buffer for the given number of records
+	private static ByteBuffer allocate(int records) {
+		return ByteBuffer.allocateDirect(records * RECORD_SIZE).order(ByteOrder.nativeOrder());
+	}
+
+	//private helper methods to read and write a field of a record
+	private int get(int node, int field) {
+		return chunks[node >>> shift].getInt((node & mask) * RECORD_SIZE + field);
+	}
+
+	private void put(int node, int field, int value) {
+		chunks[node >>> shift].putInt((node & mask) * RECORD_SIZE + field, value);
+	}
+
+	//private helper method to make room for one more record, growing the last chunk or starting a new one
+	private void reserve() {
+		if (size == Integer.MAX_VALUE) {
+			throw new IllegalStateException("Tree has the most nodes an OffHeapBinaryTree can hold");
+		}
+		int chunk = size >>> shift;
+		int perChunk = 1 << shift;
+		if (chunk == chunks.length) {
+			chunks = Arrays.copyOf(chunks, chunks.length * 2);
+		}
+		if (chunks[chunk] == null) {
+			chunks[chunk] = allocate(perChunk);
+		}
+		else if (((size & mask) + 1) * RECORD_SIZE > chunks[chunk].capacity()) {
+			//only the first chunk starts out smaller than a full chunk
+			ByteBuffer larger = allocate(Math.min(chunks[chunk].capacity() / RECORD_SIZE * 2, perChunk));
+			ByteBuffer old = chunks[chunk].duplicate();
+			old.clear();
+			larger.put(old);
+			chunks[chunk] = larger;
+		}
+	}
+
+	//private helper method to add a record for an element after the last one
+	private int append(String element, int parent) {
+		reserve();
+		int kind;
+		int value = 0;
+		if (element.equals("+")) {
+			kind = PLUS;
+		}
+		else if (element.equals("-")) {
+			kind = MINUS;
+		}
+		else if (element.equals("*")) {
+			kind = TIMES;
+		}
+		else {
+			kind = VARIABLE;
+			//values are only stored as numbers if they would be output exactly the same way (so not "007")
+			try {
+				value = Integer.parseInt(element);
+				if (Integer.toString(value).equals(element)) {
+					kind = NUMBER;
+				}
+			} catch (NumberFormatException e) {
+				//it's a variable
+			}
+			if (kind == VARIABLE) {
+				Integer id = nameIds.get(element);
+				if (id == null) {
+					id = names.size();
+					names.add(element);
+					nameIds.put(element, id);
+				}
+				value = id;
+			}
+		}
+		put(size, KIND, kind);
+		put(size, VALUE, value);
+		put(size, LEFT, NONE);
+		put(size, RIGHT, NONE);
+		put(size, PARENT, parent);
+		return size++;
+	}
+
+	//private helper method to find the element stored in a record
+	private String elementOf(int node) {
+		switch (get(node, KIND)) {
+		case PLUS:
+			return "+";
+		case MINUS:
+			return "-";
+		case TIMES:
+			return "*";
+		case NUMBER:
+			return Integer.toString(get(node, VALUE));
+		default:
+			return names.get(get(node, VALUE));
+		}
+	}
+
+	//private helper method to check that a position is a view of a record of this tree
+	private int validate(Position<String> p) throws IllegalArgumentException {
+		if (!(p instanceof NodeView) || ((NodeView) p).tree != this) {
+			throw new IllegalArgumentException("Not valid position type");
+		}
+		return ((NodeView) p).node;
+	}
+
+	//private helper method to make a view of a record (or null for no record)
+	private Position<String> view(int node) {
+		return (node == NONE) ? null : new NodeView(this, node);
+	}
+
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the root Position of the tree
+	 */
+	@Override
+	public Position<String> root() {
+		return view(0);
+	}
+
+	/**
+	 * @param p
+	 *            - a valid Position within the tree
+	 * @return the Position of p's parent (or null if p is root)
+	 * @throws IllegalArgumentException
+	 *             if p is not a valid Position for this tree
+	 */
+	@Override
+	public Position<String> parent(Position<String> p) throws IllegalArgumentException {
+		return view(get(validate(p), PARENT));
+	}
+
+	/**
+	 * @param p
+	 *            - a valid Position within the tree
+	 * @return the Position of p's left child (or null if no child exists)
+	 * @throws IllegalArgumentException
+	 *             if p is not a valid Position for this tree
+	 */
+	@Override
+	public Position<String> left(Position<String> p) throws IllegalArgumentException {
+		return view(get(validate(p), LEFT));
+	}
+
+	/**
+	 * @param p
+	 *            - a valid Position within the tree
+	 * @return the Position of p's right child (or null if no child exists)
+	 * @throws IllegalArgumentException
+	 *             if p is not a valid Position for this tree
+	 */
+	@Override
+	public Position<String> right(Position<String> p) throws IllegalArgumentException {
+		return view(get(validate(p), RIGHT));
+	}
+
+	/**
+	 * @param p
+	 *            - a valid Position within the tree
+	 * @return the Position of p's sibling (or null if no sibling exists)
+	 * @throws IllegalArgumentException
+	 *             if p is not a valid Position for this tree
+	 */
+	@Override
+	public Position<String> sibling(Position<String> p) throws IllegalArgumentException {
+		//views are made on demand, so compare records rather than using ==
+		int parent = get(validate(p), PARENT);
+		if (parent == NONE) {
+			return null;
+		}
+		int left = get(parent, LEFT);
+		return view(left == validate(p) ? get(parent, RIGHT) : left);
+	}
+
+	/**
+	 * @param p
+	 *            - a valid Position within the tree
+	 * @return true if p is the root of the tree
+	 */
+	@Override
+	public boolean isRoot(Position<String> p) {
+		return validate(p) == 0;
+	}
+}
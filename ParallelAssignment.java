@@ -0,0 +1,838 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import textbook.AugmentedBinaryTree;
+import textbook.BinaryTree;
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+/**
+ * Versions of the methods of Assignment which split large trees between the
+ * threads of a ForkJoinPool, giving exactly the same results as the sequential
+ * versions
+ *
+ * The subtrees of an operator are independent of each other, but they are part
+ * of one LinkedBinaryTree, whose size and modification count every update
+ * method changes. Methods which only read a tree (rendering it, comparing it or
+ * hashing it), or only replace elements in it (substitute, with set, which never
+ * changes its structure), share it between their tasks as it is, each task
+ * working on its own positions; tasks setting elements at the same time only
+ * share the modification count, which ends up changed whatever order they run
+ * in. simplify, which changes the structure, cuts operands off as separate trees
+ * with detach (which takes O(1) time), hands them to subtasks, and attaches them
+ * back once they are done; as the operands come back simplified, only the
+ * operator above them is left to simplify.
+ *
+ * A subtree is only split if it is large enough to be worth it. For an
+ * AugmentedBinaryTree the size of each subtree is known; for other trees the
+ * sizes aren't known without counting them, so trees are instead split down to
+ * a fixed depth, giving several tasks for each thread of the pool. simplify
+ * stops at that depth on any tree, so that a skewed tree (e.g. a long chain of +)
+ * doesn't nest a task for each level.
+ */
+public class ParallelAssignment {
+
+	/**
+	 * Subtrees of an AugmentedBinaryTree smaller than this are handled by a single
+	 * task
+	 */
+	public static final int SIZE_THRESHOLD = 1 << 13;
+
+	//trees which don't know their subtree sizes are split into about 2^SPLIT_DEPTH tasks per thread
+	private static final int SPLIT_DEPTH = 3;
+
+	//how many nodes a task compares between checks for a difference found by another task
+	private static final int CHECK_INTERVAL = 1024;
+
+	// hashes of trees, with the modification count of the tree when each was computed
+	// (weak keys, so remembering a hash doesn't stop a tree from being garbage collected)
+	private static final Map<LinkedBinaryTree<String>, int[]> hashes = Collections
+			.synchronizedMap(new WeakHashMap<LinkedBinaryTree<String>, int[]>());
+
+	//private constructor, this class only has static methods
+	private ParallelAssignment() {
+	}
+
+	/**
+	 * Simplify any subtrees which can be evaluated to a single integer value, as
+	 * Assignment.simplify does, using the common ForkJoinPool
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return resulting binary tree after evaluating as many of the subtrees as
+	 *         possible
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static LinkedBinaryTree<String> simplify(LinkedBinaryTree<String> tree) throws IllegalArgumentException {
+		return simplify(tree, false, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Simplify a tree, and also apply the rules of Assignment.simplifyFancy, using
+	 * the common ForkJoinPool
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return resulting binary tree after applying the simplifications
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static LinkedBinaryTree<String> simplifyFancy(LinkedBinaryTree<String> tree)
+			throws IllegalArgumentException {
+		return simplify(tree, true, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Simplify a tree (as simplify or simplifyFancy do), using the threads of a
+	 * particular pool
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @param fancy
+	 *            - true to also apply the rules of simplifyFancy
+	 * @param pool
+	 *            - the pool to run the tasks in
+	 * @return resulting binary tree after applying the simplifications
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression, or pool is null
+	 */
+	public static LinkedBinaryTree<String> simplify(LinkedBinaryTree<String> tree, boolean fancy, ForkJoinPool pool)
+			throws IllegalArgumentException {
+		if (pool == null) {
+			throw new IllegalArgumentException("Pool was null");
+		}
+		return simplify(tree, fancy, pool, splitDepth(pool), SIZE_THRESHOLD);
+	}
+
+	//helper method which does the simplification, with the limits on splitting given explicitly
+	static LinkedBinaryTree<String> simplify(LinkedBinaryTree<String> tree, boolean fancy, ForkJoinPool pool,
+			int depth, int threshold) throws IllegalArgumentException {
+		if (!Assignment.isArithmeticExpression(tree)) {
+			throw new IllegalArgumentException();
+		}
+		pool.invoke(new SimplifyTask(tree, fancy, depth, threshold));
+		Assignment.markValid(tree);
+		return tree;
+	}
+
+	/**
+	 * Replace all instances of a variable in a tree with a value, as
+	 * Assignment.substitute does, using the common ForkJoinPool
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @param variable
+	 *            - a variable label that might exist in the tree
+	 * @param value
+	 *            - an integer value that the variable represents
+	 * @return Tree after replacing all instances of the specified variable with
+	 *         its value
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression, or variable is null
+	 */
+	public static LinkedBinaryTree<String> substitute(LinkedBinaryTree<String> tree, String variable, int value)
+			throws IllegalArgumentException {
+		if (variable == null) {
+			throw new IllegalArgumentException("Variable was null");
+		}
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put(variable, value);
+		return substitute(tree, map);
+	}
+
+	/**
+	 * Replace all instances of the variables in a map with their values, as
+	 * Assignment.substitute does, using the common ForkJoinPool
+	 *
+	 * The map is first turned into a table of the token to put in place of each
+	 * variable, which every task shares without changing it. Unlike
+	 * Assignment.substitute, if the map would put a null into the tree, this is
+	 * found before anything is changed, so the tree is left as it was.
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @param map
+	 *            - a map of variable labels to integer values
+	 * @return Tree after replacing all instances of variables which are keys in
+	 *         the map, with their numeric values
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression, or map is null, or tries
+	 *             to substitute a null into the tree
+	 */
+	public static LinkedBinaryTree<String> substitute(LinkedBinaryTree<String> tree, HashMap<String, Integer> map)
+			throws IllegalArgumentException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		return substitute(tree, map, pool, splitDepth(pool), SIZE_THRESHOLD);
+	}
+
+	//helper method which does the substitution, with the limits on splitting given explicitly
+	static LinkedBinaryTree<String> substitute(LinkedBinaryTree<String> tree, Map<String, Integer> map,
+			ForkJoinPool pool, int depth, int threshold) throws IllegalArgumentException {
+		if (!Assignment.isArithmeticExpression(tree) || map == null) {
+			throw new IllegalArgumentException();
+		}
+
+		//resolve each value to its token once, rather than at every position it replaces
+		HashMap<String, String> bindings = new HashMap<>();
+		Set<String> unbound = new HashSet<>();
+		for (Map.Entry<String, Integer> binding : map.entrySet()) {
+			if (binding.getValue() == null) {
+				unbound.add(binding.getKey());
+			}
+			else {
+				bindings.put(binding.getKey(), Tokens.constant(binding.getValue()));
+			}
+		}
+		if (!unbound.isEmpty() && pool.invoke(new ContainsTask(tree, tree.root(), unbound, depth))) {
+			throw new IllegalArgumentException("Tried to substitute a null into the tree");
+		}
+
+		if (!bindings.isEmpty()) {
+			pool.invoke(new SubstituteTask(tree, tree.root(), bindings, depth, threshold));
+		}
+		Assignment.substituted(tree, bindings.keySet());
+		return tree;
+	}
+
+	/**
+	 * Give a tree in prefix notation, exactly as Assignment.tree2prefix does.
+	 * Trees with at least SIZE_THRESHOLD nodes are rendered in parallel using the
+	 * common ForkJoinPool, each large subtree into a separate buffer, and the
+	 * buffers are then joined in order.
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return prefix notation expression of the tree
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static String tree2prefix(BinaryTree<String> tree) throws IllegalArgumentException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		return join(render(tree, false, Function.identity(), pool, splitDepth(pool), SIZE_THRESHOLD));
+	}
+
+	/**
+	 * Give a tree in infix notation with parenthesis, exactly as
+	 * Assignment.tree2infix does, rendering large trees in parallel as tree2prefix
+	 * does
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return infix notation expression of the tree
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static String tree2infix(BinaryTree<String> tree) throws IllegalArgumentException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		return join(render(tree, true, Function.identity(), pool, splitDepth(pool), SIZE_THRESHOLD));
+	}
+
+	/**
+	 * Write a tree in prefix notation (as given by tree2prefix) to a channel, in
+	 * UTF-8. Each large subtree is rendered and encoded in parallel into a separate
+	 * buffer, and the buffers are written in order with a single gathering write
+	 * where the channel supports it.
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @param out
+	 *            - the channel to write the expression to
+	 * @return the number of bytes written
+	 * @throws IOException
+	 *             if out could not be written
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static long writePrefix(BinaryTree<String> tree, WritableByteChannel out)
+			throws IOException, IllegalArgumentException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		return write(render(tree, false, ParallelAssignment::encode, pool, splitDepth(pool), SIZE_THRESHOLD), out);
+	}
+
+	/**
+	 * Write a tree in infix notation with parenthesis (as given by tree2infix) to a
+	 * channel, in UTF-8, rendering large trees in parallel as writePrefix does
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @param out
+	 *            - the channel to write the expression to
+	 * @return the number of bytes written
+	 * @throws IOException
+	 *             if out could not be written
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static long writeInfix(BinaryTree<String> tree, WritableByteChannel out)
+			throws IOException, IllegalArgumentException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		return write(render(tree, true, ParallelAssignment::encode, pool, splitDepth(pool), SIZE_THRESHOLD), out);
+	}
+
+	//helper method which renders a tree into chunks, in order, with the limits on splitting given explicitly
+	static <T> ArrayList<T> render(BinaryTree<String> tree, boolean infix, Function<StringBuilder, T> finish,
+			ForkJoinPool pool, int depth, int threshold) throws IllegalArgumentException {
+		if (!Assignment.isArithmeticExpression(tree)) {
+			throw new IllegalArgumentException();
+		}
+		if (tree.size() < threshold) {
+			//not worth starting any tasks
+			ArrayList<T> chunks = new ArrayList<>();
+			chunks.add(finish.apply(renderAll(tree, tree.root(), infix, new StringBuilder())));
+			return chunks;
+		}
+		return pool.invoke(new RenderTask<>(tree, tree.root(), infix, finish, depth, threshold));
+	}
+
+	//helper method to join rendered chunks into one string
+	private static String join(ArrayList<StringBuilder> chunks) {
+		if (chunks.size() == 1) {
+			return chunks.get(0).toString();
+		}
+		int length = 0;
+		for (StringBuilder chunk : chunks) {
+			length += chunk.length();
+		}
+		StringBuilder joined = new StringBuilder(length);
+		for (StringBuilder chunk : chunks) {
+			joined.append(chunk);
+		}
+		return joined.toString();
+	}
+
+	//helper method to encode a rendered chunk in UTF-8
+	private static ByteBuffer encode(StringBuilder chunk) {
+		return StandardCharsets.UTF_8.encode(CharBuffer.wrap(chunk));
+	}
+
+	//helper method to write encoded chunks to a channel, in order
+	private static long write(ArrayList<ByteBuffer> chunks, WritableByteChannel out) throws IOException {
+		ByteBuffer[] buffers = chunks.toArray(new ByteBuffer[0]);
+		long total = 0;
+		for (ByteBuffer buffer : buffers) {
+			total += buffer.remaining();
+		}
+		if (out instanceof GatheringByteChannel) {
+			GatheringByteChannel gathering = (GatheringByteChannel) out;
+			int first = 0;
+			while (first < buffers.length) {
+				gathering.write(buffers, first, buffers.length - first);
+				while (first < buffers.length && !buffers[first].hasRemaining()) {
+					first++;
+				}
+			}
+		}
+		else {
+			for (ByteBuffer buffer : buffers) {
+				while (buffer.hasRemaining()) {
+					out.write(buffer);
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Test to see if two trees are identical (every position in the tree stores
+	 * the same value), as Assignment.equals does, using the common ForkJoinPool
+	 *
+	 * Trees of different sizes, or whose hashes have both already been found by
+	 * hash, are compared in O(1) time. Otherwise the trees are compared in parallel,
+	 * and every task stops as soon as any of them finds a difference. Trees of any
+	 * depth can be compared, since no task uses recursion.
+	 *
+	 * @param a
+	 * @param b
+	 * @return true if the trees have the same structure and values, false otherwise
+	 */
+	public static boolean equals(BinaryTree<String> a, BinaryTree<String> b) {
+		if (a == b) {
+			return true;
+		}
+		if (a.size() != b.size()) {
+			return false;
+		}
+		Integer aHash = cachedHash(a);
+		Integer bHash = cachedHash(b);
+		if (aHash != null && bHash != null && !aHash.equals(bHash)) {
+			return false;
+		}
+		AtomicBoolean mismatch = new AtomicBoolean(false);
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		pool.invoke(new EqualsTask(a, b, a.root(), b.root(), splitDepth(pool), mismatch));
+		return !mismatch.get();
+	}
+
+	/**
+	 * Find a hash code of a tree, which depends on its structure and on every
+	 * value in it, so that trees with different hash codes are never equal. The
+	 * hash code is the same as PersistentExpression.hashCode gives for the same
+	 * expression.
+	 *
+	 * The subtrees are hashed in parallel, using the common ForkJoinPool. The hash
+	 * of a LinkedBinaryTree is remembered until the tree is next modified, so that
+	 * equals can use it, and hashing it again takes O(1) time.
+	 *
+	 * @param tree
+	 *            - a binary tree
+	 * @return the hash code of the tree (0 for an empty tree)
+	 */
+	public static int hash(BinaryTree<String> tree) {
+		Integer cached = cachedHash(tree);
+		if (cached != null) {
+			return cached;
+		}
+		if (tree.isEmpty()) {
+			return 0;
+		}
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int hash = pool.invoke(new HashTask(tree, tree.root(), splitDepth(pool)));
+		if (tree instanceof LinkedBinaryTree) {
+			LinkedBinaryTree<String> linkedTree = (LinkedBinaryTree<String>) tree;
+			hashes.put(linkedTree, new int[] { linkedTree.modCount(), hash });
+		}
+		return hash;
+	}
+
+	//helper method to find the remembered hash of a tree, if it hasn't been modified since (otherwise null)
+	private static Integer cachedHash(BinaryTree<String> tree) {
+		if (!(tree instanceof LinkedBinaryTree)) {
+			return null;
+		}
+		int[] cached = hashes.get(tree);
+		if (cached == null || cached[0] != ((LinkedBinaryTree<String>) tree).modCount()) {
+			return null;
+		}
+		return cached[1];
+	}
+
+	//helper method to find how deep to split a tree which doesn't know its subtree sizes
+	static int splitDepth(ForkJoinPool pool) {
+		return 32 - Integer.numberOfLeadingZeros(pool.getParallelism()) + SPLIT_DEPTH;
+	}
+
+	//a task which simplifies a whole tree, simplifying its operands as separate trees in subtasks if it is large
+	//enough, so that once they are put back only its root is left to simplify
+	private static final class SimplifyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final LinkedBinaryTree<String> tree;
+		private final boolean fancy;
+		private final int depth;
+		private final int threshold;
+
+		private SimplifyTask(LinkedBinaryTree<String> tree, boolean fancy, int depth, int threshold) {
+			this.tree = tree;
+			this.fancy = fancy;
+			this.depth = depth;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			Position<String> root = tree.root();
+			//(the depth also limits trees which know their sizes, so a skewed tree doesn't nest a task per level)
+			if (depth == 0 || !worthSplitting(tree, root, depth, threshold)) {
+				Assignment.simplifyIteratively(tree, fancy, () -> false, Integer.MAX_VALUE);
+				return;
+			}
+			SimplifyTask left = new SimplifyTask(tree.detach(tree.left(root)), fancy, depth - 1, threshold);
+			SimplifyTask right = new SimplifyTask(tree.detach(tree.right(root)), fancy, depth - 1, threshold);
+			invokeAll(left, right);
+			tree.attach(root, left.tree, right.tree);
+			if (fancy) {
+				Assignment.simplifyFancyNode(tree, root);
+			}
+			else {
+				Assignment.simplifyNode(tree, root);
+			}
+		}
+	}
+
+	//a task which substitutes into a subtree, substituting into its operands in separate subtasks if it is large.
+	//Substituting only replaces elements (with set), and never changes the structure of the tree, so every task
+	//works on the one tree, each on its own positions, without cutting anything out of it
+	private static final class SubstituteTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final LinkedBinaryTree<String> tree;
+		private final Position<String> root;
+		private final Map<String, String> bindings;
+		private final int depth;
+		private final int threshold;
+
+		private SubstituteTask(LinkedBinaryTree<String> tree, Position<String> root, Map<String, String> bindings,
+				int depth, int threshold) {
+			this.tree = tree;
+			this.root = root;
+			this.bindings = bindings;
+			this.depth = depth;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (!worthSplitting(tree, root, depth, threshold)) {
+				substituteAll(tree, root, bindings);
+				return;
+			}
+			String value = bindings.get(root.getElement());
+			if (value != null) {
+				tree.set(root, value);
+			}
+			invokeAll(new SubstituteTask(tree, tree.left(root), bindings, depth - 1, threshold),
+					new SubstituteTask(tree, tree.right(root), bindings, depth - 1, threshold));
+		}
+	}
+
+	//helper method to substitute into a subtree in a single thread, without recursion
+	private static void substituteAll(LinkedBinaryTree<String> tree, Position<String> root,
+			Map<String, String> bindings) {
+		ArrayList<Position<String>> stack = new ArrayList<>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			Position<String> p = stack.remove(stack.size() - 1);
+			String value = bindings.get(p.getElement());
+			if (value != null) {
+				tree.set(p, value);
+			}
+			if (tree.isInternal(p)) {
+				stack.add(tree.right(p));
+				stack.add(tree.left(p));
+			}
+		}
+	}
+
+	//a task which looks for any of a set of elements in a subtree, without changing it
+	private static final class ContainsTask extends RecursiveTask<Boolean> {
+		private static final long serialVersionUID = 1L;
+
+		private final BinaryTree<String> tree;
+		private final Position<String> root;
+		private final Set<String> elements;
+		private final int depth;
+
+		private ContainsTask(BinaryTree<String> tree, Position<String> root, Set<String> elements, int depth) {
+			this.tree = tree;
+			this.root = root;
+			this.elements = elements;
+			this.depth = depth;
+		}
+
+		@Override
+		protected Boolean compute() {
+			if (depth > 0 && tree.isInternal(root)) {
+				if (elements.contains(root.getElement())) {
+					return true;
+				}
+				ContainsTask left = new ContainsTask(tree, tree.left(root), elements, depth - 1);
+				left.fork();
+				boolean right = new ContainsTask(tree, tree.right(root), elements, depth - 1).compute();
+				return left.join() || right;
+			}
+			ArrayList<Position<String>> stack = new ArrayList<>();
+			stack.add(root);
+			while (!stack.isEmpty()) {
+				Position<String> p = stack.remove(stack.size() - 1);
+				if (elements.contains(p.getElement())) {
+					return true;
+				}
+				if (tree.isInternal(p)) {
+					stack.add(tree.right(p));
+					stack.add(tree.left(p));
+				}
+			}
+			return false;
+		}
+	}
+
+	//a task which renders a subtree into chunks, rendering its operands in separate subtasks if it is large
+	private static final class RenderTask<T> extends RecursiveTask<ArrayList<T>> {
+		private static final long serialVersionUID = 1L;
+
+		private final BinaryTree<String> tree;
+		private final Position<String> root;
+		private final boolean infix;
+		private final Function<StringBuilder, T> finish;
+		private final int depth;
+		private final int threshold;
+
+		private RenderTask(BinaryTree<String> tree, Position<String> root, boolean infix,
+				Function<StringBuilder, T> finish, int depth, int threshold) {
+			this.tree = tree;
+			this.root = root;
+			this.infix = infix;
+			this.finish = finish;
+			this.depth = depth;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected ArrayList<T> compute() {
+			ArrayList<T> chunks = new ArrayList<>();
+			if (!worthSplitting(tree, root, depth, threshold)) {
+				chunks.add(finish.apply(renderAll(tree, root, infix, new StringBuilder())));
+				return chunks;
+			}
+
+			RenderTask<T> left = new RenderTask<>(tree, tree.left(root), infix, finish, depth - 1, threshold);
+			RenderTask<T> right = new RenderTask<>(tree, tree.right(root), infix, finish, depth - 1, threshold);
+			invokeAll(left, right);
+			String operator = root.getElement();
+			if (infix) {
+				chunks.add(finish.apply(new StringBuilder("(")));
+				chunks.addAll(left.join());
+				chunks.add(finish.apply(new StringBuilder(operator)));
+				chunks.addAll(right.join());
+				chunks.add(finish.apply(new StringBuilder(")")));
+			}
+			else {
+				chunks.add(finish.apply(new StringBuilder(operator.length() + 1).append(operator).append(' ')));
+				chunks.addAll(left.join());
+				chunks.add(finish.apply(new StringBuilder(" ")));
+				chunks.addAll(right.join());
+			}
+			return chunks;
+		}
+	}
+
+	//helper method to decide whether a subtree is large enough to split between tasks
+	private static boolean worthSplitting(BinaryTree<String> tree, Position<String> p, int depth, int threshold) {
+		if (tree.isExternal(p)) {
+			return false;
+		}
+		if (tree instanceof AugmentedBinaryTree) {
+			return ((AugmentedBinaryTree<String>) tree).subtreeSize(p) >= threshold;
+		}
+		return depth > 0;
+	}
+
+	//helper method to render a subtree in a single thread, without recursion
+	private static StringBuilder renderAll(BinaryTree<String> tree, Position<String> root, boolean infix,
+			StringBuilder out) {
+		//the stack holds subtrees still to render, and (for infix) text to append between them
+		ArrayList<Object> stack = new ArrayList<>();
+		stack.add(root);
+		boolean first = true;
+		while (!stack.isEmpty()) {
+			Object item = stack.remove(stack.size() - 1);
+			if (!(item instanceof Position)) {
+				out.append((String) item);
+				continue;
+			}
+			@SuppressWarnings("unchecked")
+			Position<String> p = (Position<String>) item;
+			if (infix) {
+				if (tree.isExternal(p)) {
+					out.append(p.getElement());
+				}
+				else {
+					out.append('(');
+					stack.add(")");
+					stack.add(tree.right(p));
+					stack.add(p.getElement());
+					stack.add(tree.left(p));
+				}
+			}
+			else {
+				if (!first) {
+					out.append(' ');
+				}
+				first = false;
+				out.append(p.getElement());
+				if (tree.isInternal(p)) {
+					stack.add(tree.right(p));
+					stack.add(tree.left(p));
+				}
+			}
+		}
+		return out;
+	}
+
+	//a task which compares two subtrees, handing the right operands near the top of them to subtasks
+	private static final class EqualsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final BinaryTree<String> aTree;
+		private final BinaryTree<String> bTree;
+		private final Position<String> aRoot;
+		private final Position<String> bRoot;
+		private final int depth;
+		private final AtomicBoolean mismatch;
+
+		private EqualsTask(BinaryTree<String> aTree, BinaryTree<String> bTree, Position<String> aRoot,
+				Position<String> bRoot, int depth, AtomicBoolean mismatch) {
+			this.aTree = aTree;
+			this.bTree = bTree;
+			this.aRoot = aRoot;
+			this.bRoot = bRoot;
+			this.depth = depth;
+			this.mismatch = mismatch;
+		}
+
+		@Override
+		protected void compute() {
+			//pairs of positions still to be compared, with how many more levels may be split off
+			ArrayList<Position<String>> stack = new ArrayList<>();
+			int[] depths = new int[16];
+			ArrayList<EqualsTask> forked = new ArrayList<>();
+			stack.add(aRoot);
+			stack.add(bRoot);
+			depths[0] = depth;
+			int compared = 0;
+
+			while (!stack.isEmpty()) {
+				if (++compared % CHECK_INTERVAL == 0 && mismatch.get()) {
+					break;
+				}
+				int pairs = stack.size() / 2;
+				int level = depths[pairs - 1];
+				Position<String> b = stack.remove(stack.size() - 1);
+				Position<String> a = stack.remove(stack.size() - 1);
+				if (a == null || b == null) {
+					if (a != b) {
+						mismatch.set(true);
+						break;
+					}
+					continue;
+				}
+				String aElement = a.getElement();
+				String bElement = b.getElement();
+				if (aElement != bElement && (aElement == null || !aElement.equals(bElement))) {
+					mismatch.set(true);
+					break;
+				}
+				if (aTree.isExternal(a) && bTree.isExternal(b)) {
+					continue;
+				}
+				if (pairs + 1 > depths.length) {
+					depths = Arrays.copyOf(depths, depths.length * 2);
+				}
+				if (level > 0) {
+					EqualsTask right = new EqualsTask(aTree, bTree, aTree.right(a), bTree.right(b), level - 1, mismatch);
+					right.fork();
+					forked.add(right);
+				}
+				else {
+					stack.add(aTree.right(a));
+					stack.add(bTree.right(b));
+					depths[pairs - 1] = 0;
+					pairs++;
+				}
+				stack.add(aTree.left(a));
+				stack.add(bTree.left(b));
+				depths[pairs - 1] = Math.max(0, level - 1);
+			}
+
+			for (EqualsTask task : forked) {
+				if (mismatch.get()) {
+					//no need to wait for the others, the answer is already known
+					task.cancel(false);
+				}
+				else {
+					task.join();
+				}
+			}
+		}
+	}
+
+	//a task which hashes a subtree, hashing its operands in parallel near the top of the tree
+	private static final class HashTask extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+
+		private final BinaryTree<String> tree;
+		private final Position<String> root;
+		private final int depth;
+
+		private HashTask(BinaryTree<String> tree, Position<String> root, int depth) {
+			this.tree = tree;
+			this.root = root;
+			this.depth = depth;
+		}
+
+		@Override
+		protected Integer compute() {
+			if (root == null) {
+				return 0;
+			}
+			if (depth == 0 || tree.isExternal(root)) {
+				return hashOf(tree, root);
+			}
+			HashTask left = new HashTask(tree, tree.left(root), depth - 1);
+			left.fork();
+			int right = new HashTask(tree, tree.right(root), depth - 1).compute();
+			return combine(root.getElement(), left.join(), right);
+		}
+	}
+
+	//helper method to hash a subtree in a single thread, without recursion
+	private static int hashOf(BinaryTree<String> tree, Position<String> root) {
+		//each position on the stack has a state: 0 = nothing hashed yet, 1 = left operand hashed, 2 = both hashed
+		ArrayList<Position<String>> stack = new ArrayList<>();
+		int[] states = new int[16];
+		int[] values = new int[16];
+		int count = 0;
+		stack.add(root);
+		states[0] = 0;
+		while (!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			Position<String> p = stack.get(top);
+			if (count + 1 > values.length) {
+				values = Arrays.copyOf(values, values.length * 2);
+			}
+			if (states[top] == 0 && tree.isExternal(p)) {
+				stack.remove(top);
+				values[count++] = elementHash(p.getElement());
+				continue;
+			}
+			if (states[top] == 2) {
+				stack.remove(top);
+				int right = values[--count];
+				int left = values[--count];
+				values[count++] = combine(p.getElement(), left, right);
+				continue;
+			}
+			Position<String> child = (states[top] == 0) ? tree.left(p) : tree.right(p);
+			states[top]++;
+			if (child == null) {
+				values[count++] = 0;
+			}
+			else {
+				if (top + 2 > states.length) {
+					states = Arrays.copyOf(states, states.length * 2);
+				}
+				stack.add(child);
+				states[top + 1] = 0;
+			}
+		}
+		return values[0];
+	}
+
+	//helper method to combine the hash of an operator with the hashes of its operands
+	private static int combine(String element, int left, int right) {
+		return (elementHash(element) * 31 + left) * 31 + right;
+	}
+
+	//helper method to hash an element, allowing for null
+	private static int elementHash(String element) {
+		return (element == null) ? 0 : element.hashCode();
+	}
+}
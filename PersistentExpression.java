@@ -0,0 +1,635 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import textbook.BinaryTree;
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+/**
+ * An immutable arithmetic expression tree
+ *
+ * Each PersistentExpression is a node together with everything below it, so any
+ * subtree is an expression in its own right. Nodes never change once they are
+ * made, and have no parent links, so one subtree can be shared by any number of
+ * trees. The "updating" methods (set, replace, substitute, simplify and
+ * simplifyFancy) return a new tree instead of changing this one: only the nodes
+ * that actually change, and the nodes above them, are copied, and every other
+ * subtree is shared with the original. Updating a single position costs
+ * O(depth) time and memory, instead of a copy of the whole tree.
+ *
+ * Since nothing ever changes, a tree can be read by any number of threads at
+ * once without locking, and each of them sees a stable snapshot.
+ *
+ * Paths to positions are Strings of 'L' (left child) and 'R' (right child) steps
+ * from the root, e.g. "" is the root and "LR" is the right child of the left
+ * child of the root.
+ */
+public final class PersistentExpression {
+
+	private final String element;
+	private final PersistentExpression left;
+	private final PersistentExpression right;
+	private final int size;
+	private final int hash;
+
+	//private constructor, trees are made with leaf, node, of or fromTree
+	private PersistentExpression(String element, PersistentExpression left, PersistentExpression right) {
+		this.element = element;
+		this.left = left;
+		this.right = right;
+		if (left == null) {
+			size = 1;
+			hash = element.hashCode();
+		}
+		else {
+			size = 1 + left.size + right.size;
+			hash = (element.hashCode() * 31 + left.hash) * 31 + right.hash;
+		}
+	}
+
+	/**
+	 * Make a tree holding a single variable or value
+	 *
+	 * @param element
+	 *            - a variable or value
+	 * @return the tree
+	 * @throws IllegalArgumentException
+	 *             if element is null or is an operator
+	 */
+	public static PersistentExpression leaf(String element) throws IllegalArgumentException {
+		if (element == null || PrefixTokenizer.isOperator(element)) {
+			throw new IllegalArgumentException("A leaf must be a variable or value");
+		}
+		return new PersistentExpression(Tokens.intern(element), null, null);
+	}
+
+	/**
+	 * Make a tree applying an operator to two other trees (which are shared, not
+	 * copied)
+	 *
+	 * @param operator
+	 *            - one of "+", "-" or "*"
+	 * @param left
+	 *            - the left operand
+	 * @param right
+	 *            - the right operand
+	 * @return the tree
+	 * @throws IllegalArgumentException
+	 *             if operator is not an operator, or either operand is null
+	 */
+	public static PersistentExpression node(String operator, PersistentExpression left, PersistentExpression right)
+			throws IllegalArgumentException {
+		if (operator == null || !PrefixTokenizer.isOperator(operator) || left == null || right == null) {
+			throw new IllegalArgumentException("An operator must have two operands");
+		}
+		return new PersistentExpression(Tokens.intern(operator), left, right);
+	}
+
+	/**
+	 * Convert an arithmetic expression in prefix notation to a tree. The same
+	 * expressions are accepted as Assignment.prefix2tree accepts.
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @return a tree representing the expression
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression
+	 */
+	public static PersistentExpression of(String expression) throws IllegalArgumentException {
+		PrefixTokenizer tokenizer = new PrefixTokenizer(expression);
+		ArrayList<String> tokens = new ArrayList<>();
+		try {
+			//read tokens until the expression is complete (each operator needs two more operands)
+			int needed = 1;
+			while (needed > 0) {
+				String token = tokenizer.next();
+				if (token == null) {
+					throw new IllegalArgumentException("String was not a valid arithmetic expression in prefix notation");
+				}
+				tokens.add(token);
+				needed += PrefixTokenizer.isOperator(token) ? 1 : -1;
+			}
+		} catch (IOException e) {
+			//can't happen, the tokenizer is reading from a String
+			throw new UncheckedIOException(e);
+		}
+
+		//build from the end, so both operands of each operator have been made before it
+		ArrayList<PersistentExpression> operands = new ArrayList<>();
+		for (int i = tokens.size() - 1; i >= 0; i--) {
+			String token = tokens.get(i);
+			if (PrefixTokenizer.isOperator(token)) {
+				PersistentExpression left = operands.remove(operands.size() - 1);
+				PersistentExpression right = operands.remove(operands.size() - 1);
+				operands.add(new PersistentExpression(Tokens.intern(token), left, right));
+			}
+			else {
+				operands.add(new PersistentExpression(Tokens.intern(token), null, null));
+			}
+		}
+		return operands.get(0);
+	}
+
+	/**
+	 * Copy a tree representing an arithmetic expression (e.g. a LinkedBinaryTree)
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return an immutable tree with the same structure and values
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static PersistentExpression fromTree(BinaryTree<String> tree) throws IllegalArgumentException {
+		if (!Assignment.isArithmeticExpression(tree)) {
+			throw new IllegalArgumentException();
+		}
+		//positions still to be visited, where null marks an operator (next on the stack) whose operands have been made
+		ArrayList<Position<String>> stack = new ArrayList<>();
+		ArrayList<PersistentExpression> operands = new ArrayList<>();
+		stack.add(tree.root());
+		while (!stack.isEmpty()) {
+			Position<String> p = stack.remove(stack.size() - 1);
+			if (p == null) {
+				p = stack.remove(stack.size() - 1);
+				PersistentExpression right = operands.remove(operands.size() - 1);
+				PersistentExpression left = operands.remove(operands.size() - 1);
+				operands.add(new PersistentExpression(Tokens.intern(p.getElement()), left, right));
+			}
+			else if (tree.isExternal(p)) {
+				operands.add(new PersistentExpression(Tokens.intern(p.getElement()), null, null));
+			}
+			else {
+				stack.add(p);
+				stack.add(null);
+				stack.add(tree.right(p));
+				stack.add(tree.left(p));
+			}
+		}
+		return operands.get(0);
+	}
+
+	/**
+	 * Copy this tree into a new LinkedBinaryTree, e.g. to use with Assignment
+	 *
+	 * @return a new LinkedBinaryTree with the same structure and values
+	 */
+	public LinkedBinaryTree<String> toTree() {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		ArrayList<PersistentExpression> nodes = new ArrayList<>();
+		ArrayList<Position<String>> positions = new ArrayList<>();
+		nodes.add(this);
+		positions.add(tree.addRoot(element));
+		while (!nodes.isEmpty()) {
+			PersistentExpression node = nodes.remove(nodes.size() - 1);
+			Position<String> p = positions.remove(positions.size() - 1);
+			if (!node.isLeaf()) {
+				nodes.add(node.right);
+				positions.add(tree.addRight(p, node.right.element));
+				nodes.add(node.left);
+				positions.add(tree.addLeft(p, node.left.element));
+			}
+		}
+		Assignment.markValid(tree);
+		return tree;
+	}
+
+	/**
+	 * @return the operator, variable or value at the root of this tree
+	 */
+	public String element() {
+		return element;
+	}
+
+	/**
+	 * @return the left operand (or null if this tree is a single variable or value)
+	 */
+	public PersistentExpression left() {
+		return left;
+	}
+
+	/**
+	 * @return the right operand (or null if this tree is a single variable or value)
+	 */
+	public PersistentExpression right() {
+		return right;
+	}
+
+	/**
+	 * @return true if this tree is a single variable or value
+	 */
+	public boolean isLeaf() {
+		return left == null;
+	}
+
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Find the subtree at a path from the root
+	 *
+	 * @param path
+	 *            - steps from the root, each 'L' or 'R'
+	 * @return the subtree at the end of the path
+	 * @throws IllegalArgumentException
+	 *             if path is null, or isn't a path to a position of this tree
+	 */
+	public PersistentExpression get(String path) throws IllegalArgumentException {
+		if (path == null) {
+			throw new IllegalArgumentException("Path was null");
+		}
+		PersistentExpression node = this;
+		for (int i = 0; i < path.length(); i++) {
+			node = node.child(path.charAt(i));
+		}
+		return node;
+	}
+
+	/**
+	 * Change the element at one position, giving a new tree which shares every
+	 * subtree off the path with this one
+	 *
+	 * @param path
+	 *            - steps from the root to the position, each 'L' or 'R'
+	 * @param element
+	 *            - the new element (an operator if the position has operands, or a
+	 *            variable or value if it doesn't)
+	 * @return the new tree
+	 * @throws IllegalArgumentException
+	 *             if path isn't a path to a position of this tree, or element
+	 *             isn't valid at that position
+	 */
+	public PersistentExpression set(String path, String element) throws IllegalArgumentException {
+		PersistentExpression old = get(path);
+		return replace(path, old.isLeaf() ? leaf(element) : node(element, old.left, old.right));
+	}
+
+	/**
+	 * Replace the subtree at one position, giving a new tree which shares every
+	 * subtree off the path with this one
+	 *
+	 * @param path
+	 *            - steps from the root to the position, each 'L' or 'R'
+	 * @param subtree
+	 *            - the tree to put at that position
+	 * @return the new tree
+	 * @throws IllegalArgumentException
+	 *             if path isn't a path to a position of this tree, or subtree is
+	 *             null
+	 */
+	public PersistentExpression replace(String path, PersistentExpression subtree) throws IllegalArgumentException {
+		if (path == null || subtree == null) {
+			throw new IllegalArgumentException("Path or subtree was null");
+		}
+		//find the nodes along the path, then copy them from the bottom up
+		PersistentExpression[] ancestors = new PersistentExpression[path.length()];
+		PersistentExpression node = this;
+		for (int i = 0; i < ancestors.length; i++) {
+			ancestors[i] = node;
+			node = node.child(path.charAt(i));
+		}
+		PersistentExpression copy = subtree;
+		for (int i = ancestors.length - 1; i >= 0; i--) {
+			PersistentExpression parent = ancestors[i];
+			copy = (path.charAt(i) == 'L') ? parent.withChildren(copy, parent.right)
+					: parent.withChildren(parent.left, copy);
+		}
+		return copy;
+	}
+
+	/**
+	 * Replace every instance of a variable with a value, giving a new tree which
+	 * shares every subtree without the variable with this one
+	 *
+	 * @param variable
+	 *            - a variable label that might exist in the tree
+	 * @param value
+	 *            - an integer value that the variable represents
+	 * @return the new tree (or this tree, if the variable isn't in it)
+	 * @throws IllegalArgumentException
+	 *             if variable is null
+	 */
+	public PersistentExpression substitute(final String variable, int value) throws IllegalArgumentException {
+		if (variable == null) {
+			throw new IllegalArgumentException("Variable was null");
+		}
+		final PersistentExpression replacement = leaf(Tokens.constant(value));
+		return rewrite(new Rewrite() {
+			@Override
+			PersistentExpression leaf(PersistentExpression leaf) {
+				return leaf.element.equals(variable) ? replacement : leaf;
+			}
+		});
+	}
+
+	/**
+	 * Replace every instance of the variables in a map with their values, giving a
+	 * new tree which shares every subtree without those variables with this one
+	 *
+	 * @param map
+	 *            - a map of variable labels to integer values
+	 * @return the new tree (or this tree, if none of the variables are in it)
+	 * @throws IllegalArgumentException
+	 *             if map is null, or tries to substitute a null into the tree
+	 */
+	public PersistentExpression substitute(final Map<String, Integer> map) throws IllegalArgumentException {
+		if (map == null) {
+			throw new IllegalArgumentException("Map was null");
+		}
+		return rewrite(new Rewrite() {
+			@Override
+			PersistentExpression leaf(PersistentExpression leaf) {
+				if (!map.containsKey(leaf.element)) {
+					return leaf;
+				}
+				Integer value = map.get(leaf.element);
+				if (value == null) {
+					throw new IllegalArgumentException("Variable " + leaf.element + " was mapped to null");
+				}
+				return PersistentExpression.leaf(Tokens.constant(value));
+			}
+		});
+	}
+
+	/**
+	 * Evaluate every subtree which has a single integer value, as
+	 * Assignment.simplify does, giving a new tree which shares every subtree that
+	 * couldn't be simplified with this one
+	 *
+	 * @return the new tree (or this tree, if nothing could be simplified)
+	 */
+	public PersistentExpression simplify() {
+		return rewrite(new Rewrite() {
+			@Override
+			PersistentExpression node(PersistentExpression original, PersistentExpression left,
+					PersistentExpression right) {
+				PersistentExpression folded = fold(original.element, left, right);
+				return (folded != null) ? folded : original.withChildren(left, right);
+			}
+		});
+	}
+
+	/**
+	 * Simplify the tree, and also apply the rules of Assignment.simplifyFancy
+	 * (e.g. * 1 x == x and - x x == 0), giving a new tree which shares every
+	 * subtree that couldn't be simplified with this one
+	 *
+	 * @return the new tree (or this tree, if nothing could be simplified)
+	 */
+	public PersistentExpression simplifyFancy() {
+		return rewrite(new Rewrite() {
+			@Override
+			PersistentExpression node(PersistentExpression original, PersistentExpression left,
+					PersistentExpression right) {
+				PersistentExpression folded = fold(original.element, left, right);
+				if (folded != null) {
+					return folded;
+				}
+				switch (original.element) {
+				case "*":
+					if (left.element.equals("1")) {
+						return right;
+					}
+					if (right.element.equals("1")) {
+						return left;
+					}
+					if (left.element.equals("0") || right.element.equals("0")) {
+						return PersistentExpression.leaf("0");
+					}
+					break;
+				case "+":
+					if (left.element.equals("0")) {
+						return right;
+					}
+					if (right.element.equals("0")) {
+						return left;
+					}
+					break;
+				default:
+					if (right.element.equals("0")) {
+						return left;
+					}
+					if (left.equals(right)) {
+						return PersistentExpression.leaf("0");
+					}
+					break;
+				}
+				return original.withChildren(left, right);
+			}
+		});
+	}
+
+	/**
+	 * Evaluate the tree, substituting the given values for variables
+	 *
+	 * @param bindings
+	 *            - a map of variable labels to integer values
+	 * @return the value of the expression
+	 * @throws IllegalArgumentException
+	 *             if bindings is null, or the expression uses a variable which is
+	 *             missing from (or null in) bindings
+	 */
+	public int evaluate(Map<String, Integer> bindings) throws IllegalArgumentException {
+		if (bindings == null) {
+			throw new IllegalArgumentException("Bindings were null");
+		}
+		//nodes still to be visited, where null marks an operator (next on the stack) whose operands are on the value stack
+		ArrayList<PersistentExpression> stack = new ArrayList<>();
+		int[] values = new int[16];
+		int count = 0;
+		stack.add(this);
+		while (!stack.isEmpty()) {
+			PersistentExpression node = stack.remove(stack.size() - 1);
+			if (node == null) {
+				node = stack.remove(stack.size() - 1);
+				int right = values[--count];
+				int left = values[--count];
+				values[count++] = StreamingEvaluator.apply(node.element.charAt(0), left, right);
+			}
+			else if (node.isLeaf()) {
+				if (count == values.length) {
+					values = Arrays.copyOf(values, count * 2);
+				}
+				values[count++] = StreamingEvaluator.valueOf(node.element, bindings);
+			}
+			else {
+				stack.add(node);
+				stack.add(null);
+				stack.add(node.right);
+				stack.add(node.left);
+			}
+		}
+		return values[0];
+	}
+
+	/**
+	 * @return the expression in prefix notation, the same as Assignment.tree2prefix
+	 *         gives for the same tree
+	 */
+	public String toPrefix() {
+		StringBuilder out = new StringBuilder();
+		ArrayList<PersistentExpression> stack = new ArrayList<>();
+		stack.add(this);
+		while (!stack.isEmpty()) {
+			PersistentExpression node = stack.remove(stack.size() - 1);
+			if (out.length() > 0) {
+				out.append(' ');
+			}
+			out.append(node.element);
+			if (!node.isLeaf()) {
+				stack.add(node.right);
+				stack.add(node.left);
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * @return the expression in infix notation with parenthesis, the same as
+	 *         Assignment.tree2infix gives for the same tree
+	 */
+	public String toInfix() {
+		StringBuilder out = new StringBuilder();
+		//each entry is either a subtree to output, or a String to output as it is
+		ArrayList<Object> stack = new ArrayList<>();
+		stack.add(this);
+		while (!stack.isEmpty()) {
+			Object next = stack.remove(stack.size() - 1);
+			if (next instanceof String) {
+				out.append((String) next);
+				continue;
+			}
+			PersistentExpression node = (PersistentExpression) next;
+			if (node.isLeaf()) {
+				out.append(node.element);
+			}
+			else {
+				stack.add(")");
+				stack.add(node.right);
+				stack.add(node.element);
+				stack.add(node.left);
+				stack.add("(");
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * @return true if o is a PersistentExpression with the same structure and values
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof PersistentExpression)) {
+			return false;
+		}
+		//pairs of subtrees still to be compared
+		ArrayList<PersistentExpression> stack = new ArrayList<>();
+		stack.add(this);
+		stack.add((PersistentExpression) o);
+		while (!stack.isEmpty()) {
+			PersistentExpression b = stack.remove(stack.size() - 1);
+			PersistentExpression a = stack.remove(stack.size() - 1);
+			//shared subtrees are equal without looking inside them
+			if (a == b) {
+				continue;
+			}
+			if (a.hash != b.hash || a.size != b.size || !a.element.equals(b.element)) {
+				return false;
+			}
+			if (!a.isLeaf()) {
+				stack.add(a.left);
+				stack.add(b.left);
+				stack.add(a.right);
+				stack.add(b.right);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return toPrefix();
+	}
+
+	//private helper method to follow one step of a path
+	private PersistentExpression child(char step) throws IllegalArgumentException {
+		if (isLeaf() || (step != 'L' && step != 'R')) {
+			throw new IllegalArgumentException("Not a path to a position in the tree");
+		}
+		return (step == 'L') ? left : right;
+	}
+
+	//private helper method to make a copy of this operator with new operands (or this node, if they haven't changed)
+	private PersistentExpression withChildren(PersistentExpression newLeft, PersistentExpression newRight) {
+		if (newLeft == left && newRight == right) {
+			return this;
+		}
+		return new PersistentExpression(element, newLeft, newRight);
+	}
+
+	//private helper method to evaluate an operator whose operands are both numbers (or null if they aren't)
+	private static PersistentExpression fold(String operator, PersistentExpression left, PersistentExpression right) {
+		if (!left.isLeaf() || !right.isLeaf()) {
+			return null;
+		}
+		try {
+			int l = Integer.parseInt(left.element);
+			int r = Integer.parseInt(right.element);
+			return new PersistentExpression(Tokens.constant(StreamingEvaluator.apply(operator.charAt(0), l, r)), null,
+					null);
+		} catch (NumberFormatException e) {
+			//one of the operands is a variable
+			return null;
+		}
+	}
+
+	//how each node is rebuilt by rewrite, given its rebuilt operands (by default, nothing changes)
+	private abstract static class Rewrite {
+		PersistentExpression leaf(PersistentExpression leaf) {
+			return leaf;
+		}
+
+		PersistentExpression node(PersistentExpression original, PersistentExpression left,
+				PersistentExpression right) {
+			return original.withChildren(left, right);
+		}
+	}
+
+	//private helper method to rebuild the tree from the bottom up, without recursion
+	private PersistentExpression rewrite(Rewrite rule) {
+		//nodes still to be visited, where null marks an operator (next on the stack) whose operands have been rebuilt
+		ArrayList<PersistentExpression> stack = new ArrayList<>();
+		ArrayList<PersistentExpression> results = new ArrayList<>();
+		stack.add(this);
+		while (!stack.isEmpty()) {
+			PersistentExpression node = stack.remove(stack.size() - 1);
+			if (node == null) {
+				node = stack.remove(stack.size() - 1);
+				PersistentExpression newRight = results.remove(results.size() - 1);
+				PersistentExpression newLeft = results.remove(results.size() - 1);
+				results.add(rule.node(node, newLeft, newRight));
+			}
+			else if (node.isLeaf()) {
+				results.add(rule.leaf(node));
+			}
+			else {
+				stack.add(node);
+				stack.add(null);
+				stack.add(node.right);
+				stack.add(node.left);
+			}
+		}
+		return results.get(0);
+	}
+}
@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Breaks an arithmetic expression in prefix notation into tokens one at a time,
+ * rather than splitting the whole expression up front
+ *
+ * Tokens follow exactly the same rules as expression.split(" ") in
+ * Assignment.prefix2tree, so that anything built on top of this class accepts the
+ * same inputs as prefix2tree:
+ *  - tokens are separated by single spaces, so two spaces in a row give an empty token
+ *  - empty tokens at the end of the expression are dropped
+ *  - an expression without any spaces is a single token (even if it is empty)
+ *
+ * Only the current token is held in memory, plus a count of any run of empty
+ * tokens that had to be read ahead to decide whether they were trailing
+ */
+public class PrefixTokenizer {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	//the source of characters is either a CharSequence or a Reader (the other is null)
+	private final CharSequence text;
+	private final Reader reader;
+	private final char[] buffer;
+	private int position = 0;
+	private int limit = 0;
+
+	private final StringBuilder token = new StringBuilder();
+	private boolean seenSpace = false;
+	private boolean endOfInput = false;
+
+	//empty tokens which have been read ahead, followed by the non-empty token that ended the run
+	private int pendingEmpty = 0;
+	private String pendingToken = null;
+
+	/**
+	 * Creates a tokenizer over an expression held in memory
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @throws IllegalArgumentException
+	 *             if expression was null
+	 */
+	public PrefixTokenizer(CharSequence expression) throws IllegalArgumentException {
+		if (expression == null) {
+			throw new IllegalArgumentException("Expression string was null");
+		}
+		text = expression;
+		reader = null;
+		buffer = null;
+		limit = expression.length();
+	}
+
+	/**
+	 * Creates a tokenizer which reads an expression from a Reader as tokens are
+	 * requested. The Reader is read until the end of input, or until the caller
+	 * stops asking for tokens.
+	 *
+	 * @param in
+	 *            - a source of an arithmetic expression in prefix notation
+	 * @throws IllegalArgumentException
+	 *             if in was null
+	 */
+	public PrefixTokenizer(Reader in) throws IllegalArgumentException {
+		if (in == null) {
+			throw new IllegalArgumentException("Reader was null");
+		}
+		text = null;
+		reader = in;
+		buffer = new char[BUFFER_SIZE];
+	}
+
+	/**
+	 * Returns the next token of the expression
+	 *
+	 * @return the next token, or null if there are no tokens left
+	 * @throws IOException
+	 *             if the underlying Reader fails
+	 */
+	public String next() throws IOException {
+		if (pendingEmpty > 0) {
+			pendingEmpty--;
+			return "";
+		}
+		if (pendingToken != null) {
+			String next = pendingToken;
+			pendingToken = null;
+			return next;
+		}
+		if (endOfInput) {
+			return null;
+		}
+
+		String next = readRaw();
+		if (!next.isEmpty()) {
+			return next;
+		}
+		if (endOfInput) {
+			//split(" ") only keeps an empty token at the end if there were no spaces at all
+			return seenSpace ? null : next;
+		}
+
+		//an empty token is only kept if a non-empty token follows it, so read ahead
+		int empties = 1;
+		while (true) {
+			next = readRaw();
+			if (!next.isEmpty()) {
+				pendingEmpty = empties - 1;
+				pendingToken = next;
+				return "";
+			}
+			if (endOfInput) {
+				return null;
+			}
+			empties++;
+		}
+	}
+
+	//private helper method to read characters up to the next space (or the end of the input)
+	private String readRaw() throws IOException {
+		token.setLength(0);
+		while (true) {
+			if (position == limit && !fill()) {
+				endOfInput = true;
+				return token.toString();
+			}
+			char c = (text != null) ? text.charAt(position++) : buffer[position++];
+			if (c == ' ') {
+				seenSpace = true;
+				return token.toString();
+			}
+			token.append(c);
+		}
+	}
+
+	//private helper method to refill the buffer from the Reader, returns false at the end of input
+	private boolean fill() throws IOException {
+		if (reader == null) {
+			return false;
+		}
+		int read;
+		do {
+			read = reader.read(buffer, 0, buffer.length);
+		} while (read == 0);
+		if (read < 0) {
+			return false;
+		}
+		position = 0;
+		limit = read;
+		return true;
+	}
+
+	/**
+	 * Tests whether a token is one of the binary operators +, - or *
+	 *
+	 * @param token
+	 * @return true if the token is an operator, false if it is a variable or value
+	 */
+	public static boolean isOperator(String token) {
+		return token.equals("+") || token.equals("-") || token.equals("*");
+	}
+}
@@ -0,0 +1,44 @@
+import java.util.Random;
+
+/**
+ * Random arithmetic expressions in prefix notation, for tests which check that
+ * two ways of doing something give the same result on many expressions
+ */
+final class RandomExpressions {
+
+	//the leaves used by tests which don't give their own
+	static final String[] LEAVES = { "0", "1", "2", "3", "x", "y" };
+
+	//private constructor, this class only has static methods
+	private RandomExpressions() {
+	}
+
+	//helper method to make a random expression of at most the given depth from LEAVES, where each subtree
+	//is a leaf with probability 1/4
+	static String randomExpression(Random random, int depth) {
+		return randomExpression(random, LEAVES, depth, 4);
+	}
+
+	//helper method to make a random expression of at most the given depth from some leaves, where each subtree
+	//is a leaf with probability 1/leafOdds (and every subtree at the greatest depth is a leaf)
+	static String randomExpression(Random random, String[] leaves, int depth, int leafOdds) {
+		StringBuilder out = new StringBuilder();
+		append(random, leaves, depth, leafOdds, out);
+		return out.toString();
+	}
+
+	//private helper method to append a random expression, without making a String for each subtree
+	private static void append(Random random, String[] leaves, int depth, int leafOdds, StringBuilder out) {
+		if (out.length() > 0) {
+			out.append(' ');
+		}
+		if (depth == 0 || random.nextInt(leafOdds) == 0) {
+			out.append(leaves[random.nextInt(leaves.length)]);
+		}
+		else {
+			out.append("+-*".charAt(random.nextInt(3)));
+			append(random, leaves, depth - 1, leafOdds, out);
+			append(random, leaves, depth - 1, leafOdds, out);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue for passing items from one thread to another, without locks
+ *
+ * Exactly one thread (the producer) may call offer and close, and exactly one
+ * other thread (the consumer) may call poll. The items are kept in a circular
+ * array whose capacity is a power of two, so a position in the array is found
+ * with a mask rather than a division, and nothing is allocated per item.
+ *
+ * Each side keeps its own copy of the other side's counter, and only reads the
+ * shared counter again when its copy says the queue is full (or empty), so the
+ * two threads rarely touch the same memory.
+ *
+ * @param <E>
+ *            the type of items in the queue
+ */
+public final class RingBuffer<E> {
+
+	private final Object[] items;
+	private final int mask;
+
+	//the number of items ever taken (written only by the consumer) and added (written only by the producer)
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	//the producer's copy of head, and the consumer's copy of tail
+	private long cachedHead;
+	private long cachedTail;
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates an empty queue
+	 *
+	 * @param capacity
+	 *            - the most items the queue can hold (rounded up to a power of
+	 *            two)
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive, or more than 2^30
+	 */
+	public RingBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		items = new Object[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Add an item to the back of the queue, if there is room (producer only)
+	 *
+	 * @param item
+	 *            - the item to add
+	 * @return true if the item was added, false if the queue was full
+	 * @throws IllegalArgumentException
+	 *             if item is null
+	 */
+	public boolean offer(E item) throws IllegalArgumentException {
+		if (item == null) {
+			throw new IllegalArgumentException("Item was null");
+		}
+		long t = tail.get();
+		if (t - cachedHead == items.length) {
+			cachedHead = head.get();
+			if (t - cachedHead == items.length) {
+				return false;
+			}
+		}
+		items[(int) t & mask] = item;
+		//publishes the item to the consumer
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Take the item at the front of the queue, if there is one (consumer only)
+	 *
+	 * @return the item, or null if the queue was empty
+	 */
+	public E poll() {
+		long h = head.get();
+		if (h == cachedTail) {
+			cachedTail = tail.get();
+			if (h == cachedTail) {
+				return null;
+			}
+		}
+		int index = (int) h & mask;
+		@SuppressWarnings("unchecked")
+		E item = (E) items[index];
+		items[index] = null;
+		//hands the slot back to the producer
+		head.lazySet(h + 1);
+		return item;
+	}
+
+	/**
+	 * Mark that no more items will be added (producer only)
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * @return true if the producer has closed the queue and every item has been
+	 *         taken (consumer only)
+	 */
+	public boolean isDrained() {
+		//closed must be read before the queue is found to be empty, or an item added just before closing could be missed
+		return closed && head.get() == tail.get();
+	}
+
+	/**
+	 * @return the number of items in the queue (which may already be out of date
+	 *         when it is returned, if either thread is using the queue)
+	 */
+	public int size() {
+		long h = head.get();
+		return (int) Math.min(tail.get() - h, items.length);
+	}
+
+	/**
+	 * @return the most items the queue can hold
+	 */
+	public int capacity() {
+		return items.length;
+	}
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Converts arithmetic expressions in prefix notation to infix or postfix notation
+ * straight from their tokens, without building a LinkedBinaryTree in between
+ *
+ * prefix2infix(s) gives the same string as
+ * Assignment.tree2infix(Assignment.prefix2tree(s)), and the same expressions are
+ * accepted. Output is written as soon as each token is read, and only a stack with
+ * one entry per pending operator is kept, so memory is O(depth).
+ *
+ * When writing to an Appendable, an invalid expression is only detected once the
+ * input runs out, so part of the output may already have been written by the time
+ * the IllegalArgumentException is thrown.
+ */
+public class StreamingConverter {
+
+	private static final int INITIAL_DEPTH = 16;
+
+	//the notations which can be produced
+	private static final int INFIX = 0;
+	private static final int MINIMAL_INFIX = 1;
+	private static final int POSTFIX = 2;
+
+	/**
+	 * Convert an expression in prefix notation to fully parenthesised infix notation
+	 *
+	 * Example: "- + 2 15 4" would be "((2+15)-4)"
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @return infix notation of the expression, the same as tree2infix would give
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression
+	 */
+	public static String prefix2infix(String expression) throws IllegalArgumentException {
+		return convert(expression, INFIX);
+	}
+
+	/**
+	 * Convert an expression in prefix notation to infix notation, only using
+	 * parenthesis where they are needed to keep the same structure. Operators of
+	 * the same precedence are grouped from the left, so a right operand of the same
+	 * precedence is still parenthesised.
+	 *
+	 * Example: "- + 2 15 4" would be "2+15-4", and "- 2 + 15 4" would be "2-(15+4)"
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @return infix notation of the expression with as few parenthesis as possible
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression
+	 */
+	public static String prefix2minimalInfix(String expression) throws IllegalArgumentException {
+		return convert(expression, MINIMAL_INFIX);
+	}
+
+	/**
+	 * Convert an expression in prefix notation to postfix notation (tokens
+	 * separated by single spaces, like tree2prefix)
+	 *
+	 * Example: "- + 2 15 4" would be "2 15 + 4 -"
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @return postfix notation of the expression
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression
+	 */
+	public static String prefix2postfix(String expression) throws IllegalArgumentException {
+		return convert(expression, POSTFIX);
+	}
+
+	/**
+	 * Convert an expression in prefix notation read from a Reader to fully
+	 * parenthesised infix notation
+	 *
+	 * @param in
+	 *            - a source of an arithmetic expression in prefix notation
+	 * @param out
+	 *            - where the infix notation is written
+	 * @throws IOException
+	 *             if in could not be read, or out could not be written
+	 * @throws IllegalArgumentException
+	 *             if the expression was not a valid expression
+	 */
+	public static void prefix2infix(Reader in, Appendable out) throws IOException, IllegalArgumentException {
+		convert(new PrefixTokenizer(in), out, INFIX);
+	}
+
+	/**
+	 * Convert an expression in prefix notation read from a Reader to infix
+	 * notation, only using parenthesis where they are needed
+	 *
+	 * @param in
+	 *            - a source of an arithmetic expression in prefix notation
+	 * @param out
+	 *            - where the infix notation is written
+	 * @throws IOException
+	 *             if in could not be read, or out could not be written
+	 * @throws IllegalArgumentException
+	 *             if the expression was not a valid expression
+	 */
+	public static void prefix2minimalInfix(Reader in, Appendable out) throws IOException, IllegalArgumentException {
+		convert(new PrefixTokenizer(in), out, MINIMAL_INFIX);
+	}
+
+	/**
+	 * Convert an expression in prefix notation read from a Reader to postfix
+	 * notation
+	 *
+	 * @param in
+	 *            - a source of an arithmetic expression in prefix notation
+	 * @param out
+	 *            - where the postfix notation is written
+	 * @throws IOException
+	 *             if in could not be read, or out could not be written
+	 * @throws IllegalArgumentException
+	 *             if the expression was not a valid expression
+	 */
+	public static void prefix2postfix(Reader in, Appendable out) throws IOException, IllegalArgumentException {
+		convert(new PrefixTokenizer(in), out, POSTFIX);
+	}
+
+	//private helper method to convert an expression held in a String
+	private static String convert(String expression, int notation) throws IllegalArgumentException {
+		StringBuilder out = new StringBuilder();
+		try {
+			convert(new PrefixTokenizer(expression), out, notation);
+		} catch (IOException e) {
+			//can't happen, the tokenizer is reading from a String and writing to a StringBuilder
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	//private helper method which does the conversion for every notation
+	private static void convert(PrefixTokenizer tokens, Appendable out, int notation)
+			throws IOException, IllegalArgumentException {
+
+		//for each pending operator: whether its left operand is complete, and whether it opened a parenthesis
+		char[] operators = new char[INITIAL_DEPTH];
+		boolean[] hasLeft = new boolean[INITIAL_DEPTH];
+		boolean[] parenthesised = new boolean[INITIAL_DEPTH];
+		int depth = 0;
+		boolean first = true;
+
+		String token;
+		while ((token = tokens.next()) != null) {
+			if (PrefixTokenizer.isOperator(token)) {
+				if (depth == operators.length) {
+					operators = Arrays.copyOf(operators, depth * 2);
+					hasLeft = Arrays.copyOf(hasLeft, depth * 2);
+					parenthesised = Arrays.copyOf(parenthesised, depth * 2);
+				}
+				char operator = token.charAt(0);
+				boolean parenthesis;
+				if (notation == INFIX) {
+					parenthesis = true;
+				}
+				else if (notation == MINIMAL_INFIX && depth > 0) {
+					parenthesis = needsParenthesis(operators[depth - 1], operator, hasLeft[depth - 1]);
+				}
+				else {
+					parenthesis = false;
+				}
+				if (parenthesis) {
+					out.append('(');
+				}
+				operators[depth] = operator;
+				hasLeft[depth] = false;
+				parenthesised[depth] = parenthesis;
+				depth++;
+				continue;
+			}
+
+			//a value completes every operator above it which already has its left operand
+			if (notation == POSTFIX && !first) {
+				out.append(' ');
+			}
+			out.append(token);
+			first = false;
+			while (depth > 0 && hasLeft[depth - 1]) {
+				depth--;
+				if (notation == POSTFIX) {
+					out.append(' ').append(operators[depth]);
+				}
+				else if (parenthesised[depth]) {
+					out.append(')');
+				}
+			}
+			if (depth == 0) {
+				return;
+			}
+			hasLeft[depth - 1] = true;
+			if (notation != POSTFIX) {
+				out.append(operators[depth - 1]);
+			}
+		}
+
+		//ran out of tokens before the expression was complete
+		throw new IllegalArgumentException("String was not a valid arithmetic expression in prefix notation");
+	}
+
+	//private helper method to decide whether an operand which is itself an operator needs parenthesis
+	private static boolean needsParenthesis(char parent, char child, boolean rightOperand) {
+		if (rightOperand) {
+			return precedence(child) <= precedence(parent);
+		}
+		return precedence(child) < precedence(parent);
+	}
+
+	//private helper method giving the precedence of an operator (higher binds more tightly)
+	private static int precedence(char operator) {
+		return (operator == '*') ? 2 : 1;
+	}
+}
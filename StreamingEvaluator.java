@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Evaluates arithmetic expressions in prefix notation directly from their tokens,
+ * without building a LinkedBinaryTree first
+ *
+ * The result is the same as parsing the expression with Assignment.prefix2tree,
+ * substituting the bindings and simplifying the tree down to a single value, and
+ * the same expressions are accepted (including ignoring any tokens after the end
+ * of a complete expression).
+ *
+ * Only a stack of operators still waiting for their operands is kept, so
+ * evaluation runs in O(n) time and O(depth) memory.
+ */
+public class StreamingEvaluator {
+
+	private static final int INITIAL_DEPTH = 16;
+
+	/**
+	 * Evaluate an arithmetic expression in prefix notation
+	 *
+	 * Example: "+ x * 2 y" with x = 1 and y = 4 evaluates to 9
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @param bindings
+	 *            - a map of variable labels to integer values
+	 * @return the value of the expression
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression, bindings is null, or
+	 *             the expression uses a variable which is missing from (or null
+	 *             in) bindings
+	 */
+	public static int evaluate(String expression, Map<String, Integer> bindings) throws IllegalArgumentException {
+		try {
+			return evaluate(new PrefixTokenizer(expression), bindings);
+		} catch (IOException e) {
+			//can't happen, the tokenizer is reading from a String
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Evaluate an arithmetic expression in prefix notation, read from a Reader.
+	 * Reading stops as soon as a complete expression has been read.
+	 *
+	 * @param in
+	 *            - a source of an arithmetic expression in prefix notation
+	 * @param bindings
+	 *            - a map of variable labels to integer values
+	 * @return the value of the expression
+	 * @throws IOException
+	 *             if in could not be read
+	 * @throws IllegalArgumentException
+	 *             if the expression was not a valid expression, bindings is null,
+	 *             or the expression uses a variable which is missing from (or null
+	 *             in) bindings
+	 */
+	public static int evaluate(Reader in, Map<String, Integer> bindings) throws IOException, IllegalArgumentException {
+		return evaluate(new PrefixTokenizer(in), bindings);
+	}
+
+	//private helper method which does the evaluation for both sources of tokens
+	private static int evaluate(PrefixTokenizer tokens, Map<String, Integer> bindings)
+			throws IOException, IllegalArgumentException {
+		if (bindings == null) {
+			throw new IllegalArgumentException("Bindings were null");
+		}
+
+		//operators still waiting for operands, with their left operand once it is known
+		char[] operators = new char[INITIAL_DEPTH];
+		int[] lefts = new int[INITIAL_DEPTH];
+		boolean[] hasLeft = new boolean[INITIAL_DEPTH];
+		int depth = 0;
+
+		String token;
+		while ((token = tokens.next()) != null) {
+			if (PrefixTokenizer.isOperator(token)) {
+				if (depth == operators.length) {
+					operators = Arrays.copyOf(operators, depth * 2);
+					lefts = Arrays.copyOf(lefts, depth * 2);
+					hasLeft = Arrays.copyOf(hasLeft, depth * 2);
+				}
+				operators[depth] = token.charAt(0);
+				hasLeft[depth] = false;
+				depth++;
+				continue;
+			}
+
+			//a value completes every operator above it which already has its left operand
+			int value = valueOf(token, bindings);
+			while (depth > 0 && hasLeft[depth - 1]) {
+				depth--;
+				value = apply(operators[depth], lefts[depth], value);
+			}
+			if (depth == 0) {
+				return value;
+			}
+			lefts[depth - 1] = value;
+			hasLeft[depth - 1] = true;
+		}
+
+		//ran out of tokens before the expression was complete
+		throw new IllegalArgumentException("String was not a valid arithmetic expression in prefix notation");
+	}
+
+	//helper method to find the value of a leaf, substituting variables before parsing numbers (as substitute then simplify would)
+	static int valueOf(String token, Map<String, Integer> bindings) throws IllegalArgumentException {
+		if (bindings.containsKey(token)) {
+			Integer value = bindings.get(token);
+			if (value == null) {
+				throw new IllegalArgumentException("Variable " + token + " was bound to null");
+			}
+			return value;
+		}
+		try {
+			return Integer.parseInt(token);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Variable " + token + " has no value");
+		}
+	}
+
+	/**
+	 * Apply a binary operator to two values, with the same (overflowing) int
+	 * arithmetic as Assignment.simplify
+	 *
+	 * @param operator
+	 *            - one of '+', '-' or '*'
+	 * @param left
+	 * @param right
+	 * @return the result of left operator right
+	 */
+	static int apply(char operator, int left, int right) {
+		switch (operator) {
+		case '+':
+			return left + right;
+		case '-':
+			return left - right;
+		default:
+			return left * right;
+		}
+	}
+}
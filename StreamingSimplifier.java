@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Simplifies arithmetic expressions in prefix notation straight from their tokens,
+ * producing prefix notation again, without building a LinkedBinaryTree
+ *
+ * simplify(s) gives the same string as
+ * Assignment.tree2prefix(Assignment.simplify(Assignment.prefix2tree(s))), and
+ * simplifyFancy(s) the same string as
+ * Assignment.tree2prefix(Assignment.simplifyFancy(Assignment.prefix2tree(s))).
+ *
+ * The output is built in a single buffer as the tokens are read. Each operator
+ * remembers where its text and its left operand start in the buffer, and once its
+ * right operand is complete the rules are applied by cutting the buffer back (for
+ * example "+ x 0" is cut back to just the text of x). Apart from that buffer, only
+ * a stack with one entry per pending operator is kept, so memory is bounded by the
+ * depth of the expression plus the simplified text of operands still waiting for
+ * their operator. The text can't be written out any earlier, because rules like
+ * "* x 0" and "- x x" can only be decided once both operands have been read.
+ */
+public class StreamingSimplifier {
+
+	private static final int INITIAL_DEPTH = 16;
+
+	/**
+	 * Evaluate every subexpression of a prefix expression which only uses numeric
+	 * values, the same way as Assignment.simplify
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @return the simplified expression in prefix notation
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression
+	 */
+	public static String simplify(String expression) throws IllegalArgumentException {
+		return simplify(expression, false);
+	}
+
+	/**
+	 * Simplify a prefix expression the same way as Assignment.simplifyFancy (i.e.
+	 * evaluating numeric subexpressions and applying the rules for 1*x, x*1, 0*x,
+	 * x*0, 0+x, x+0, x-0 and x-x)
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @return the simplified expression in prefix notation
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression
+	 */
+	public static String simplifyFancy(String expression) throws IllegalArgumentException {
+		return simplify(expression, true);
+	}
+
+	/**
+	 * Evaluate every subexpression of a prefix expression read from a Reader which
+	 * only uses numeric values, writing the result in prefix notation
+	 *
+	 * @param in
+	 *            - a source of an arithmetic expression in prefix notation
+	 * @param out
+	 *            - where the simplified expression is written
+	 * @throws IOException
+	 *             if in could not be read, or out could not be written
+	 * @throws IllegalArgumentException
+	 *             if the expression was not a valid expression
+	 */
+	public static void simplify(Reader in, Writer out) throws IOException, IllegalArgumentException {
+		out.append(simplify(new PrefixTokenizer(in), false));
+	}
+
+	/**
+	 * Simplify a prefix expression read from a Reader the same way as
+	 * Assignment.simplifyFancy, writing the result in prefix notation
+	 *
+	 * @param in
+	 *            - a source of an arithmetic expression in prefix notation
+	 * @param out
+	 *            - where the simplified expression is written
+	 * @throws IOException
+	 *             if in could not be read, or out could not be written
+	 * @throws IllegalArgumentException
+	 *             if the expression was not a valid expression
+	 */
+	public static void simplifyFancy(Reader in, Writer out) throws IOException, IllegalArgumentException {
+		out.append(simplify(new PrefixTokenizer(in), true));
+	}
+
+	//private helper method to simplify an expression held in a String
+	private static String simplify(String expression, boolean fancy) throws IllegalArgumentException {
+		try {
+			return simplify(new PrefixTokenizer(expression), fancy).toString();
+		} catch (IOException e) {
+			//can't happen, the tokenizer is reading from a String
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	//private helper method which does the simplification for both sources of tokens
+	private static StringBuilder simplify(PrefixTokenizer tokens, boolean fancy)
+			throws IOException, IllegalArgumentException {
+		StringBuilder out = new StringBuilder();
+
+		//for each pending operator: where its text starts, where its left operand starts and ends,
+		//and whether the (simplified) left operand is a single value
+		char[] operators = new char[INITIAL_DEPTH];
+		int[] starts = new int[INITIAL_DEPTH];
+		int[] leftStarts = new int[INITIAL_DEPTH];
+		int[] leftEnds = new int[INITIAL_DEPTH];
+		boolean[] hasLeft = new boolean[INITIAL_DEPTH];
+		boolean[] leftLeaf = new boolean[INITIAL_DEPTH];
+		int depth = 0;
+
+		String token;
+		while ((token = tokens.next()) != null) {
+			if (PrefixTokenizer.isOperator(token)) {
+				if (depth == operators.length) {
+					operators = Arrays.copyOf(operators, depth * 2);
+					starts = Arrays.copyOf(starts, depth * 2);
+					leftStarts = Arrays.copyOf(leftStarts, depth * 2);
+					leftEnds = Arrays.copyOf(leftEnds, depth * 2);
+					hasLeft = Arrays.copyOf(hasLeft, depth * 2);
+					leftLeaf = Arrays.copyOf(leftLeaf, depth * 2);
+				}
+				operators[depth] = token.charAt(0);
+				starts[depth] = out.length();
+				out.append(token).append(' ');
+				leftStarts[depth] = out.length();
+				hasLeft[depth] = false;
+				depth++;
+				continue;
+			}
+
+			//a value completes every operator above it which already has its left operand
+			out.append(token);
+			boolean leaf = true;
+			while (depth > 0 && hasLeft[depth - 1]) {
+				depth--;
+				leaf = combine(out, operators[depth], starts[depth], leftStarts[depth], leftEnds[depth],
+						leftLeaf[depth], leaf, fancy);
+			}
+			if (depth == 0) {
+				return out;
+			}
+			leftEnds[depth - 1] = out.length();
+			leftLeaf[depth - 1] = leaf;
+			hasLeft[depth - 1] = true;
+			out.append(' ');
+		}
+
+		//ran out of tokens before the expression was complete
+		throw new IllegalArgumentException("String was not a valid arithmetic expression in prefix notation");
+	}
+
+	/*
+	 * private helper method to apply the simplification rules to an operator whose operands are both complete,
+	 * where the operator's text runs from start to the end of the buffer, and its right operand starts one
+	 * space after its left operand ends. Returns true if the result is a single value.
+	 */
+	private static boolean combine(StringBuilder out, char operator, int start, int leftStart, int leftEnd,
+			boolean leftLeaf, boolean rightLeaf, boolean fancy) {
+		int rightStart = leftEnd + 1;
+		int rightEnd = out.length();
+
+		//both operands are numbers, so evaluate the operator
+		if (leftLeaf && rightLeaf) {
+			try {
+				int left = Integer.parseInt(out, leftStart, leftEnd, 10);
+				int right = Integer.parseInt(out, rightStart, rightEnd, 10);
+				out.setLength(start);
+				out.append(StreamingEvaluator.apply(operator, left, right));
+				return true;
+			} catch (NumberFormatException e) {
+				//do nothing, because one of the operands is a variable
+			}
+		}
+		if (!fancy) {
+			return false;
+		}
+
+		boolean leftOne = isValue(out, leftStart, leftEnd, '1');
+		boolean rightOne = isValue(out, rightStart, rightEnd, '1');
+		boolean leftZero = isValue(out, leftStart, leftEnd, '0');
+		boolean rightZero = isValue(out, rightStart, rightEnd, '0');
+
+		if ((operator == '*' && leftOne) || (operator == '+' && leftZero)) {
+			//keep only the right operand
+			out.delete(start, rightStart);
+			return rightLeaf;
+		}
+		if ((operator == '*' && rightOne) || (operator != '*' && rightZero)) {
+			//keep only the left operand
+			out.setLength(leftEnd);
+			out.delete(start, leftStart);
+			return leftLeaf;
+		}
+		if ((operator == '*' && (leftZero || rightZero))
+				|| (operator == '-' && regionsEqual(out, leftStart, leftEnd, rightStart, rightEnd))) {
+			out.setLength(start);
+			out.append('0');
+			return true;
+		}
+		return false;
+	}
+
+	//private helper method to check whether a region of the buffer is exactly the single character c
+	private static boolean isValue(StringBuilder out, int start, int end, char c) {
+		return end - start == 1 && out.charAt(start) == c;
+	}
+
+	//private helper method to check whether two operands are identical (the same prefix text means the same subtree)
+	private static boolean regionsEqual(StringBuilder out, int aStart, int aEnd, int bStart, int bEnd) {
+		if (aEnd - aStart != bEnd - bStart) {
+			return false;
+		}
+		for (int i = 0; i < aEnd - aStart; i++) {
+			if (out.charAt(aStart + i) != out.charAt(bStart + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
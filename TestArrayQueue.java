@@ -0,0 +1,75 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import textbook.ArrayQueue;
+
+public class TestArrayQueue {
+
+	@Test(timeout = 100)
+	public void testEmpty() {
+		ArrayQueue<String> queue = new ArrayQueue<>();
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.size());
+		assertNull(queue.first());
+		assertNull(queue.dequeue());
+		assertEquals("()", queue.toString());
+		queue.enqueue("a");
+		assertEquals("a", queue.dequeue());
+		assertNull(queue.dequeue());
+		assertTrue(queue.isEmpty());
+	}
+
+	//the front moves around the array many times without it growing
+	@Test(timeout = 100)
+	public void testWraparound() {
+		ArrayQueue<Integer> queue = new ArrayQueue<>(4);
+		int next = 0;
+		for (int i = 0; i < 3; i++) {
+			queue.enqueue(next++);
+		}
+		for (int i = 0; i < 100; i++) {
+			assertEquals(next - 3, queue.first().intValue());
+			assertEquals(next - 3, queue.dequeue().intValue());
+			queue.enqueue(next++);
+			assertEquals(3, queue.size());
+		}
+		assertEquals("(100, 101, 102)", queue.toString());
+	}
+
+	//growing while the elements wrap past the end of the array keeps them in order
+	@Test(timeout = 100)
+	public void testGrowWhileWrapped() {
+		ArrayQueue<Integer> queue = new ArrayQueue<>(4);
+		for (int i = 0; i < 4; i++) {
+			queue.enqueue(i);
+		}
+		queue.dequeue();
+		queue.dequeue();
+		for (int i = 4; i < 20; i++) {
+			queue.enqueue(i);
+		}
+		assertEquals(18, queue.size());
+		for (int i = 2; i < 20; i++) {
+			assertEquals(i, queue.dequeue().intValue());
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test(timeout = 100)
+	public void testCapacity() {
+		ArrayQueue<String> one = new ArrayQueue<>(1);
+		one.enqueue("a");
+		one.enqueue("b");
+		one.enqueue("c");
+		assertEquals("(a, b, c)", one.toString());
+		for (int capacity : new int[] { 0, -1, (1 << 30) + 1, Integer.MAX_VALUE }) {
+			try {
+				new ArrayQueue<String>(capacity);
+				fail("Capacity " + capacity + " should be rejected");
+			} catch (IllegalArgumentException e) {
+				assertEquals("Capacity must be between 1 and 2^30", e.getMessage());
+			}
+		}
+	}
+}
@@ -55,6 +55,14 @@ public class TestAssignment {
 		tree = Assignment.prefix2tree("+ 5 - 4");
 	}
 	
+	// blank input splits into no tokens, and should be rejected as an invalid expression
+	@Test(timeout = 100)
+	public void testPrefix2treeBlank() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("String was not a valid arithmetic expression in prefix notation");
+		Assignment.prefix2tree(" ");
+	}
+	
 	// example of using the Assignment.equals method to check that "- x + 1 2" simplifies to "- x 3"
 	@Test(timeout = 100)
 	public void testSimplify1() {
@@ -451,6 +459,20 @@ public class TestAssignment {
 		
 	}
 	
+	//subtrees discarded by the zero rules should no longer be counted in the size of the tree
+	@Test(timeout = 100)
+	public void testSimplifyFancySize() {
+		LinkedBinaryTree<String> tree = Assignment.prefix2tree("+ x * 0 + a b");
+		tree = Assignment.simplifyFancy(tree);
+		assertEquals("x", Assignment.tree2prefix(tree));
+		assertEquals(1, tree.size());
+		
+		tree = Assignment.prefix2tree("* y - * a b * a b");
+		tree = Assignment.simplifyFancy(tree);
+		assertEquals("0", Assignment.tree2prefix(tree));
+		assertEquals(1, tree.size());
+	}
+	
 	@Test(timeout = 100)
 	public void testSubstitute() {
 		LinkedBinaryTree<String> tree;
@@ -611,6 +633,69 @@ public class TestAssignment {
 		}
 	}
 	
+	//checking a tree again should notice any modification made since the last check
+	@Test(timeout = 100)
+	public void testIsArithmeticExpressionAfterModification() {
+		LinkedBinaryTree<String> tree = Assignment.prefix2tree("+ a - b c");
+		assertTrue(Assignment.isArithmeticExpression(tree));
+		assertTrue(Assignment.isArithmeticExpression(tree));
+		
+		tree.set(tree.left(tree.root()), "*");
+		assertFalse(Assignment.isArithmeticExpression(tree));
+		tree.set(tree.left(tree.root()), "a");
+		assertTrue(Assignment.isArithmeticExpression(tree));
+		
+		Position<String> minus = tree.right(tree.root());
+		tree.remove(tree.left(minus));
+		assertFalse(Assignment.isArithmeticExpression(tree));
+		
+		//a tree left valid by substitute and simplify stays valid
+		tree = Assignment.prefix2tree("+ a - b c");
+		Assignment.substitute(tree, "b", 4);
+		Assignment.substitute(tree, "c", 1);
+		Assignment.simplify(tree);
+		assertTrue(Assignment.isArithmeticExpression(tree));
+		assertEquals("(a+3)", Assignment.tree2infix(tree));
+	}
+	
+	//substituting for an operator replaces the operator, which must not be remembered as valid
+	@Test(timeout = 100)
+	public void testSubstituteOperator() {
+		LinkedBinaryTree<String> tree = Assignment.prefix2tree("+ 1 x");
+		Assignment.substitute(tree, "+", 5);
+		assertFalse(Assignment.isArithmeticExpression(tree));
+		try {
+			Assignment.tree2prefix(tree);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+		
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("x", 2);
+		map.put("*", 3);
+		tree = Assignment.prefix2tree("* x 4");
+		assertFalse(Assignment.isArithmeticExpression(Assignment.substitute(tree, map)));
+		tree = Assignment.prefix2tree("* x 4");
+		assertFalse(Assignment.isArithmeticExpression(ParallelAssignment.substitute(tree, map)));
+		
+		//an operator which isn't in the tree changes nothing
+		tree = Assignment.prefix2tree("+ x 4");
+		assertTrue(Assignment.isArithmeticExpression(Assignment.substitute(tree, map)));
+		assertEquals("+ 2 4", Assignment.tree2prefix(tree));
+	}
+	
+	//code compiled against the original LinkedBinaryTree signatures must still find them
+	@Test(timeout = 100)
+	public void testLinkedBinaryTreeSignatures() throws NoSuchMethodException {
+		assertEquals(boolean.class, Assignment.class.getMethod("equals", LinkedBinaryTree.class, LinkedBinaryTree.class)
+				.getReturnType());
+		assertEquals(String.class, Assignment.class.getMethod("tree2prefix", LinkedBinaryTree.class).getReturnType());
+		assertEquals(String.class, Assignment.class.getMethod("tree2infix", LinkedBinaryTree.class).getReturnType());
+		assertEquals(boolean.class, Assignment.class.getMethod("isArithmeticExpression", LinkedBinaryTree.class)
+				.getReturnType());
+	}
+	
 	@Test(timeout = 100)
 	public void testMixOfOperations() {
 		LinkedBinaryTree<String> tree;
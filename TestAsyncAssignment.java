@@ -0,0 +1,161 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+public class TestAsyncAssignment {
+
+	@Test(timeout = 2000)
+	public void testMatchesSequential() throws Exception {
+		AsyncAssignment async = new AsyncAssignment();
+		Random random = new Random(1909);
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("x", 7);
+		for (int i = 0; i < 200; i++) {
+			String expression = RandomExpressions.randomExpression(random, 8);
+			LinkedBinaryTree<String> tree = async.prefix2tree(expression).get();
+			assertEquals(expression, async.tree2prefix(tree).get());
+			assertEquals(Assignment.tree2infix(tree), async.tree2infix(tree).get());
+
+			String simplified = Assignment.tree2prefix(Assignment.simplify(Assignment.prefix2tree(expression)));
+			assertEquals(simplified, Assignment.tree2prefix(async.simplify(Assignment.prefix2tree(expression)).get()));
+			String fancy = Assignment.tree2prefix(Assignment.simplifyFancy(Assignment.prefix2tree(expression)));
+			assertEquals(fancy, Assignment.tree2prefix(async.simplifyFancy(Assignment.prefix2tree(expression)).get()));
+			String substituted = Assignment.tree2prefix(Assignment.substitute(Assignment.prefix2tree(expression), map));
+			assertEquals(substituted, Assignment.tree2prefix(async.substitute(tree, "x", 7).get()));
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void testInvalid() throws InterruptedException {
+		AsyncAssignment async = new AsyncAssignment();
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("x", null);
+		assertFailsWithIllegalArgument(async.prefix2tree("+ 1"));
+		assertFailsWithIllegalArgument(async.substitute(Assignment.prefix2tree("+ x 1"), map));
+		assertFailsWithIllegalArgument(async.substitute(Assignment.prefix2tree("+ x 1"), null, 2));
+		assertFailsWithIllegalArgument(async.simplifyAll(null, false));
+		assertFailsWithIllegalArgument(async.prefix2treeAll(List.of("+ 1 2", "+ 1")));
+		try {
+			new AsyncAssignment(null);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+	}
+
+	//a future cancelled before its task starts should never touch the tree
+	@Test(timeout = 100)
+	public void testCancelBeforeStart() {
+		ArrayList<Runnable> queued = new ArrayList<>();
+		AsyncAssignment async = new AsyncAssignment(queued::add);
+		LinkedBinaryTree<String> tree = Assignment.prefix2tree("+ 1 2");
+		CompletableFuture<LinkedBinaryTree<String>> future = async.simplify(tree);
+		assertTrue(future.cancel(true));
+		queued.forEach(Runnable::run);
+		assertEquals("+ 1 2", Assignment.tree2prefix(tree));
+	}
+
+	//cancelling while the tree is being simplified should stop the traversal part way, leaving a valid tree
+	@Test(timeout = 2000)
+	public void testCancelDuringTraversal() {
+		ArrayList<Runnable> queued = new ArrayList<>();
+		AsyncAssignment async = new AsyncAssignment(queued::add);
+		ArrayList<CompletableFuture<?>> futures = new ArrayList<>();
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<String>() {
+			@Override
+			public String set(Position<String> p, String e) {
+				//the first change made by the traversal cancels it
+				futures.get(0).cancel(true);
+				return super.set(p, e);
+			}
+		};
+		Position<String> root = tree.addRoot("+");
+		tree.attach(root, Assignment.prefix2tree(sums(12)), Assignment.prefix2tree(sums(12)));
+		int size = tree.size();
+
+		futures.add(async.simplify(tree));
+		queued.forEach(Runnable::run);
+		assertTrue(futures.get(0).isCancelled());
+		assertTrue(Assignment.isArithmeticExpression(tree));
+		assertTrue(tree.size() < size);
+		assertTrue(tree.size() > size / 2);
+	}
+
+	//a batch of small expressions should be handled by a few tasks, not one each
+	@Test(timeout = 2000)
+	public void testBatches() throws Exception {
+		int[] tasks = new int[1];
+		Executor counting = task -> {
+			tasks[0]++;
+			task.run();
+		};
+		AsyncAssignment async = new AsyncAssignment(counting);
+		Random random = new Random(1910);
+		ArrayList<String> expressions = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			expressions.add(RandomExpressions.randomExpression(random, 4));
+		}
+		List<LinkedBinaryTree<String>> trees = async.prefix2treeAll(expressions).get();
+		assertEquals(expressions, async.tree2prefixAll(trees).get());
+
+		tasks[0] = 0;
+		List<LinkedBinaryTree<String>> simplified = async.simplifyAll(trees, true).get();
+		assertTrue(tasks[0] < 10);
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("y", 2);
+		async.substituteAll(simplified, map).get();
+		for (int i = 0; i < expressions.size(); i++) {
+			LinkedBinaryTree<String> expected = Assignment.substitute(
+					Assignment.simplifyFancy(Assignment.prefix2tree(expressions.get(i))), map);
+			assertTrue(Assignment.equals(expected, simplified.get(i)));
+		}
+	}
+
+	//a failing batch fails the whole future with its own exception, and cancels the other batches
+	@Test(timeout = 2000)
+	public void testBatchFailure() {
+		ArrayList<Runnable> queued = new ArrayList<>();
+		AsyncAssignment async = new AsyncAssignment(queued::add);
+		LinkedBinaryTree<String> first = Assignment.prefix2tree(sums(14));
+		LinkedBinaryTree<String> last = Assignment.prefix2tree(sums(14));
+		ArrayList<LinkedBinaryTree<String>> trees = new ArrayList<>();
+		trees.add(first);
+		trees.add(null);
+		trees.add(last);
+		CompletableFuture<List<LinkedBinaryTree<String>>> future = async.simplifyAll(trees, false);
+		assertEquals(2, queued.size());
+
+		//the second batch fails on the null before the first one starts
+		queued.get(1).run();
+		assertTrue(future.handle((result, e) -> e).join() instanceof IllegalArgumentException);
+		queued.get(0).run();
+		assertEquals((1 << 15) - 1, first.size());
+		assertEquals((1 << 15) - 1, last.size());
+	}
+
+	//helper method to make a complete tree of sums of 1s, of the given depth
+	private static String sums(int depth) {
+		return (depth == 0) ? "1" : "+ " + sums(depth - 1) + " " + sums(depth - 1);
+	}
+
+	//helper method to check that a future failed with IllegalArgumentException
+	private static void assertFailsWithIllegalArgument(CompletableFuture<?> future) throws InterruptedException {
+		try {
+			future.get();
+			fail("Should have thrown IllegalArgumentException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+}
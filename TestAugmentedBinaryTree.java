@@ -0,0 +1,130 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import textbook.AugmentedBinaryTree;
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+public class TestAugmentedBinaryTree {
+
+	//helper method to list the positions of a tree in preorder
+	private static void positions(LinkedBinaryTree<String> tree, Position<String> p, List<Position<String>> list) {
+		if (p == null) {
+			return;
+		}
+		list.add(p);
+		positions(tree, tree.left(p), list);
+		positions(tree, tree.right(p), list);
+	}
+
+	//helper method to count the nodes of a subtree
+	private static int count(LinkedBinaryTree<String> tree, Position<String> p) {
+		int n = 1;
+		for (Position<String> c : tree.children(p)) {
+			n += count(tree, c);
+		}
+		return n;
+	}
+
+	//helper method to measure the height of a subtree
+	private static int height(LinkedBinaryTree<String> tree, Position<String> p) {
+		int h = 0;
+		for (Position<String> c : tree.children(p)) {
+			h = Math.max(h, 1 + height(tree, c));
+		}
+		return h;
+	}
+
+	//helper method to check every stored value of a tree against a recount
+	private static void check(AugmentedBinaryTree<String> tree) {
+		List<Position<String>> list = new ArrayList<>();
+		positions(tree, tree.root(), list);
+		assertEquals(list.size(), tree.size());
+		for (Position<String> p : list) {
+			assertEquals(count(tree, p), tree.subtreeSize(p));
+			assertEquals(height(tree, p), tree.height(p));
+			int depth = 0;
+			for (Position<String> q = p; tree.parent(q) != null; q = tree.parent(q)) {
+				depth++;
+			}
+			assertEquals(depth, tree.depth(p));
+		}
+	}
+
+	//helper method to make a small augmented tree
+	private static AugmentedBinaryTree<String> small(Random random) {
+		AugmentedBinaryTree<String> t = new AugmentedBinaryTree<>();
+		Position<String> p = t.addRoot("s");
+		for (int i = random.nextInt(4); i > 0; i--) {
+			p = random.nextBoolean() ? t.addLeft(p, "l") : t.addRight(p, "r");
+		}
+		return t;
+	}
+
+	@Test(timeout = 100)
+	public void testSmall() {
+		AugmentedBinaryTree<String> tree = new AugmentedBinaryTree<>();
+		Position<String> a = tree.addRoot("a");
+		Position<String> b = tree.addLeft(a, "b");
+		Position<String> c = tree.addRight(b, "c");
+		assertEquals(3, tree.subtreeSize(a));
+		assertEquals(2, tree.height(a));
+		assertEquals(2, tree.depth(c));
+		tree.remove(b);
+		assertEquals(2, tree.subtreeSize(a));
+		assertEquals(1, tree.height(a));
+		assertEquals(1, tree.depth(c));
+		check(tree);
+	}
+
+	@Test(timeout = 1000) //longer timeout, as every step is checked against a recount
+	public void testMixedUpdates() {
+		Random random = new Random(1905);
+		AugmentedBinaryTree<String> tree = new AugmentedBinaryTree<>();
+		tree.addRoot("root");
+		List<Position<String>> list = new ArrayList<>();
+		for (int step = 0; step < 500; step++) {
+			list.clear();
+			positions(tree, tree.root(), list);
+			Position<String> p = list.get(random.nextInt(list.size()));
+			switch (random.nextInt(6)) {
+			case 0:
+				if (tree.left(p) == null) {
+					tree.addLeft(p, "l");
+				}
+				break;
+			case 1:
+				if (tree.right(p) == null) {
+					tree.addRight(p, "r");
+				}
+				break;
+			case 2:
+				if (tree.isExternal(p)) {
+					tree.attach(p, small(random), random.nextBoolean() ? small(random) : new AugmentedBinaryTree<>());
+				}
+				break;
+			case 3:
+				if (tree.numChildren(p) < 2 && tree.size() > 1) {
+					tree.remove(p);
+				}
+				break;
+			case 4:
+				if (p != tree.root()) {
+					LinkedBinaryTree<String> pruned = tree.prune(p);
+					assertEquals(pruned.size(), ((AugmentedBinaryTree<String>) pruned).subtreeSize(p));
+					check((AugmentedBinaryTree<String>) pruned);
+				}
+				break;
+			default:
+				tree.graft(p, small(random));
+				break;
+			}
+			check(tree);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+
+public class TestConcurrentExpression {
+
+	@Test(timeout = 100)
+	public void testReadsAndUpdates() {
+		LinkedBinaryTree<String> original = Assignment.prefix2tree("+ * x 2 - y 0");
+		ConcurrentExpression expression = new ConcurrentExpression(original);
+		assertEquals("+ * x 2 - y 0", expression.tree2prefix());
+		assertEquals("((x*2)+(y-0))", expression.tree2infix());
+
+		expression.substitute("x", 3);
+		assertEquals("+ * 3 2 - y 0", expression.tree2prefix());
+		expression.simplifyFancy();
+		assertEquals("+ 6 y", expression.tree2prefix());
+		assertEquals(3, expression.size());
+
+		//the tree it was made from is a separate copy
+		assertEquals("+ * x 2 - y 0", Assignment.tree2prefix(original));
+	}
+
+	//snapshots don't change when the shared tree is updated
+	@Test(timeout = 100)
+	public void testSnapshot() {
+		ConcurrentExpression expression = new ConcurrentExpression("- a b");
+		PersistentExpression before = expression.snapshot();
+		assertSame(before, expression.snapshot());
+		expression.update(tree -> tree.set(tree.root(), "*"));
+		assertEquals("- a b", before.toPrefix());
+		assertEquals("* a b", expression.snapshot().toPrefix());
+		assertSame(expression.snapshot(), expression.snapshot());
+
+		//several updates in a row only make one snapshot, when it is next read
+		expression.simplify();
+		expression.substitute("a", 2);
+		expression.substitute("b", 3);
+		assertEquals("* 2 3", expression.snapshot().toPrefix());
+		expression.simplify();
+		assertEquals(6, expression.evaluate(new HashMap<>()));
+	}
+
+	//an update that fails part way through shouldn't leave a partial change behind
+	@Test(timeout = 100)
+	public void testFailedUpdateIsUndone() {
+		ConcurrentExpression expression = new ConcurrentExpression("+ a + b c");
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("a", 1);
+		map.put("c", null);
+		try {
+			expression.substitute(map);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+		assertEquals("+ a + b c", expression.tree2prefix());
+
+		try {
+			expression.update(tree -> tree.set(tree.root(), "a"));
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+		assertEquals("+ a + b c", Assignment.tree2prefix(expression.copy()));
+
+		//substituting for an operator leaves an invalid tree, so it must be undone too
+		try {
+			expression.substitute("+", 5);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+		assertEquals("+ a + b c", expression.tree2prefix());
+	}
+
+	//readers should only ever see the expression before or after a whole update
+	@Test(timeout = 5000)
+	public void testConcurrentReaders() throws InterruptedException {
+		ConcurrentExpression expression = new ConcurrentExpression("+ x x");
+		AtomicReference<String> failure = new AtomicReference<>();
+		ArrayList<Thread> readers = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Thread reader = new Thread(() -> {
+				HashMap<String, Integer> bindings = new HashMap<>();
+				bindings.put("x", 1);
+				for (int j = 0; j < 20000; j++) {
+					int value = expression.evaluate(bindings);
+					if (value % 2 != 0) {
+						failure.set("Saw a partial update: " + value);
+					}
+				}
+			});
+			readers.add(reader);
+			reader.start();
+		}
+		for (int i = 0; i < 2000; i++) {
+			//each update keeps the value even, but the middle of it doesn't
+			expression.update(tree -> {
+				tree.set(tree.left(tree.root()), "1");
+				tree.set(tree.right(tree.root()), "x");
+				tree.set(tree.left(tree.root()), "x");
+			});
+		}
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		assertNull(failure.get());
+	}
+}
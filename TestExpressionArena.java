@@ -0,0 +1,66 @@
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+
+public class TestExpressionArena {
+
+	@Test(timeout = 100)
+	public void testParseAndOutput() {
+		ExpressionArena arena = new ExpressionArena(4);
+		String[] expressions = { "x", "+ 1 2", "* - 1 + b 3 d", "+ + + + a b c d e", "+ a * 9000 - c 2123SASD" };
+		int[] roots = new int[expressions.length];
+		for (int i = 0; i < expressions.length; i++) {
+			roots[i] = arena.parse(expressions[i]);
+		}
+		//every tree should still be intact after the others were added
+		for (int i = 0; i < expressions.length; i++) {
+			LinkedBinaryTree<String> tree = Assignment.prefix2tree(expressions[i]);
+			assertEquals(Assignment.tree2prefix(tree), arena.toPrefix(roots[i]));
+			assertEquals(Assignment.tree2infix(tree), arena.toInfix(roots[i]));
+			assertTrue(Assignment.equals(tree, arena.toTree(roots[i])));
+		}
+		assertEquals(1 + 3 + 7 + 9 + 7, arena.size());
+
+		arena.clear();
+		assertEquals(0, arena.size());
+		assertEquals("(a-b)", arena.toInfix(arena.parse("- a b")));
+	}
+
+	@Test(timeout = 100)
+	public void testCopyOf() {
+		ExpressionArena arena = new ExpressionArena();
+		arena.parse("+ 1 2");
+		LinkedBinaryTree<String> tree = Assignment.prefix2tree("- * a + b 1 c");
+		int root = arena.copyOf(tree);
+		assertEquals("- * a + b 1 c", arena.toPrefix(root));
+		assertTrue(Assignment.equals(tree, arena.toTree(root)));
+	}
+
+	@Test(timeout = 100)
+	public void testEvaluate() {
+		ExpressionArena arena = new ExpressionArena();
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("a", 10);
+		map.put("b", 2);
+		map.put("c", 8);
+		assertEquals(-72, arena.evaluate(arena.parse("- a + b * a c"), map));
+		assertEquals(7, arena.evaluate(arena.parse("7"), map));
+	}
+
+	@Test(timeout = 100)
+	public void testInvalidExpression() {
+		ExpressionArena arena = new ExpressionArena();
+		arena.parse("+ 1 2");
+		try {
+			arena.parse("+ 5 - 4");
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//expected, and the partly built tree should have been freed
+		}
+		assertEquals(3, arena.size());
+	}
+}
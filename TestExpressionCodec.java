@@ -0,0 +1,65 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+
+public class TestExpressionCodec {
+
+	@Test(timeout = 100)
+	public void testRoundTrip() {
+		String[] expressions = { "x", "0", "239", "240", "-1", "007", "+5", "", "- 2147483647 -2147483648",
+				"* - 1 + b 3 d", "+ + + + a b c d e", "+ a * 9000 - c 2123SASD", "+ h\u00e9llo w\u00f6rld" };
+		for (String expression : expressions) {
+			LinkedBinaryTree<String> tree = Assignment.prefix2tree(expression);
+			ByteBuffer encoded = ExpressionCodec.encode(tree);
+			LinkedBinaryTree<String> decoded = ExpressionCodec.decode(encoded);
+			assertTrue(expression, Assignment.equals(tree, decoded));
+			assertEquals(tree.size(), decoded.size());
+			assertFalse(encoded.hasRemaining());
+		}
+	}
+
+	//variables should only be stored once, and small numbers in a single byte
+	@Test(timeout = 100)
+	public void testCompact() {
+		String expression = "+ + + + * variable 3 * variable 4 * variable 5 * variable 6 1000";
+		ByteBuffer encoded = ExpressionCodec.encode(Assignment.prefix2tree(expression));
+		//dictionary: 1 + 1 + 8, nodes: 8 operators + 4 names * 2 + 4 small numbers + 1000 in 3 bytes
+		assertEquals(10 + 8 + 8 + 4 + 3, encoded.remaining());
+		assertTrue(encoded.remaining() < expression.length());
+	}
+
+	@Test(timeout = 100)
+	public void testWriteToChannel() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		LinkedBinaryTree<String> first = Assignment.prefix2tree("- x 1");
+		LinkedBinaryTree<String> second = Assignment.prefix2tree("* y -300");
+		ExpressionCodec.write(first, Channels.newChannel(bytes));
+		ExpressionCodec.write(second, Channels.newChannel(bytes));
+
+		//expressions written one after another can be read back one after another
+		ByteBuffer in = ByteBuffer.allocateDirect(bytes.size());
+		in.put(bytes.toByteArray()).flip();
+		assertTrue(Assignment.equals(first, ExpressionCodec.decode(in)));
+		assertTrue(Assignment.equals(second, ExpressionCodec.decode(in)));
+		assertFalse(in.hasRemaining());
+	}
+
+	@Test(timeout = 100)
+	public void testInvalidEncoding() {
+		ByteBuffer truncated = ExpressionCodec.encode(Assignment.prefix2tree("+ a b"));
+		truncated.limit(truncated.limit() - 1);
+		try {
+			ExpressionCodec.decode(truncated);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//expected, the last node is missing
+		}
+	}
+}
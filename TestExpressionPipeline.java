@@ -0,0 +1,94 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestExpressionPipeline {
+
+	//a small queue capacity makes the stages wait for each other often
+	@Test(timeout = 5000)
+	public void testMatchesSequential() throws IOException {
+		Random random = new Random(1912);
+		StringBuilder input = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			String expression = RandomExpressions.randomExpression(random, 6);
+			input.append(expression).append('\n');
+			expected.append(Assignment.tree2infix(Assignment.simplifyFancy(Assignment.prefix2tree(expression))))
+					.append('\n');
+		}
+		ExpressionPipeline pipeline = new ExpressionPipeline(Assignment::simplifyFancy, Assignment::tree2infix, 8);
+		StringWriter out = new StringWriter();
+		pipeline.run(new StringReader(input.toString()), out);
+		assertEquals(expected.toString(), out.toString());
+
+		List<ExpressionPipeline.Stage> stages = pipeline.stages();
+		assertEquals(5, stages.size());
+		for (ExpressionPipeline.Stage stage : stages) {
+			assertEquals(stage.toString(), 5000, stage.items());
+			assertEquals(0, stage.queueDepth());
+			assertTrue(stage.throughput() > 0);
+		}
+		assertEquals("transform", stages.get(2).name());
+	}
+
+	@Test(timeout = 5000)
+	public void testInvalidExpression() throws IOException {
+		ExpressionPipeline pipeline = new ExpressionPipeline(Assignment::simplify, Assignment::tree2prefix);
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			input.append((i == 5000) ? "+ 1\n" : "+ 1 2\n");
+		}
+		try {
+			pipeline.run(new StringReader(input.toString()), new StringWriter());
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testReadFailure() {
+		ExpressionPipeline pipeline = new ExpressionPipeline(Assignment::simplify, Assignment::tree2prefix);
+		Reader broken = new Reader() {
+			@Override
+			public int read(char[] buffer, int offset, int length) throws IOException {
+				throw new IOException("broken");
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		try {
+			pipeline.run(broken, new StringWriter());
+			fail("Should have thrown IOException");
+		} catch (IOException e) {
+			assertEquals("broken", e.getMessage());
+		}
+	}
+
+	//a failure should be reported even while the read stage is still blocked waiting for input
+	@Test(timeout = 5000)
+	public void testFailureWhileReading() throws IOException {
+		ExpressionPipeline pipeline = new ExpressionPipeline(Assignment::simplify, Assignment::tree2prefix);
+		try (PipedWriter writer = new PipedWriter(); PipedReader reader = new PipedReader(writer)) {
+			writer.write("+ 1\n");
+			writer.flush();
+			try {
+				pipeline.run(reader, new StringWriter());
+				fail("Should have thrown IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+				//success
+			}
+		}
+	}
+}
@@ -0,0 +1,173 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+
+public class TestExpressionProcessor {
+
+	//a whole pipeline should give the same results as calling the methods directly, in order
+	@Test(timeout = 5000)
+	public void testPipeline() throws InterruptedException {
+		Random random = new Random(1911);
+		ArrayList<String> expressions = new ArrayList<>();
+		ArrayList<String> expected = new ArrayList<>();
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("x", 3);
+		for (int i = 0; i < 2000; i++) {
+			String expression = RandomExpressions.randomExpression(random, 6);
+			expressions.add(expression);
+			expected.add(Assignment.tree2infix(
+					Assignment.simplifyFancy(Assignment.substitute(Assignment.prefix2tree(expression), map))));
+		}
+
+		SubmissionPublisher<String> source = new SubmissionPublisher<>();
+		ExpressionProcessor<String, LinkedBinaryTree<String>> parse = ExpressionProcessor.parse();
+		ExpressionProcessor<LinkedBinaryTree<String>, LinkedBinaryTree<String>> substitute = ExpressionProcessor
+				.substitute(map);
+		ExpressionProcessor<LinkedBinaryTree<String>, LinkedBinaryTree<String>> simplify = ExpressionProcessor
+				.simplifyFancy();
+		ExpressionProcessor<LinkedBinaryTree<String>, String> render = ExpressionProcessor.tree2infix();
+		Collector collector = new Collector(Long.MAX_VALUE);
+		source.subscribe(parse);
+		parse.subscribe(substitute);
+		substitute.subscribe(simplify);
+		simplify.subscribe(render);
+		render.subscribe(collector);
+
+		expressions.forEach(source::submit);
+		source.close();
+		collector.done.await();
+		assertNull(collector.error);
+		assertEquals(expected, collector.items);
+	}
+
+	//an invalid expression should end the stream with an error
+	@Test(timeout = 5000)
+	public void testError() throws InterruptedException {
+		SubmissionPublisher<String> source = new SubmissionPublisher<>();
+		ExpressionProcessor<String, LinkedBinaryTree<String>> parse = ExpressionProcessor.parse();
+		ExpressionProcessor<LinkedBinaryTree<String>, String> render = ExpressionProcessor.tree2prefix();
+		Collector collector = new Collector(Long.MAX_VALUE);
+		source.subscribe(parse);
+		parse.subscribe(render);
+		render.subscribe(collector);
+
+		source.submit("+ 1 2");
+		source.submit("+ 1");
+		source.submit("+ 3 4");
+		source.close();
+		collector.done.await();
+		assertTrue(collector.error instanceof IllegalArgumentException);
+		//the first result may or may not have been delivered before the error
+		assertFalse(collector.items.contains("+ 3 4"));
+	}
+
+	//while nothing is taken from the end of the pipeline, only a bounded number of items should be processed
+	@Test(timeout = 5000)
+	public void testBackpressure() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		AtomicInteger processed = new AtomicInteger();
+		SubmissionPublisher<String> source = new SubmissionPublisher<>(executor, 16);
+		ExpressionProcessor<String, String> stage = new ExpressionProcessor<>(expression -> {
+			processed.incrementAndGet();
+			return expression;
+		}, executor, 16);
+		Collector collector = new Collector(0);
+		source.subscribe(stage);
+		stage.subscribe(collector);
+
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < 1000; i++) {
+				source.submit(Integer.toString(i));
+			}
+			source.close();
+		});
+		producer.start();
+		Thread.sleep(300);
+		//one batch in the stage's buffer, one being processed, and one blocked on submit
+		assertTrue(processed.get() + " processed", processed.get() <= 3 * 16);
+		assertTrue(producer.isAlive());
+
+		collector.subscription.request(Long.MAX_VALUE);
+		collector.done.await();
+		assertEquals(1000, collector.items.size());
+		assertEquals("999", collector.items.get(999));
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test(timeout = 100)
+	public void testInvalidArguments() {
+		Executor executor = Runnable::run;
+		try {
+			new ExpressionProcessor<String, String>(null, executor, 1);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+		try {
+			new ExpressionProcessor<String, String>(s -> s, executor, 0);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+		try {
+			ExpressionProcessor.substitute(null);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+	}
+
+	//a subscriber which keeps every item it receives, initially requesting a given number
+	private static final class Collector implements Flow.Subscriber<String> {
+		private final List<String> items = Collections.synchronizedList(new ArrayList<>());
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final long initial;
+		private volatile Flow.Subscription subscription;
+		private volatile Throwable error;
+
+		private Collector(long initial) {
+			this.initial = initial;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (initial > 0) {
+				subscription.request(initial);
+			}
+		}
+
+		@Override
+		public void onNext(String item) {
+			items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+			done.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			done.countDown();
+		}
+	}
+}
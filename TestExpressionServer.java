@@ -0,0 +1,145 @@
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestExpressionServer {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	//starting a server binds a socket, so these get longer than the usual timeout
+	@Test(timeout = 1000)
+	public void testRespond() throws IOException {
+		try (ExpressionServer server = ExpressionServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+			assertEquals("OK + x 1", server.respond("PARSE + x 1"));
+			assertEquals("OK + x 5", server.respond("SIMPLIFY + x + 2 3"));
+			assertEquals("OK x", server.respond("SIMPLIFYFANCY * 1 + x 0"));
+			assertEquals("OK + 3 y", server.respond("SUBSTITUTE x=3,z=4 + x y"));
+			assertEquals("OK ((x*2)-y)", server.respond("INFIX - * x 2 y"));
+			assertEquals("OK -11", server.respond("EVALUATE x=-3,y=5 - * x 2 y"));
+			assertEquals("OK 6", server.respond("EVALUATE - * 3 2"));
+			assertEquals(6, server.cached());
+
+			//the same expression text is only parsed once
+			server.respond("INFIX + x 1");
+			assertEquals(6, server.cached());
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void testErrors() throws IOException {
+		try (ExpressionServer server = ExpressionServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+			assertTrue(server.respond("PARSE + x").startsWith("ERR "));
+			assertTrue(server.respond("PARSE").startsWith("ERR "));
+			assertTrue(server.respond("DIVIDE 1 2").startsWith("ERR "));
+			assertTrue(server.respond("EVALUATE x=a x").startsWith("ERR "));
+			assertTrue(server.respond("EVALUATE y=1 x").startsWith("ERR "));
+			assertTrue(server.respond("SUBSTITUTE x=1").startsWith("ERR "));
+			assertEquals(1, server.cached());
+		}
+	}
+
+	//the cache is limited by the characters of expression text it holds
+	@Test(timeout = 1000)
+	public void testCacheLimit() throws IOException {
+		try (ExpressionServer server = ExpressionServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				100, 12)) {
+			server.respond("PARSE + x 1");
+			server.respond("PARSE + x 2");
+			assertEquals(2, server.cached());
+			assertEquals(10, server.cachedChars());
+			server.respond("PARSE + x 3");
+			assertEquals(2, server.cached());
+			assertEquals(10, server.cachedChars());
+			//too long to be cached at all
+			assertEquals("OK + x * y 22222", server.respond("PARSE + x * y 22222"));
+			assertEquals(2, server.cached());
+		}
+	}
+
+	//a line which is too long gets ERR, and the connection carries on
+	@Test(timeout = 5000)
+	public void testLongLine() throws IOException {
+		try (ExpressionServer server = ExpressionServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				100, ExpressionServer.CACHE_CHARS);
+				SocketChannel channel = SocketChannel.open(server.address())) {
+			StringBuilder requests = new StringBuilder("PARSE +");
+			for (int i = 0; i < 10000; i++) {
+				requests.append(" x");
+			}
+			requests.append("\r\nPARSE + x 1\r\nQUIT\n");
+			ByteBuffer buffer = StandardCharsets.UTF_8.encode(requests.toString());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+			assertTrue(in.readLine().startsWith("ERR "));
+			assertEquals("OK + x 1", in.readLine());
+			assertEquals("OK", in.readLine());
+			assertNull(in.readLine());
+		}
+	}
+
+	//a pipelined batch of requests over TCP should be answered in order
+	@Test(timeout = 5000)
+	public void testPipelinedTcp() throws IOException {
+		try (ExpressionServer server = ExpressionServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+			checkPipelined(server.address(), SocketChannel.open(server.address()));
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testPipelinedUnixDomain() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("expressions.sock");
+		try (ExpressionServer server = ExpressionServer.start(UnixDomainSocketAddress.of(path))) {
+			assertTrue(Files.exists(path));
+			SocketChannel client = SocketChannel.open(StandardProtocolFamily.UNIX);
+			client.connect(server.address());
+			checkPipelined(server.address(), client);
+		}
+		assertFalse(Files.exists(path));
+	}
+
+	//helper method to send many requests in one write, then check every reply
+	private static void checkPipelined(SocketAddress address, SocketChannel client) throws IOException {
+		try (SocketChannel channel = client) {
+			StringBuilder requests = new StringBuilder();
+			for (int i = 0; i < 200; i++) {
+				requests.append("EVALUATE x=").append(i).append(" + x * x 2\n");
+				requests.append("PARSE + x\n");
+			}
+			requests.append("QUIT\n");
+			ByteBuffer buffer = StandardCharsets.UTF_8.encode(requests.toString());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+			for (int i = 0; i < 200; i++) {
+				assertEquals("OK " + (i + i * 2), in.readLine());
+				assertTrue(in.readLine().startsWith("ERR "));
+			}
+			assertEquals("OK", in.readLine());
+			assertNull(in.readLine());
+		}
+	}
+}
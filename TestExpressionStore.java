@@ -0,0 +1,160 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestExpressionStore {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	//these tests write to disk, so they get longer than the usual timeout
+	@Test(timeout = 2000)
+	public void testAppendAndGet() throws IOException {
+		String[] expressions = { "x", "- 2147483647 -2147483648", "* - 1 + b 3 d", "+ a * 9000 - c 2123SASD" };
+		try (ExpressionStore store = ExpressionStore.open(folder.getRoot().toPath())) {
+			for (int i = 0; i < expressions.length; i++) {
+				assertEquals(i, store.append(Assignment.prefix2tree(expressions[i])));
+			}
+			assertEquals(expressions.length, store.size());
+			for (int i = expressions.length - 1; i >= 0; i--) {
+				assertEquals(expressions[i], Assignment.tree2prefix(store.get(i)));
+			}
+		}
+	}
+
+	@Test(timeout = 2000)
+	public void testReopen() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (ExpressionStore store = ExpressionStore.open(directory)) {
+			//enough to make the index grow
+			for (int i = 0; i < 1500; i++) {
+				store.append(Assignment.prefix2tree("+ x " + i));
+			}
+		}
+		try (ExpressionStore store = ExpressionStore.open(directory)) {
+			assertEquals(1500, store.size());
+			assertEquals("+ x 1234", Assignment.tree2prefix(store.get(1234)));
+			assertEquals(1500, store.append(Assignment.prefix2tree("y")));
+		}
+	}
+
+	@Test(timeout = 2000)
+	public void testEvaluate() throws IOException {
+		HashMap<String, Integer> bindings = new HashMap<>();
+		bindings.put("x", 5);
+		try (ExpressionStore store = ExpressionStore.open(folder.getRoot().toPath())) {
+			int id = store.append(Assignment.prefix2tree("* - x 1 + x 300"));
+			assertEquals(4 * 305, store.evaluate(id, bindings));
+		}
+	}
+
+	@Test(timeout = 2000)
+	public void testDeleteAndCompact() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (ExpressionStore store = ExpressionStore.open(directory)) {
+			for (int i = 0; i < 10; i++) {
+				store.append(Assignment.prefix2tree("- y " + i));
+			}
+			store.delete(3);
+			store.delete(9);
+			assertNull(store.get(3));
+			store.compact();
+			assertEquals(10, store.size());
+			assertNull(store.get(3));
+			assertNull(store.get(9));
+			assertEquals("- y 8", Assignment.tree2prefix(store.get(8)));
+
+			//new expressions go after the compacted ones
+			assertEquals(10, store.append(Assignment.prefix2tree("z")));
+		}
+		try (ExpressionStore store = ExpressionStore.open(directory)) {
+			assertEquals(11, store.size());
+			assertNull(store.get(9));
+			assertEquals("- y 0", Assignment.tree2prefix(store.get(0)));
+			assertEquals("z", Assignment.tree2prefix(store.get(10)));
+		}
+		//only the compacted data file is left
+		assertEquals(2, folder.getRoot().list().length);
+	}
+
+	//a record which was only partly written should be dropped when the store is opened again
+	@Test(timeout = 2000)
+	public void testRecoverFromPartialAppend() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (ExpressionStore store = ExpressionStore.open(directory)) {
+			store.append(Assignment.prefix2tree("+ a b"));
+			store.append(Assignment.prefix2tree("* c d"));
+		}
+		Path data = directory.resolve("expressions.0.dat");
+		try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 1);
+		}
+		try (ExpressionStore store = ExpressionStore.open(directory)) {
+			assertEquals(1, store.size());
+			assertEquals("+ a b", Assignment.tree2prefix(store.get(0)));
+			assertEquals(1, store.append(Assignment.prefix2tree("- e f")));
+			assertEquals("- e f", Assignment.tree2prefix(store.get(1)));
+		}
+	}
+
+	@Test(timeout = 2000)
+	public void testCorruptRecord() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (ExpressionStore store = ExpressionStore.open(directory)) {
+			store.append(Assignment.prefix2tree("+ a b"));
+			store.append(Assignment.prefix2tree("* c d"));
+		}
+		try (FileChannel channel = FileChannel.open(directory.resolve("expressions.0.dat"), StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 'z' }), 12);
+		}
+		try (ExpressionStore store = ExpressionStore.open(directory)) {
+			store.get(0);
+			fail("Should have thrown IOException");
+		} catch (IOException e) {
+			//success
+		}
+	}
+
+	@Test(timeout = 2000)
+	public void testInvalidId() throws IOException {
+		try (ExpressionStore store = ExpressionStore.open(folder.getRoot().toPath())) {
+			store.append(Assignment.prefix2tree("x"));
+			try {
+				store.get(1);
+				fail("Should have thrown IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+				//success
+			}
+			try {
+				store.delete(-1);
+				fail("Should have thrown IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+				//success
+			}
+		}
+	}
+
+	//the entries of the largest possible index still fit in a single mapped buffer, and no further ones do
+	@Test(timeout = 100)
+	public void testIndexLimit() {
+		assertEquals(16, ExpressionStore.entryOffset(0));
+		assertTrue(ExpressionStore.entryOffset(ExpressionStore.MAX_IDS) > 0);
+		for (int id : new int[] { ExpressionStore.MAX_IDS + 1, Integer.MAX_VALUE, -1 }) {
+			try {
+				ExpressionStore.entryOffset(id);
+				fail("Id " + id + " should be outside the index");
+			} catch (IllegalStateException e) {
+				//success
+			}
+		}
+	}
+}
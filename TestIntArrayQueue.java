@@ -0,0 +1,94 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import textbook.IntArrayQueue;
+
+public class TestIntArrayQueue {
+
+	@Test(timeout = 100)
+	public void testEmpty() {
+		IntArrayQueue queue = new IntArrayQueue();
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.size());
+		assertEquals("()", queue.toString());
+		try {
+			queue.first();
+			fail("An empty queue has no first value");
+		} catch (IllegalStateException e) {
+			//expected
+		}
+		queue.enqueue(7);
+		assertEquals(7, queue.dequeue());
+		try {
+			queue.dequeue();
+			fail("An empty queue has no value to dequeue");
+		} catch (IllegalStateException e) {
+			//expected
+		}
+	}
+
+	//the front moves around the array many times without it growing
+	@Test(timeout = 100)
+	public void testWraparound() {
+		IntArrayQueue queue = new IntArrayQueue(4);
+		int next = 0;
+		for (int i = 0; i < 3; i++) {
+			queue.enqueue(next++);
+		}
+		for (int i = 0; i < 100; i++) {
+			assertEquals(next - 3, queue.first());
+			assertEquals(next - 3, queue.dequeue());
+			queue.enqueue(next++);
+			assertEquals(3, queue.size());
+		}
+		assertEquals("(100, 101, 102)", queue.toString());
+	}
+
+	//growing while the values wrap past the end of the array keeps them in order
+	@Test(timeout = 100)
+	public void testGrowWhileWrapped() {
+		IntArrayQueue queue = new IntArrayQueue(4);
+		for (int i = 0; i < 4; i++) {
+			queue.enqueue(i);
+		}
+		queue.dequeue();
+		queue.dequeue();
+		for (int i = 4; i < 20; i++) {
+			queue.enqueue(i);
+		}
+		assertEquals(18, queue.size());
+		for (int i = 2; i < 20; i++) {
+			assertEquals(i, queue.dequeue());
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test(timeout = 100)
+	public void testClear() {
+		IntArrayQueue queue = new IntArrayQueue(2);
+		queue.enqueue(1);
+		queue.enqueue(2);
+		queue.dequeue();
+		queue.enqueue(3);
+		queue.clear();
+		assertTrue(queue.isEmpty());
+		assertEquals("()", queue.toString());
+		queue.enqueue(4);
+		queue.enqueue(5);
+		queue.enqueue(6);
+		assertEquals("(4, 5, 6)", queue.toString());
+	}
+
+	@Test(timeout = 100)
+	public void testCapacity() {
+		for (int capacity : new int[] { 0, -1, (1 << 30) + 1, Integer.MAX_VALUE }) {
+			try {
+				new IntArrayQueue(capacity);
+				fail("Capacity " + capacity + " should be rejected");
+			} catch (IllegalArgumentException e) {
+				assertEquals("Capacity must be between 1 and 2^30", e.getMessage());
+			}
+		}
+	}
+}
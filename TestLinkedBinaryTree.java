@@ -0,0 +1,164 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+public class TestLinkedBinaryTree {
+
+	//helper method to build the tree (a (b d e) c), returning its positions in preorder
+	private static List<Position<String>> build(LinkedBinaryTree<String> tree) {
+		List<Position<String>> p = new ArrayList<>();
+		p.add(tree.addRoot("a"));
+		p.add(tree.addLeft(p.get(0), "b"));
+		p.add(tree.addLeft(p.get(1), "d"));
+		p.add(tree.addRight(p.get(1), "e"));
+		p.add(tree.addRight(p.get(0), "c"));
+		return p;
+	}
+
+	//helper method to check that a position is no longer accepted by a tree
+	private static void assertInvalid(LinkedBinaryTree<String> tree, Position<String> p) {
+		try {
+			tree.left(p);
+			fail("Position should not be valid");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	@Test(timeout = 100)
+	public void testPruneWholeTree() {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		List<Position<String>> p = build(tree);
+		LinkedBinaryTree<String> pruned = tree.prune(p.get(0));
+		assertTrue(tree.isEmpty());
+		assertEquals(0, tree.size());
+		assertEquals(5, pruned.size());
+		assertSame(p.get(0), pruned.root());
+		assertSame(p.get(2), pruned.left(p.get(1)));
+		for (Position<String> q : p) {
+			assertInvalid(tree, q);
+		}
+	}
+
+	@Test(timeout = 100)
+	public void testPruneLeaf() {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		List<Position<String>> p = build(tree);
+		LinkedBinaryTree<String> pruned = tree.prune(p.get(3));
+		assertEquals(4, tree.size());
+		assertEquals(1, pruned.size());
+		assertNull(tree.right(p.get(1)));
+		assertNull(pruned.parent(p.get(3)));
+		assertInvalid(tree, p.get(3));
+		assertSame(p.get(2), tree.left(p.get(1)));
+		assertSame(p.get(4), tree.right(p.get(0)));
+	}
+
+	@Test(timeout = 100)
+	public void testPruneSubtree() {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		List<Position<String>> p = build(tree);
+		LinkedBinaryTree<String> pruned = tree.prune(p.get(1));
+		assertEquals(2, tree.size());
+		assertEquals(3, pruned.size());
+		assertInvalid(tree, p.get(1));
+		assertInvalid(tree, p.get(2));
+		assertInvalid(tree, p.get(3));
+		assertInvalid(pruned, p.get(0));
+		assertSame(p.get(3), pruned.right(pruned.root()));
+
+		//attached again, the positions are back in the tree
+		tree.attach(p.get(4), pruned, new LinkedBinaryTree<>());
+		assertEquals(5, tree.size());
+		assertSame(p.get(1), tree.left(p.get(4)));
+		assertSame(p.get(4), tree.parent(p.get(1)));
+		assertSame(p.get(2), tree.left(p.get(1)));
+	}
+
+	//detach doesn't count the nodes, so the sizes are only found once asked for
+	@Test(timeout = 100)
+	public void testDetachSubtree() {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		List<Position<String>> p = build(tree);
+		LinkedBinaryTree<String> detached = tree.detach(p.get(1));
+		assertNull(tree.left(p.get(0)));
+		assertInvalid(tree, p.get(1));
+		assertInvalid(tree, p.get(3));
+		assertInvalid(detached, p.get(4));
+		assertSame(p.get(1), detached.root());
+		assertSame(p.get(2), detached.left(p.get(1)));
+		assertEquals(2, tree.size());
+		assertEquals(3, detached.size());
+
+		//a subtree of unknown size grafted into the tree is counted once asked for too
+		LinkedBinaryTree<String> leaf = detached.detach(p.get(2));
+		assertEquals("c", tree.graft(p.get(4), leaf));
+		assertSame(p.get(2), tree.right(p.get(0)));
+		assertEquals(2, tree.size());
+		assertEquals(2, detached.size());
+	}
+
+	@Test(timeout = 100)
+	public void testGraftLeaf() {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		List<Position<String>> p = build(tree);
+		LinkedBinaryTree<String> t = new LinkedBinaryTree<>();
+		Position<String> x = t.addRoot("x");
+		Position<String> y = t.addLeft(x, "y");
+		assertEquals("c", tree.graft(p.get(4), t));
+		assertTrue(t.isEmpty());
+		assertEquals(6, tree.size());
+		assertSame(x, tree.right(p.get(0)));
+		assertSame(y, tree.left(x));
+		assertInvalid(tree, p.get(4));
+		assertInvalid(t, x);
+	}
+
+	@Test(timeout = 100)
+	public void testGraftInternal() {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		List<Position<String>> p = build(tree);
+		LinkedBinaryTree<String> t = new LinkedBinaryTree<>();
+		Position<String> x = t.addRoot("x");
+		assertEquals("b", tree.graft(p.get(1), t));
+		assertEquals(3, tree.size());
+		assertSame(x, tree.left(p.get(0)));
+		assertSame(p.get(0), tree.parent(x));
+		assertInvalid(tree, p.get(1));
+		assertInvalid(tree, p.get(2));
+		assertInvalid(tree, p.get(3));
+		assertSame(p.get(4), tree.right(p.get(0)));
+	}
+
+	@Test(timeout = 100)
+	public void testGraftRoot() {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		List<Position<String>> p = build(tree);
+		LinkedBinaryTree<String> t = new LinkedBinaryTree<>();
+		Position<String> x = t.addRoot("x");
+		t.addRight(x, "y");
+		assertEquals("a", tree.graft(p.get(0), t));
+		assertEquals(2, tree.size());
+		assertSame(x, tree.root());
+		for (Position<String> q : p) {
+			assertInvalid(tree, q);
+		}
+	}
+
+	@Test(timeout = 100)
+	public void testOtherTree() {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		build(tree);
+		LinkedBinaryTree<String> other = new LinkedBinaryTree<>();
+		List<Position<String>> p = build(other);
+		for (Position<String> q : p) {
+			assertInvalid(tree, q);
+		}
+	}
+}
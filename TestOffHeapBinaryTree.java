@@ -0,0 +1,78 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+public class TestOffHeapBinaryTree {
+
+	//Assignment's read-side methods should give the same results as for a LinkedBinaryTree
+	@Test(timeout = 100)
+	public void testReadSideOperations() {
+		String[] expressions = { "x", "007", "+ 1 2", "* - 1 + b 3 d", "+ + + + a b c d e", "- 9000000000 bacd",
+				"+ a * 9000 - c 2123SASD" };
+		for (String expression : expressions) {
+			LinkedBinaryTree<String> tree = Assignment.prefix2tree(expression);
+			OffHeapBinaryTree offHeap = OffHeapBinaryTree.parse(expression);
+			assertEquals(tree.size(), offHeap.size());
+			assertTrue(Assignment.isArithmeticExpression(offHeap));
+			assertEquals(Assignment.tree2prefix(tree), Assignment.tree2prefix(offHeap));
+			assertEquals(Assignment.tree2infix(tree), Assignment.tree2infix(offHeap));
+			assertTrue(Assignment.equals(tree, offHeap));
+			assertTrue(Assignment.equals(offHeap, OffHeapBinaryTree.copyOf(tree)));
+		}
+		assertFalse(Assignment.equals(OffHeapBinaryTree.parse("+ a b"), OffHeapBinaryTree.parse("+ b a")));
+	}
+
+	@Test(timeout = 100)
+	public void testPositions() {
+		OffHeapBinaryTree tree = OffHeapBinaryTree.parse("- * a b c");
+		Position<String> root = tree.root();
+		Position<String> times = tree.left(root);
+		Position<String> c = tree.right(root);
+		assertTrue(tree.isRoot(root));
+		assertFalse(tree.isRoot(times));
+		assertEquals("*", times.getElement());
+		assertEquals("c", tree.sibling(times).getElement());
+		assertEquals("*", tree.sibling(c).getElement());
+		assertEquals(times, tree.parent(tree.left(times)));
+		assertEquals(root, tree.parent(times));
+		assertNull(tree.parent(root));
+		assertEquals(2, tree.height(root));
+
+		try {
+			tree.left(Assignment.prefix2tree("a").root());
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//expected, the position belongs to another tree
+		}
+	}
+
+	//with tiny chunks, records and their children and parents are spread over many chunks
+	@Test(timeout = 1000) //longer timeout, as the expression is large
+	public void testChunks() {
+		StringBuilder prefix = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			prefix.append(i % 3 == 0 ? "* " : "+ ").append(i).append(' ');
+		}
+		prefix.append("x");
+		String expression = prefix.toString();
+		LinkedBinaryTree<String> tree = Assignment.prefix2tree(expression);
+		for (int shift = 0; shift <= 3; shift++) {
+			OffHeapBinaryTree parsed = OffHeapBinaryTree.parse(expression, shift);
+			OffHeapBinaryTree copied = OffHeapBinaryTree.copyOf(tree, shift);
+			assertEquals(tree.size(), parsed.size());
+			assertEquals(tree.size(), copied.size());
+			assertEquals(expression, Assignment.tree2prefix(parsed));
+			assertTrue(Assignment.equals(tree, copied));
+			Position<String> deepest = parsed.root();
+			while (parsed.isInternal(deepest)) {
+				deepest = parsed.right(deepest);
+			}
+			assertEquals("x", deepest.getElement());
+			assertEquals("499", parsed.sibling(deepest).getElement());
+			assertEquals(500, parsed.depth(deepest));
+		}
+	}
+}
@@ -0,0 +1,280 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import textbook.AugmentedBinaryTree;
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+public class TestParallelAssignment {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	//splitting right down to the leaves should give the same result as the sequential methods
+	@Test(timeout = 2000)
+	public void testSimplifyMatchesSequential() {
+		Random random = new Random(1905);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (int i = 0; i < 300; i++) {
+			String expression = RandomExpressions.randomExpression(random, 8);
+			for (boolean fancy : new boolean[] { false, true }) {
+				LinkedBinaryTree<String> expected = Assignment.prefix2tree(expression);
+				expected = fancy ? Assignment.simplifyFancy(expected) : Assignment.simplify(expected);
+
+				LinkedBinaryTree<String> tree = Assignment.prefix2tree(expression);
+				assertSame(tree, ParallelAssignment.simplify(tree, fancy, pool, 64, 1));
+				assertEquals(expression, Assignment.tree2prefix(expected), Assignment.tree2prefix(tree));
+				assertEquals(expected.size(), tree.size());
+
+				AugmentedBinaryTree<String> augmented = augmentedCopy(Assignment.prefix2tree(expression));
+				ParallelAssignment.simplify(augmented, fancy, pool, 64, 1);
+				assertEquals(expression, Assignment.tree2prefix(expected), Assignment.tree2prefix(augmented));
+				assertEquals(expected.size(), augmented.subtreeSize(augmented.root()));
+			}
+		}
+		pool.shutdown();
+	}
+
+	@Test(timeout = 5000)
+	public void testLargeTree() {
+		Random random = new Random(2017);
+		String expression = RandomExpressions.randomExpression(random, 18);
+		LinkedBinaryTree<String> expected = Assignment.simplifyFancy(Assignment.prefix2tree(expression));
+		LinkedBinaryTree<String> tree = ParallelAssignment.simplifyFancy(Assignment.prefix2tree(expression));
+		assertTrue(Assignment.equals(expected, tree));
+		assertEquals(expected.size(), tree.size());
+	}
+
+	//a long chain of operators, each with a subtree on one side, is split part way down the chain
+	@Test(timeout = 2000)
+	public void testSimplifySkewedTree() {
+		Random random = new Random(1909);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		StringBuilder prefix = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			prefix.append("+ ").append(RandomExpressions.randomExpression(random, 5)).append(' ');
+		}
+		prefix.append("x");
+		for (boolean fancy : new boolean[] { false, true }) {
+			LinkedBinaryTree<String> expected = Assignment.prefix2tree(prefix.toString());
+			Assignment.simplifyIteratively(expected, fancy, () -> false, Integer.MAX_VALUE);
+			LinkedBinaryTree<String> tree = Assignment.prefix2tree(prefix.toString());
+			ParallelAssignment.simplify(tree, fancy, pool, 64, 8);
+			assertTrue(Assignment.equals(expected, tree));
+			assertEquals(expected.size(), tree.size());
+		}
+		pool.shutdown();
+	}
+
+	//too deep for the recursive simplify
+	@Test(timeout = 2000)
+	public void testSimplifyDeepTree() {
+		LinkedBinaryTree<String> tree = deepTree(200000, "1");
+		//isArithmeticExpression is recursive too, so skip it
+		Assignment.markValid(tree);
+		ParallelAssignment.simplifyFancy(tree);
+		assertEquals(1, tree.size());
+		assertEquals("200001", tree.root().getElement());
+	}
+
+	@Test(timeout = 100)
+	public void testInvalidTree() {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		tree.addRoot("+");
+		try {
+			ParallelAssignment.simplify(tree);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+	}
+
+	@Test(timeout = 2000)
+	public void testSubstituteMatchesSequential() {
+		Random random = new Random(1906);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (int i = 0; i < 300; i++) {
+			String expression = RandomExpressions.randomExpression(random, 8);
+			HashMap<String, Integer> map = new HashMap<>();
+			map.put("x", random.nextInt(2000) - 1000);
+			if (random.nextBoolean()) {
+				map.put("y", random.nextInt(10));
+			}
+			LinkedBinaryTree<String> expected = Assignment.substitute(Assignment.prefix2tree(expression), map);
+
+			LinkedBinaryTree<String> tree = Assignment.prefix2tree(expression);
+			assertSame(tree, ParallelAssignment.substitute(tree, map, pool, 100, 1));
+			assertEquals(expression, Assignment.tree2prefix(expected), Assignment.tree2prefix(tree));
+			assertEquals(expected.size(), tree.size());
+
+			AugmentedBinaryTree<String> augmented = augmentedCopy(Assignment.prefix2tree(expression));
+			ParallelAssignment.substitute(augmented, map, pool, 0, 1);
+			assertEquals(expression, Assignment.tree2prefix(expected), Assignment.tree2prefix(augmented));
+		}
+		pool.shutdown();
+	}
+
+	//unlike Assignment.substitute, nothing should be substituted if a null would be
+	@Test(timeout = 100)
+	public void testSubstituteNull() {
+		LinkedBinaryTree<String> tree = Assignment.prefix2tree("+ * x 2 - y x");
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("x", 3);
+		map.put("y", null);
+		try {
+			ParallelAssignment.substitute(tree, map);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+		assertEquals("+ * x 2 - y x", Assignment.tree2prefix(tree));
+
+		//a null for a variable which isn't in the tree is ignored
+		map.put("y", 4);
+		map.put("z", null);
+		assertEquals("+ * 3 2 - 4 3", Assignment.tree2prefix(ParallelAssignment.substitute(tree, map)));
+		assertEquals("+ * 3 2 - 4 3", Assignment.tree2prefix(ParallelAssignment.substitute(tree, "x", 5)));
+
+		try {
+			ParallelAssignment.substitute(tree, null, 5);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+	}
+
+	//every way of splitting the rendering should give exactly the same text
+	@Test(timeout = 2000)
+	public void testRenderMatchesSequential() {
+		Random random = new Random(1907);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (int i = 0; i < 300; i++) {
+			LinkedBinaryTree<String> tree = Assignment.prefix2tree(RandomExpressions.randomExpression(random, 8));
+			AugmentedBinaryTree<String> augmented = augmentedCopy(tree);
+			for (boolean infix : new boolean[] { false, true }) {
+				String expected = infix ? Assignment.tree2infix(tree) : Assignment.tree2prefix(tree);
+				assertEquals(expected, String.join("", ParallelAssignment.render(tree, infix, StringBuilder::toString, pool, 100, 1)));
+				assertEquals(expected, String.join("", ParallelAssignment.render(tree, infix, StringBuilder::toString, pool, 2, 1)));
+				assertEquals(expected, String.join("", ParallelAssignment.render(augmented, infix, StringBuilder::toString, pool, 0, 4)));
+			}
+			assertEquals(Assignment.tree2prefix(tree), ParallelAssignment.tree2prefix(tree));
+			assertEquals(Assignment.tree2infix(tree), ParallelAssignment.tree2infix(tree));
+		}
+		pool.shutdown();
+	}
+
+	//FileChannel supports gathering writes, the channel of a stream doesn't
+	@Test(timeout = 5000)
+	public void testWriteToChannel() throws IOException {
+		LinkedBinaryTree<String> tree = Assignment.prefix2tree(RandomExpressions.randomExpression(new Random(1908), 18));
+		Position<String> leaf = tree.root();
+		while (tree.isInternal(leaf)) {
+			leaf = tree.left(leaf);
+		}
+		tree.set(leaf, "\u00e9");
+		byte[] prefix = Assignment.tree2prefix(tree).getBytes(StandardCharsets.UTF_8);
+		byte[] infix = Assignment.tree2infix(tree).getBytes(StandardCharsets.UTF_8);
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		assertEquals(prefix.length, ParallelAssignment.writePrefix(tree, Channels.newChannel(stream)));
+		assertArrayEquals(prefix, stream.toByteArray());
+
+		Path file = folder.newFile().toPath();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			assertEquals(infix.length, ParallelAssignment.writeInfix(tree, channel));
+		}
+		assertArrayEquals(infix, Files.readAllBytes(file));
+	}
+
+	@Test(timeout = 2000)
+	public void testEqualsMatchesSequential() {
+		Random random = new Random(42);
+		for (int i = 0; i < 300; i++) {
+			String a = RandomExpressions.randomExpression(random, 6);
+			String b = (i % 3 == 0) ? a : RandomExpressions.randomExpression(random, 6);
+			LinkedBinaryTree<String> aTree = Assignment.prefix2tree(a);
+			LinkedBinaryTree<String> bTree = Assignment.prefix2tree(b);
+			assertEquals(a + " / " + b, Assignment.equals(aTree, bTree), ParallelAssignment.equals(aTree, bTree));
+			assertEquals(PersistentExpression.of(a).hashCode(), ParallelAssignment.hash(aTree));
+			ParallelAssignment.hash(bTree);
+			assertEquals(a + " / " + b, Assignment.equals(aTree, bTree), ParallelAssignment.equals(aTree, bTree));
+		}
+	}
+
+	//a remembered hash mustn't be used once the tree has changed
+	@Test(timeout = 100)
+	public void testHashAfterModification() {
+		LinkedBinaryTree<String> a = Assignment.prefix2tree("+ x 1");
+		LinkedBinaryTree<String> b = Assignment.prefix2tree("+ y 1");
+		int before = ParallelAssignment.hash(a);
+		ParallelAssignment.hash(b);
+		assertFalse(ParallelAssignment.equals(a, b));
+
+		b.set(b.left(b.root()), "x");
+		assertEquals(before, ParallelAssignment.hash(b));
+		assertTrue(ParallelAssignment.equals(a, b));
+		assertFalse(ParallelAssignment.equals(a, Assignment.prefix2tree("+ x 2")));
+	}
+
+	//a chain this deep would overflow the stack of a recursive comparison
+	@Test(timeout = 5000)
+	public void testDeepTrees() {
+		LinkedBinaryTree<String> a = deepTree(200000, "x");
+		LinkedBinaryTree<String> b = deepTree(200000, "x");
+		assertTrue(ParallelAssignment.equals(a, b));
+		assertEquals(ParallelAssignment.hash(a), ParallelAssignment.hash(b));
+
+		LinkedBinaryTree<String> c = deepTree(200000, "y");
+		assertFalse(ParallelAssignment.equals(a, c));
+		assertNotEquals(ParallelAssignment.hash(a), ParallelAssignment.hash(c));
+	}
+
+	//helper method to make the tree of + 1 + 1 + 1 ... last, with the given number of operators
+	private static LinkedBinaryTree<String> deepTree(int operators, String last) {
+		LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
+		Position<String> p = tree.addRoot("+");
+		for (int i = 1; i < operators; i++) {
+			tree.addLeft(p, "1");
+			p = tree.addRight(p, "+");
+		}
+		tree.addLeft(p, "1");
+		tree.addRight(p, last);
+		return tree;
+	}
+
+	//helper method to copy a tree into an AugmentedBinaryTree
+	static AugmentedBinaryTree<String> augmentedCopy(LinkedBinaryTree<String> tree) {
+		AugmentedBinaryTree<String> copy = new AugmentedBinaryTree<>();
+		ArrayList<Position<String>> positions = new ArrayList<>();
+		ArrayList<Position<String>> copies = new ArrayList<>();
+		positions.add(tree.root());
+		copies.add(copy.addRoot(tree.root().getElement()));
+		while (!positions.isEmpty()) {
+			Position<String> p = positions.remove(positions.size() - 1);
+			Position<String> c = copies.remove(copies.size() - 1);
+			if (tree.isInternal(p)) {
+				positions.add(tree.left(p));
+				copies.add(copy.addLeft(c, tree.left(p).getElement()));
+				positions.add(tree.right(p));
+				copies.add(copy.addRight(c, tree.right(p).getElement()));
+			}
+		}
+		return copy;
+	}
+}
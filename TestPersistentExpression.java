@@ -0,0 +1,111 @@
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+
+public class TestPersistentExpression {
+
+	@Test(timeout = 100)
+	public void testParseAndOutput() {
+		String[] expressions = { "x", "", "+ 1 2", "* - 1 + b 3 d", "+  a", "+ a b extra", "- 007 -2147483648" };
+		for (String expression : expressions) {
+			PersistentExpression tree = PersistentExpression.of(expression);
+			LinkedBinaryTree<String> expected = Assignment.prefix2tree(expression);
+			assertEquals(expected.size(), tree.size());
+			assertEquals(Assignment.tree2prefix(expected), tree.toPrefix());
+			assertEquals(Assignment.tree2infix(expected), tree.toInfix());
+			assertTrue(Assignment.equals(expected, tree.toTree()));
+			assertEquals(tree, PersistentExpression.fromTree(expected));
+		}
+	}
+
+	@Test(timeout = 100)
+	public void testSetSharesSubtrees() {
+		PersistentExpression tree = PersistentExpression.of("+ * a b - c d");
+		PersistentExpression changed = tree.set("RL", "e");
+		assertEquals("+ * a b - e d", changed.toPrefix());
+		assertEquals("+ * a b - c d", tree.toPrefix());
+		assertSame(tree.left(), changed.left());
+		assertSame(tree.get("RR"), changed.get("RR"));
+
+		assertEquals("* * a b - c d", tree.set("", "*").toPrefix());
+		assertEquals("+ x - c d", tree.replace("L", PersistentExpression.leaf("x")).toPrefix());
+	}
+
+	@Test(timeout = 100)
+	public void testInvalidUpdates() {
+		PersistentExpression tree = PersistentExpression.of("+ a b");
+		String[][] updates = { { "L", "+" }, { "", "a" }, { "LL", "c" }, { "X", "c" }, { null, "c" }, { "R", null } };
+		for (String[] update : updates) {
+			try {
+				tree.set(update[0], update[1]);
+				fail("Should have thrown IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+				//success
+			}
+		}
+	}
+
+	@Test(timeout = 100)
+	public void testSubstitute() {
+		PersistentExpression tree = PersistentExpression.of("+ * x y - z x");
+		PersistentExpression substituted = tree.substitute("x", 4);
+		assertEquals("+ * 4 y - z 4", substituted.toPrefix());
+		assertSame(tree, tree.substitute("w", 4));
+
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("y", 2);
+		substituted = tree.substitute(map);
+		assertEquals("+ * x 2 - z x", substituted.toPrefix());
+		assertSame(tree.right(), substituted.right());
+
+		map.put("z", null);
+		try {
+			tree.substitute(map);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+	}
+
+	//simplifying should give the same result as the destructive methods of Assignment
+	@Test(timeout = 1000)
+	public void testSimplifyMatchesAssignment() {
+		Random random = new Random(1914);
+		String[] leaves = { "0", "1", "2", "x", "y" };
+		for (int i = 0; i < 500; i++) {
+			String expression = RandomExpressions.randomExpression(random, leaves, 5, 3);
+			PersistentExpression tree = PersistentExpression.of(expression);
+			assertEquals(expression, Assignment.tree2prefix(Assignment.simplify(Assignment.prefix2tree(expression))),
+					tree.simplify().toPrefix());
+			assertEquals(expression,
+					Assignment.tree2prefix(Assignment.simplifyFancy(Assignment.prefix2tree(expression))),
+					tree.simplifyFancy().toPrefix());
+			assertEquals(expression, tree.toPrefix());
+		}
+	}
+
+	@Test(timeout = 100)
+	public void testEvaluate() {
+		HashMap<String, Integer> bindings = new HashMap<>();
+		bindings.put("x", 3);
+		assertEquals(3 * 4 - 3, PersistentExpression.of("- * x + 1 3 x").evaluate(bindings));
+	}
+
+	//a deep tree shouldn't overflow the stack
+	@Test(timeout = 1000)
+	public void testDeepTree() {
+		PersistentExpression tree = PersistentExpression.leaf("1");
+		for (int i = 0; i < 100000; i++) {
+			tree = PersistentExpression.node("+", PersistentExpression.leaf("x"), tree);
+		}
+		PersistentExpression simplified = tree.substitute("x", 1).simplify();
+		assertEquals("100001", simplified.toPrefix());
+		assertTrue(tree.equals(tree.substitute("y", 0)));
+		assertEquals(200001, tree.toTree().size());
+	}
+}
@@ -0,0 +1,101 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+import textbook.PooledBinaryTree;
+import textbook.Position;
+
+public class TestPooledBinaryTree {
+
+	@Test(timeout = 100)
+	public void testReuse() {
+		PooledBinaryTree<String> tree = new PooledBinaryTree<>();
+		Position<String> root = tree.addRoot("+");
+		Position<String> x = tree.addLeft(root, "x");
+		assertEquals("x", tree.remove(x));
+		assertEquals(1, tree.pooled());
+		Position<String> y = tree.addRight(root, "y");
+		assertEquals(0, tree.pooled());
+		assertEquals("y", y.getElement());
+		assertSame(y, tree.right(root));
+		assertSame(root, tree.parent(y));
+		assertSame(root, tree.root());
+		assertNull(tree.left(root));
+		assertEquals(2, tree.size());
+	}
+
+	@Test(timeout = 100)
+	public void testCapacity() {
+		PooledBinaryTree<Integer> tree = new PooledBinaryTree<>(2);
+		Position<Integer> p = tree.addRoot(0);
+		for (int i = 1; i <= 4; i++) {
+			p = tree.addLeft(p, i);
+		}
+		for (int i = 4; i >= 1; i--) {
+			p = tree.parent(p);
+			tree.remove(tree.left(p));
+		}
+		assertEquals(2, tree.pooled());
+		tree.addLeft(p, 5);
+		assertEquals(1, tree.pooled());
+		tree.clearPool();
+		assertEquals(0, tree.pooled());
+
+		PooledBinaryTree<Integer> none = new PooledBinaryTree<>(0);
+		none.remove(none.addLeft(none.addRoot(0), 1));
+		assertEquals(0, none.pooled());
+		assertEquals(2, none.addLeft(none.root(), 2).getElement().intValue());
+	}
+
+	@Test(timeout = 100)
+	public void testStalePosition() {
+		PooledBinaryTree<String> tree = new PooledBinaryTree<>();
+		Position<String> root = tree.addRoot("+");
+		Position<String> x = tree.addLeft(root, "x");
+		tree.remove(x);
+		Position<String> y = tree.addLeft(root, "y");
+		assertNotSame(x, y);
+		try {
+			tree.left(x);
+			fail("A removed position should not be valid once its node is reused");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		try {
+			x.getElement();
+			fail("A removed position should not hold the new element");
+		} catch (IllegalStateException e) {
+			//expected
+		}
+		assertEquals("y", tree.set(y, "z"));
+		assertEquals("z", y.getElement());
+	}
+
+	@Test(timeout = 100)
+	public void testGraft() {
+		PooledBinaryTree<String> tree = new PooledBinaryTree<>();
+		Position<String> root = tree.addRoot("+");
+		Position<String> x = tree.addLeft(root, "*");
+		Position<String> below = tree.addLeft(x, "2");
+		PooledBinaryTree<String> t = new PooledBinaryTree<>();
+		Position<String> y = t.addRoot("y");
+		assertEquals("*", tree.graft(x, t));
+		assertEquals(0, tree.pooled());
+		assertSame(y, tree.left(root));
+		try {
+			tree.parent(below);
+			fail("A position below a grafted node should not be valid");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		LinkedBinaryTree<String> plain = new LinkedBinaryTree<>();
+		plain.addRoot("p");
+		try {
+			tree.graft(y, plain);
+			fail("A tree of plain nodes should be rejected");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+}
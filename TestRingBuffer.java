@@ -0,0 +1,76 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestRingBuffer {
+
+	@Test(timeout = 100)
+	public void testSingleThread() {
+		RingBuffer<Integer> queue = new RingBuffer<>(3);
+		assertEquals(4, queue.capacity());
+		assertNull(queue.poll());
+		//go round the array several times
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 4; i++) {
+				assertTrue(queue.offer(round * 4 + i));
+			}
+			assertFalse(queue.offer(-1));
+			assertEquals(4, queue.size());
+			for (int i = 0; i < 4; i++) {
+				assertEquals(Integer.valueOf(round * 4 + i), queue.poll());
+			}
+			assertNull(queue.poll());
+			assertEquals(0, queue.size());
+		}
+		assertFalse(queue.isDrained());
+		queue.offer(1);
+		queue.close();
+		assertFalse(queue.isDrained());
+		queue.poll();
+		assertTrue(queue.isDrained());
+	}
+
+	@Test(timeout = 100)
+	public void testInvalid() {
+		try {
+			new RingBuffer<String>(0);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+		try {
+			new RingBuffer<String>(1).offer(null);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+	}
+
+	//every item should arrive exactly once, in order, when passed between two threads
+	@Test(timeout = 5000)
+	public void testTwoThreads() throws InterruptedException {
+		RingBuffer<Integer> queue = new RingBuffer<>(64);
+		int count = 1_000_000;
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < count; i++) {
+				while (!queue.offer(i)) {
+					Thread.yield();
+				}
+			}
+			queue.close();
+		});
+		producer.start();
+		int expected = 0;
+		while (!queue.isDrained()) {
+			Integer item = queue.poll();
+			if (item != null) {
+				assertEquals(expected++, item.intValue());
+			}
+			else {
+				Thread.yield();
+			}
+		}
+		assertEquals(count, expected);
+		producer.join();
+	}
+}
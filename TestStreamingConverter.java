@@ -0,0 +1,61 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestStreamingConverter {
+
+	@Test(timeout = 100)
+	public void testPrefix2infix() throws IOException {
+		assertEquals("1", StreamingConverter.prefix2infix("1"));
+		assertEquals("(1+2)", StreamingConverter.prefix2infix("+ 1 2"));
+		assertEquals("((1-(b+3))*d)", StreamingConverter.prefix2infix("* - 1 + b 3 d"));
+		assertEquals("((((a+b)+c)+d)+e)", StreamingConverter.prefix2infix("+ + + + a b c d e"));
+
+		StringBuilder out = new StringBuilder();
+		StreamingConverter.prefix2infix(new StringReader("+ a * b - c d"), out);
+		assertEquals("(a+(b*(c-d)))", out.toString());
+	}
+
+	@Test(timeout = 100)
+	public void testPrefix2minimalInfix() {
+		assertEquals("x", StreamingConverter.prefix2minimalInfix("x"));
+		assertEquals("2+15-4", StreamingConverter.prefix2minimalInfix("- + 2 15 4"));
+		assertEquals("2-(15+4)", StreamingConverter.prefix2minimalInfix("- 2 + 15 4"));
+		assertEquals("(1-(b+3))*d", StreamingConverter.prefix2minimalInfix("* - 1 + b 3 d"));
+		assertEquals("a+b*(c-d)", StreamingConverter.prefix2minimalInfix("+ a * b - c d"));
+		assertEquals("a*b+c*d", StreamingConverter.prefix2minimalInfix("+ * a b * c d"));
+		assertEquals("a*(b*c)", StreamingConverter.prefix2minimalInfix("* a * b c"));
+	}
+
+	@Test(timeout = 100)
+	public void testPrefix2postfix() {
+		assertEquals("x", StreamingConverter.prefix2postfix("x"));
+		assertEquals("2 15 + 4 -", StreamingConverter.prefix2postfix("- + 2 15 4"));
+		assertEquals("a b c d - * +", StreamingConverter.prefix2postfix("+ a * b - c d"));
+	}
+
+	//the infix output should always match tree2infix, so compare against the tree on lots of random expressions
+	@Test(timeout = 5000)
+	public void testMatchesTree2infix() {
+		Random random = new Random(1905);
+		String[] leaves = { "0", "1", "x", "-y", "+z" };
+		for (int i = 0; i < 2000; i++) {
+			String s = RandomExpressions.randomExpression(random, leaves, 1 + random.nextInt(6), 3);
+			assertEquals(s, Assignment.tree2infix(Assignment.prefix2tree(s)), StreamingConverter.prefix2infix(s));
+		}
+	}
+
+	@Test(timeout = 100)
+	public void testInvalidExpression() {
+		try {
+			StreamingConverter.prefix2postfix("+ 5 - 4");
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//expected, the expression is incomplete
+		}
+	}
+}
@@ -0,0 +1,93 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+
+public class TestStreamingEvaluator {
+
+	@Test(timeout = 100)
+	public void testEvaluate() throws IOException {
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("x", 1);
+		map.put("y", 4);
+
+		assertEquals(7, StreamingEvaluator.evaluate("7", map));
+		assertEquals(17, StreamingEvaluator.evaluate("+ 2 15", map));
+		assertEquals(13, StreamingEvaluator.evaluate("- + 2 15 4", map));
+		assertEquals(9, StreamingEvaluator.evaluate("+ x * 2 y", map));
+		assertEquals(-766, StreamingEvaluator.evaluate("+ - 0 1000 * 234 1", map));
+		assertEquals(96059601, StreamingEvaluator.evaluate("+ 0 * * * 99 99 99 99", map));
+		assertEquals(12, StreamingEvaluator.evaluate(new StringReader("+ 0002 + 4 6"), map));
+		assertEquals(9, StreamingEvaluator.evaluate(new StringReader("+ x * 2 y"), map));
+	}
+
+	//evaluating should give the same answer as substitute followed by simplify
+	@Test(timeout = 1000)
+	public void testMatchesSubstituteAndSimplify() {
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("a", 10);
+		map.put("b", -3);
+		map.put("c", 8);
+		String[] expressions = { "- a + b * a c", "* * a a * a a", "+ + + + + + a a b b c c 2", "- -1 +1", "* 1000000 1000000" };
+		for (String expression : expressions) {
+			LinkedBinaryTree<String> tree = Assignment.prefix2tree(expression);
+			tree = Assignment.simplify(Assignment.substitute(tree, map));
+			assertEquals(Integer.parseInt(tree.root().getElement()), StreamingEvaluator.evaluate(expression, map));
+		}
+	}
+
+	//the same strings should be accepted as prefix2tree accepts, including the odd ones
+	@Test(timeout = 1000)
+	public void testAcceptsSameAsPrefix2tree() {
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("", 5);
+		String[] expressions = { "", " ", "+", "+ 1", "+ 1 ", "+ 1 2", "+ 1 2 3", "+ 1  2", "+  1 2", " + 1 2", "+ 1 2  ",
+				"+ 1 2 +", "+ 1 - 4 3", "+ 5 - 4" };
+		for (String expression : expressions) {
+			boolean treeAccepted;
+			try {
+				Assignment.prefix2tree(expression);
+				treeAccepted = true;
+			} catch (IllegalArgumentException e) {
+				treeAccepted = false;
+			}
+			boolean evaluatorAccepted;
+			try {
+				StreamingEvaluator.evaluate(expression, map);
+				evaluatorAccepted = true;
+			} catch (IllegalArgumentException e) {
+				evaluatorAccepted = false;
+			}
+			assertEquals("\"" + expression + "\"", treeAccepted, evaluatorAccepted);
+		}
+	}
+
+	@Test(timeout = 100)
+	public void testBadBindings() {
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("a", null);
+		try {
+			StreamingEvaluator.evaluate("+ a 1", map);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//expected, a is bound to null
+		}
+		try {
+			StreamingEvaluator.evaluate("+ b 1", map);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//expected, b has no value
+		}
+		try {
+			StreamingEvaluator.evaluate("+ 1 1", null);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//expected, no bindings
+		}
+	}
+}
@@ -0,0 +1,59 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestStreamingSimplifier {
+
+	@Test(timeout = 100)
+	public void testSimplify() {
+		assertEquals("13", StreamingSimplifier.simplify("- + 2 15 4"));
+		assertEquals("- 17 c", StreamingSimplifier.simplify("- + 2 15 c"));
+		assertEquals("- 0 c", StreamingSimplifier.simplify("- - 2 2 c"));
+		assertEquals("+ 8 * three 6", StreamingSimplifier.simplify("+ 8 * three + 2 4"));
+		assertEquals("* 1 a", StreamingSimplifier.simplify("* 1 a"));
+	}
+
+	@Test(timeout = 100)
+	public void testSimplifyFancy() throws IOException {
+		assertEquals("a", StreamingSimplifier.simplifyFancy("* 1 a"));
+		assertEquals("c", StreamingSimplifier.simplifyFancy("+ - 2 2 c"));
+		assertEquals("0", StreamingSimplifier.simplifyFancy("- * 1 c + c 0"));
+		assertEquals("- c + c 1", StreamingSimplifier.simplifyFancy("- * 1 c + c 1"));
+		assertEquals("0", StreamingSimplifier.simplifyFancy("- + a b + a b"));
+		assertEquals("- + a b + b a", StreamingSimplifier.simplifyFancy("- + a b + b a"));
+		assertEquals("-5", StreamingSimplifier.simplifyFancy("+ + -10 5 - * a 1 - a 0"));
+
+		StringWriter out = new StringWriter();
+		StreamingSimplifier.simplifyFancy(new StringReader("* * a 1 * bd + 0 0"), out);
+		assertEquals("0", out.toString());
+	}
+
+	//the output should always match simplifying a tree, so compare against the tree on lots of random expressions
+	@Test(timeout = 5000)
+	public void testMatchesTreeSimplification() {
+		Random random = new Random(1913);
+		String[] leaves = { "0", "1", "2", "-1", "x", "y", "01" };
+		for (int i = 0; i < 2000; i++) {
+			String s = RandomExpressions.randomExpression(random, leaves, 1 + random.nextInt(6), 3);
+			assertEquals(s, Assignment.tree2prefix(Assignment.simplify(Assignment.prefix2tree(s))),
+					StreamingSimplifier.simplify(s));
+			assertEquals(s, Assignment.tree2prefix(Assignment.simplifyFancy(Assignment.prefix2tree(s))),
+					StreamingSimplifier.simplifyFancy(s));
+		}
+	}
+
+	@Test(timeout = 100)
+	public void testInvalidExpression() {
+		try {
+			StreamingSimplifier.simplifyFancy("+ 5 - 4");
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//expected, the expression is incomplete
+		}
+	}
+}
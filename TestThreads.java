@@ -0,0 +1,35 @@
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class TestThreads {
+
+	//tasks which block waiting for each other must each get a thread, or they never finish
+	@Test(timeout = 1000) //longer timeout, as this starts threads
+	public void testBlockingTasks() throws Exception {
+		ExecutorService executor = Threads.newThreadPerTaskExecutor("test");
+		try {
+			CountDownLatch latch = new CountDownLatch(8);
+			Future<Boolean> first = executor.submit(() -> {
+				latch.countDown();
+				latch.await();
+				return Thread.currentThread().isDaemon();
+			});
+			for (int i = 1; i < 8; i++) {
+				executor.submit(() -> {
+					latch.countDown();
+					latch.await();
+					return null;
+				});
+			}
+			//virtual threads are always daemon threads, as are the threads of the fallback pool
+			assertTrue(first.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+
+public class TestTokenView {
+
+	@Test(timeout = 100)
+	public void testParse() {
+		String[] expressions = { "x", "", "+ 1 2", "* - 1 + b 3 d", "+  a", "+ a b extra", "- 007 -2147483648" };
+		for (String expression : expressions) {
+			LinkedBinaryTree<CharSequence> tree = TokenView.parse(expression);
+			LinkedBinaryTree<String> expected = Assignment.prefix2tree(expression);
+			assertEquals(expected.size(), tree.size());
+			assertEquals(Assignment.tree2prefix(expected), TokenView.toPrefix(tree));
+			assertTrue(Assignment.equals(expected, TokenView.materialise(tree)));
+		}
+	}
+
+	//leaves should be views of the original text, and operators shared Strings
+	@Test(timeout = 100)
+	public void testLeavesAreViews() {
+		LinkedBinaryTree<CharSequence> tree = TokenView.parse("+ alpha 42");
+		assertSame("+", tree.root().getElement());
+		CharSequence leaf = tree.left(tree.root()).getElement();
+		assertTrue(leaf instanceof TokenView);
+		assertEquals("alpha", leaf.toString());
+		assertEquals("lph", leaf.subSequence(1, 4).toString());
+		assertEquals("alpha".hashCode(), leaf.hashCode());
+		assertEquals(new TokenView("xx alpha", 3, 8), leaf);
+	}
+
+	@Test(timeout = 100)
+	public void testInvalid() {
+		String[] expressions = { "+ a", "+ a ", "   ", "* + 1 2" };
+		for (String expression : expressions) {
+			try {
+				TokenView.parse(expression);
+				fail("Should have thrown IllegalArgumentException for \"" + expression + "\"");
+			} catch (IllegalArgumentException e) {
+				//success
+			}
+		}
+	}
+
+	@Test(timeout = 100)
+	public void testEvaluate() {
+		HashMap<String, Integer> bindings = new HashMap<>();
+		bindings.put("x", 3);
+		bindings.put("y", -2);
+		assertEquals(3 * 4 - (-2), TokenView.evaluate(TokenView.parse("- * x + 1 3 y"), bindings));
+		assertEquals(7, TokenView.evaluate(TokenView.parse("+ +5 2"), bindings));
+
+		//a binding for a number takes priority, as it would with substitute
+		bindings.put("1", 10);
+		assertEquals(13, TokenView.evaluate(TokenView.parse("+ 1 x"), bindings));
+		bindings.put("+5", 1);
+		assertEquals(3, TokenView.evaluate(TokenView.parse("+ +5 2"), bindings));
+		assertEquals(2, TokenView.evaluate(TokenView.parse("+ 5 -3"), bindings));
+
+		try {
+			TokenView.evaluate(TokenView.parse("+ 1 z"), bindings);
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			//success
+		}
+	}
+}
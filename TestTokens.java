@@ -0,0 +1,85 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+public class TestTokens {
+
+	@Test(timeout = 100)
+	public void testIntern() {
+		String a = new String("variable");
+		String b = new String("variable");
+		assertSame(Tokens.intern(a), Tokens.intern(b));
+		assertEquals("variable", Tokens.intern(a));
+		assertSame(Tokens.intern(new String("+")), Tokens.intern("+"));
+		assertSame(Tokens.intern(new String("123456")), Tokens.intern(new String("123456")));
+		assertNull(Tokens.intern(null));
+	}
+
+	@Test(timeout = 100)
+	public void testConstant() {
+		assertSame(Tokens.constant(5), Tokens.constant(2 + 3));
+		assertSame(Tokens.constant(5), Tokens.intern(new String("5")));
+		assertSame(Tokens.constant(-128), Tokens.intern(new String("-128")));
+		assertSame(Tokens.constant(100000), Tokens.constant(100000));
+		assertEquals("-2147483648", Tokens.constant(Integer.MIN_VALUE));
+
+		//values not written the usual way are kept as they are
+		assertEquals("007", Tokens.intern(new String("007")));
+		assertEquals("-0", Tokens.intern(new String("-0")));
+		assertEquals("-", Tokens.intern(new String("-")));
+	}
+
+	//every repeated token in a parsed, simplified or substituted tree should be the same String
+	@Test(timeout = 100)
+	public void testSharedInTrees() {
+		LinkedBinaryTree<String> tree = Assignment.prefix2tree("+ * x y * x + 2 3");
+		Position<String> left = tree.left(tree.root());
+		Position<String> right = tree.right(tree.root());
+		assertSame(tree.left(left).getElement(), tree.left(right).getElement());
+
+		Assignment.simplify(tree);
+		assertSame(Tokens.constant(5), tree.right(right).getElement());
+
+		HashMap<String, Integer> map = new HashMap<>();
+		map.put("y", 5);
+		Assignment.substitute(tree, map);
+		assertSame(tree.right(left).getElement(), tree.right(right).getElement());
+	}
+
+	//threads interning equal tokens at the same time should all get the same instance
+	@Test(timeout = 1000) //longer timeout, as this starts threads
+	public void testConcurrentIntern() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String[]>> results = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				results.add(pool.submit(() -> {
+					String[] tokens = new String[1000];
+					for (int i = 0; i < tokens.length; i++) {
+						tokens[i] = Tokens.intern(new String("concurrent" + i));
+					}
+					return tokens;
+				}));
+			}
+			String[] first = results.get(0).get();
+			for (Future<String[]> result : results) {
+				String[] tokens = result.get();
+				for (int i = 0; i < tokens.length; i++) {
+					assertSame(first[i], tokens[i]);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
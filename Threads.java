@@ -0,0 +1,40 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for tasks which spend most of their time blocked (e.g. reading a
+ * socket, or waiting for the stage before them), so that each task gets a thread
+ * of its own
+ *
+ * Virtual threads are used where the running Java version has them (found by
+ * reflection, so this still compiles for older versions), and otherwise a cached
+ * pool of daemon threads, so that a task which never finishes doesn't stop the
+ * JVM from exiting.
+ */
+public class Threads {
+
+	//private constructor, this class only has static methods
+	private Threads() {
+	}
+
+	/**
+	 * Make an executor which starts a new virtual thread for each task if there
+	 * are virtual threads, or reuses idle daemon threads (starting new ones as
+	 * needed) if not
+	 *
+	 * @param name
+	 *            - the name of the daemon threads, if there are no virtual threads
+	 * @return the executor, which should be shut down once it is no longer needed
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String name) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, name);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
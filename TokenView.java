@@ -0,0 +1,403 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import textbook.BinaryTree;
+import textbook.LinkedBinaryTree;
+import textbook.Position;
+
+/**
+ * A token of an arithmetic expression which is a view of part of the original
+ * expression, rather than a copy of its characters
+ *
+ * parse builds a LinkedBinaryTree whose leaves are views, so parsing an
+ * expression allocates no Strings at all (operators are shared constants). A
+ * view only becomes a String when toString is called, e.g. by materialise,
+ * which turns the tree into an ordinary LinkedBinaryTree&lt;String&gt; for use
+ * with Assignment. toPrefix and evaluate work straight from the views.
+ *
+ * Views hold on to the whole expression they came from, and the expression must
+ * not be changed while they are in use (e.g. if it is a StringBuilder).
+ */
+public final class TokenView implements CharSequence {
+
+	private final CharSequence text;
+	private final int start;
+	private final int end;
+
+	/**
+	 * Creates a view of part of some text
+	 *
+	 * @param text
+	 *            - the text the token is part of
+	 * @param start
+	 *            - the index of the first character of the token
+	 * @param end
+	 *            - the index after the last character of the token
+	 * @throws IllegalArgumentException
+	 *             if text is null, or start and end are not a range of it
+	 */
+	public TokenView(CharSequence text, int start, int end) throws IllegalArgumentException {
+		if (text == null || start < 0 || start > end || end > text.length()) {
+			throw new IllegalArgumentException("Not a valid range of the text");
+		}
+		this.text = text;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= end - start) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+		}
+		return text.charAt(start + index);
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		if (from < 0 || from > to || to > end - start) {
+			throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", length " + (end - start));
+		}
+		return new TokenView(text, start + from, start + to);
+	}
+
+	/**
+	 * @return a new String holding the characters of the token
+	 */
+	@Override
+	public String toString() {
+		return text.subSequence(start, end).toString();
+	}
+
+	/**
+	 * @return true if o is a TokenView with the same characters
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof TokenView)) {
+			return false;
+		}
+		TokenView other = (TokenView) o;
+		if (other.length() != length()) {
+			return false;
+		}
+		for (int i = 0; i < length(); i++) {
+			if (text.charAt(start + i) != other.text.charAt(other.start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the same hash code as a String with the same characters
+	 */
+	@Override
+	public int hashCode() {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+		return hash;
+	}
+
+	/**
+	 * Convert an arithmetic expression in prefix notation to a binary tree whose
+	 * leaves are views of the expression. The same expressions are accepted as
+	 * Assignment.prefix2tree accepts, and the tree has the same structure.
+	 *
+	 * @param expression
+	 *            - an arithmetic expression in prefix notation
+	 * @return a tree representing the expression
+	 * @throws IllegalArgumentException
+	 *             if expression was not a valid expression
+	 */
+	public static LinkedBinaryTree<CharSequence> parse(CharSequence expression) throws IllegalArgumentException {
+		if (expression == null) {
+			throw new IllegalArgumentException("Expression string was null");
+		}
+
+		//as with split(" "), empty tokens at the end are dropped, unless there are no spaces at all
+		int length = expression.length();
+		int last = length;
+		while (last > 0 && expression.charAt(last - 1) == ' ') {
+			last--;
+		}
+		if (last == 0 && length > 0) {
+			throw new IllegalArgumentException("String was not a valid arithmetic expression in prefix notation");
+		}
+
+		LinkedBinaryTree<CharSequence> tree = new LinkedBinaryTree<>();
+		//operators whose children haven't both been added yet
+		ArrayList<Position<CharSequence>> pending = new ArrayList<>();
+		boolean[] hasLeft = new boolean[16];
+
+		int position = 0;
+		while (position <= last) {
+			int tokenEnd = position;
+			while (tokenEnd < last && expression.charAt(tokenEnd) != ' ') {
+				tokenEnd++;
+			}
+			CharSequence element = elementOf(expression, position, tokenEnd);
+			position = tokenEnd + 1;
+
+			Position<CharSequence> p;
+			int depth = pending.size();
+			if (tree.isEmpty()) {
+				p = tree.addRoot(element);
+			}
+			else if (hasLeft[depth - 1]) {
+				p = tree.addRight(pending.remove(depth - 1), element);
+				depth--;
+			}
+			else {
+				p = tree.addLeft(pending.get(depth - 1), element);
+				hasLeft[depth - 1] = true;
+			}
+			if (!(element instanceof TokenView)) {
+				if (depth == hasLeft.length) {
+					hasLeft = Arrays.copyOf(hasLeft, depth * 2);
+				}
+				pending.add(p);
+				hasLeft[depth] = false;
+			}
+			else if (depth == 0) {
+				return tree;
+			}
+		}
+
+		//ran out of tokens before the expression was complete
+		throw new IllegalArgumentException("String was not a valid arithmetic expression in prefix notation");
+	}
+
+	/**
+	 * Output a tree of tokens in prefix notation, the same as
+	 * Assignment.tree2prefix would give for the materialised tree, copying the
+	 * characters of each token straight into the result
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return prefix notation expression of the tree
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static String toPrefix(BinaryTree<? extends CharSequence> tree) throws IllegalArgumentException {
+		return prefixOf(tree);
+	}
+
+	/**
+	 * Evaluate a tree of tokens, substituting the given values for variables. The
+	 * result is the same as substituting the bindings into the materialised tree
+	 * and simplifying it. Numbers are read straight from the views; only variables
+	 * are turned into Strings, to look them up.
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @param bindings
+	 *            - a map of variable labels to integer values
+	 * @return the value of the expression
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression, bindings is null, or the
+	 *             expression uses a variable which is missing from (or null in)
+	 *             bindings
+	 */
+	public static int evaluate(BinaryTree<? extends CharSequence> tree, Map<String, Integer> bindings)
+			throws IllegalArgumentException {
+		if (bindings == null) {
+			throw new IllegalArgumentException("Bindings were null");
+		}
+		return valueOf(tree, bindings);
+	}
+
+	/**
+	 * Turn a tree of tokens into a tree of (canonical) Strings, so it can be used
+	 * with the methods of Assignment
+	 *
+	 * @param tree
+	 *            - a tree representing an arithmetic expression
+	 * @return a new tree with the same structure, holding each token as a String
+	 * @throws IllegalArgumentException
+	 *             if tree was not a valid expression
+	 */
+	public static LinkedBinaryTree<String> materialise(BinaryTree<? extends CharSequence> tree)
+			throws IllegalArgumentException {
+		return copyOf(tree);
+	}
+
+	//private helper method for toPrefix, for a tree of one particular kind of token
+	private static <T extends CharSequence> String prefixOf(BinaryTree<T> tree) throws IllegalArgumentException {
+		StringBuilder out = new StringBuilder();
+		ArrayList<Position<T>> stack = new ArrayList<>();
+		stack.add(validRoot(tree));
+		while (!stack.isEmpty()) {
+			Position<T> p = stack.remove(stack.size() - 1);
+			if (out.length() > 0) {
+				out.append(' ');
+			}
+			CharSequence element = checkedElement(tree, p);
+			if (element instanceof TokenView) {
+				TokenView view = (TokenView) element;
+				out.append(view.text, view.start, view.end);
+			}
+			else {
+				out.append(element);
+			}
+			if (tree.isInternal(p)) {
+				stack.add(tree.right(p));
+				stack.add(tree.left(p));
+			}
+		}
+		return out.toString();
+	}
+
+	//private helper method for evaluate, for a tree of one particular kind of token
+	private static <T extends CharSequence> int valueOf(BinaryTree<T> tree, Map<String, Integer> bindings)
+			throws IllegalArgumentException {
+		//positions still to be visited, where null marks an operator whose operands are on the value stack
+		ArrayList<Position<T>> stack = new ArrayList<>();
+		ArrayList<Position<T>> operators = new ArrayList<>();
+		int[] values = new int[16];
+		int count = 0;
+		//the keys of bindings which look like numbers (usually none), so numeric tokens are looked up in place
+		ArrayList<String> numericKeys = new ArrayList<>();
+		for (String key : bindings.keySet()) {
+			if (key != null && parseInt(key) != null) {
+				numericKeys.add(key);
+			}
+		}
+		stack.add(validRoot(tree));
+		while (!stack.isEmpty()) {
+			Position<T> p = stack.remove(stack.size() - 1);
+			if (p == null) {
+				char operator = operators.remove(operators.size() - 1).getElement().charAt(0);
+				int right = values[--count];
+				int left = values[--count];
+				values[count++] = StreamingEvaluator.apply(operator, left, right);
+				continue;
+			}
+			CharSequence element = checkedElement(tree, p);
+			if (tree.isInternal(p)) {
+				operators.add(p);
+				stack.add(null);
+				stack.add(tree.right(p));
+				stack.add(tree.left(p));
+				continue;
+			}
+			//a binding for something that looks like a number takes priority over the number (as with substitute)
+			Integer number = parseInt(element);
+			if (number != null && isKey(element, numericKeys)) {
+				number = null;
+			}
+			if (count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+			}
+			values[count++] = (number != null) ? number : StreamingEvaluator.valueOf(element.toString(), bindings);
+		}
+		return values[0];
+	}
+
+	//private helper method to check whether a token is one of some keys, without making a String of it
+	private static boolean isKey(CharSequence token, ArrayList<String> keys) {
+		for (String key : keys) {
+			if (key.contentEquals(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//private helper method for materialise, for a tree of one particular kind of token
+	private static <T extends CharSequence> LinkedBinaryTree<String> copyOf(BinaryTree<T> tree)
+			throws IllegalArgumentException {
+		LinkedBinaryTree<String> copy = new LinkedBinaryTree<>();
+		ArrayList<Position<T>> stack = new ArrayList<>();
+		ArrayList<Position<String>> copies = new ArrayList<>();
+		Position<T> root = validRoot(tree);
+		stack.add(root);
+		copies.add(copy.addRoot(Tokens.intern(checkedElement(tree, root).toString())));
+		while (!stack.isEmpty()) {
+			Position<T> p = stack.remove(stack.size() - 1);
+			Position<String> c = copies.remove(copies.size() - 1);
+			if (tree.isInternal(p)) {
+				Position<T> left = tree.left(p);
+				Position<T> right = tree.right(p);
+				stack.add(right);
+				copies.add(copy.addRight(c, Tokens.intern(checkedElement(tree, right).toString())));
+				stack.add(left);
+				copies.add(copy.addLeft(c, Tokens.intern(checkedElement(tree, left).toString())));
+			}
+		}
+		return copy;
+	}
+
+	//private helper method to make the element for a token: a shared String for an operator, otherwise a view
+	private static CharSequence elementOf(CharSequence expression, int start, int end) {
+		if (end - start == 1) {
+			switch (expression.charAt(start)) {
+			case '+':
+				return "+";
+			case '-':
+				return "-";
+			case '*':
+				return "*";
+			default:
+				break;
+			}
+		}
+		return new TokenView(expression, start, end);
+	}
+
+	//private helper method to parse a token as an int without copying it (or null if it isn't one)
+	private static Integer parseInt(CharSequence token) {
+		int length = token.length();
+		if (length == 0) {
+			return null;
+		}
+		//most leaves which aren't numbers are variables, so rule them out before paying for an exception
+		for (int i = (token.charAt(0) == '-' || token.charAt(0) == '+') ? 1 : 0; i < length; i++) {
+			char c = token.charAt(i);
+			if (c < '0' || c > '9') {
+				return null;
+			}
+		}
+		try {
+			return Integer.parseInt(token, 0, length, 10);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	//private helper method to find the root of a tree, which must not be empty
+	private static <T extends CharSequence> Position<T> validRoot(BinaryTree<T> tree) throws IllegalArgumentException {
+		if (tree == null || tree.root() == null) {
+			throw new IllegalArgumentException("Tree was not a valid arithmetic expression");
+		}
+		return tree.root();
+	}
+
+	//private helper method to check the element of a position is valid where it is in the tree
+	private static <T extends CharSequence> CharSequence checkedElement(BinaryTree<T> tree, Position<T> p)
+			throws IllegalArgumentException {
+		CharSequence element = p.getElement();
+		boolean internal = tree.isInternal(p);
+		if (element == null || isOperator(element) != internal || (internal && tree.numChildren(p) != 2)) {
+			throw new IllegalArgumentException("Tree was not a valid arithmetic expression");
+		}
+		return element;
+	}
+
+	//private helper method to test whether a token is one of the binary operators +, - or *
+	private static boolean isOperator(CharSequence token) {
+		if (token.length() != 1) {
+			return false;
+		}
+		char c = token.charAt(0);
+		return c == '+' || c == '-' || c == '*';
+	}
+}
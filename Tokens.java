@@ -0,0 +1,211 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical String instances for the tokens of arithmetic expressions, so that a
+ * token which appears many times (in one tree or across many trees) is only held
+ * on the heap once, and two canonical tokens are equal exactly when they are the
+ * same object
+ *
+ * Operators and small integer values are kept in fixed tables. Everything else
+ * (variables and larger values) is kept in a concurrent table of weak references,
+ * so a token is forgotten once no tree uses it any more.
+ *
+ * All methods are thread-safe, and threads interning tokens don't wait for each
+ * other.
+ */
+public class Tokens {
+
+	/**
+	 * The smallest value whose String is always cached by constant
+	 */
+	public static final int MIN_CACHED = -128;
+
+	/**
+	 * The largest value whose String is always cached by constant
+	 */
+	public static final int MAX_CACHED = 1023;
+
+	private static final String[] CONSTANTS = new String[MAX_CACHED - MIN_CACHED + 1];
+
+	static {
+		for (int i = 0; i < CONSTANTS.length; i++) {
+			CONSTANTS[i] = Integer.toString(MIN_CACHED + i);
+		}
+	}
+
+	// every other token, as a weak reference to itself which is both key and value
+	private static final ConcurrentHashMap<Key, TokenReference> interned = new ConcurrentHashMap<>();
+
+	// references whose tokens have been collected, to be removed from interned
+	private static final ReferenceQueue<String> collected = new ReferenceQueue<>();
+
+	//a key of the table, equal to any other key for an equal token
+	private interface Key {
+		String token();
+	}
+
+	//a key used to look up a token, which holds it strongly
+	private static final class Probe implements Key {
+		private final String token;
+
+		private Probe(String token) {
+			this.token = token;
+		}
+
+		@Override
+		public String token() {
+			return token;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof Key) && token.equals(((Key) o).token());
+		}
+
+		@Override
+		public int hashCode() {
+			return token.hashCode();
+		}
+	}
+
+	//a key stored in the table, which doesn't keep its token alive (once the token is collected,
+	//it is only equal to itself)
+	private static final class TokenReference extends WeakReference<String> implements Key {
+		private final int hash;
+
+		private TokenReference(String token) {
+			super(token, collected);
+			this.hash = token.hashCode();
+		}
+
+		@Override
+		public String token() {
+			return get();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			String token = get();
+			return (token != null) && (o instanceof Key) && token.equals(((Key) o).token());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	//private constructor, this class only has static methods
+	private Tokens() {
+	}
+
+	/**
+	 * Find the canonical instance of a token
+	 *
+	 * @param token
+	 *            - a token of an arithmetic expression
+	 * @return a String equal to token, which is the same instance every time this
+	 *         method is given an equal token (or null if token was null)
+	 */
+	public static String intern(String token) {
+		if (token == null) {
+			return null;
+		}
+		switch (token) {
+		case "+":
+			return "+";
+		case "-":
+			return "-";
+		case "*":
+			return "*";
+		default:
+			break;
+		}
+
+		//values in the usual form come from the table of constants
+		String constant = cachedConstant(token);
+		if (constant != null) {
+			return constant;
+		}
+
+		purge();
+		TokenReference found = interned.get(new Probe(token));
+		String canonical = (found == null) ? null : found.get();
+		if (canonical != null) {
+			return canonical;
+		}
+		TokenReference reference = new TokenReference(token);
+		while (true) {
+			found = interned.putIfAbsent(reference, reference);
+			if (found == null) {
+				return token;
+			}
+			canonical = found.get();
+			if (canonical != null) {
+				return canonical;
+			}
+			//the token was collected after it was found equal, so take its place
+			interned.remove(found, found);
+		}
+	}
+
+	//private helper method to remove the references to tokens which have been collected
+	private static void purge() {
+		Reference<? extends String> reference;
+		while ((reference = collected.poll()) != null) {
+			interned.remove(reference, reference);
+		}
+	}
+
+	/**
+	 * Find the canonical String for an integer value, in the same form as
+	 * Integer.toString gives
+	 *
+	 * @param value
+	 *            - an integer value
+	 * @return a String for value, which is the same instance every time this
+	 *         method (or intern) is asked for the same value
+	 */
+	public static String constant(int value) {
+		if (value >= MIN_CACHED && value <= MAX_CACHED) {
+			return CONSTANTS[value - MIN_CACHED];
+		}
+		return intern(Integer.toString(value));
+	}
+
+	//private helper method to find a token in the table of constants (or null if it isn't there)
+	private static String cachedConstant(String token) {
+		int length = token.length();
+		//the longest cached constants are "-128" and "1023"
+		if (length == 0 || length > 4) {
+			return null;
+		}
+		int i = (token.charAt(0) == '-') ? 1 : 0;
+		if (i == length) {
+			return null;
+		}
+		int value = 0;
+		for (; i < length; i++) {
+			char c = token.charAt(i);
+			if (c < '0' || c > '9') {
+				return null;
+			}
+			value = value * 10 + (c - '0');
+		}
+		if (token.charAt(0) == '-') {
+			value = -value;
+		}
+		if (value < MIN_CACHED || value > MAX_CACHED) {
+			return null;
+		}
+		//only if the token is written the usual way (e.g. not "007" or "-0")
+		String constant = CONSTANTS[value - MIN_CACHED];
+		return constant.equals(token) ? constant : null;
+	}
+}
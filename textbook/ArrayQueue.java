@@ -0,0 +1,123 @@
+package textbook;
+
+/**
+ * Realization of a FIFO queue as a growable circular array. All operations
+ * are performed in constant time (amortized, for enqueue).
+ *
+ * The capacity of the array is always a power of two, so an index wraps around
+ * with a mask rather than a division. Once the array is large enough for the
+ * queue, enqueue and dequeue allocate nothing, unlike LinkedQueue, which
+ * allocates a node for every element.
+ *
+ * @see IntArrayQueue
+ */
+public class ArrayQueue<E> implements Queue<E> {
+
+  /** Default capacity of the initial array. */
+  public static final int DEFAULT_CAPACITY = 16;
+
+  // instance variables
+  private E[] data;               // circular array used for storage
+  private int mask;               // data.length - 1
+  private int front = 0;          // index of the first element
+  private int size = 0;           // number of elements in the queue
+
+  // constructors
+  /** Constructs an initially empty queue with the default initial capacity. */
+  public ArrayQueue() { this(DEFAULT_CAPACITY); }
+
+  /**
+   * Constructs an initially empty queue with at least the given initial capacity.
+   * @param capacity  the number of elements the queue can hold before it grows
+   * @throws IllegalArgumentException if capacity is not positive, or more than 2^30
+   */
+  @SuppressWarnings({"unchecked"})
+  public ArrayQueue(int capacity) {
+    data = (E[]) new Object[powerOfTwo(capacity)];    // safe cast; compiler may give warning
+    mask = data.length - 1;
+  }
+
+  /** Returns the smallest power of two which is at least the given capacity. */
+  static int powerOfTwo(int capacity) {
+    if (capacity <= 0 || capacity > 1 << 30)
+      throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+    int length = Integer.highestOneBit(capacity);
+    return (length < capacity) ? length << 1 : length;
+  }
+
+  // methods
+  /**
+   * Returns the number of elements in the queue.
+   * @return number of elements in the queue
+   */
+  @Override
+  public int size() { return size; }
+
+  /**
+   * Tests whether the queue is empty.
+   * @return true if the queue is empty, false otherwise
+   */
+  @Override
+  public boolean isEmpty() { return size == 0; }
+
+  /**
+   * Inserts an element at the rear of the queue, doubling the capacity if it is full.
+   * @param e   the element to be inserted
+   */
+  @Override
+  public void enqueue(E e) {
+    if (size == data.length) grow();
+    data[(front + size) & mask] = e;
+    size++;
+  }
+
+  /**
+   * Returns, but does not remove, the first element of the queue.
+   * @return the first element of the queue (or null if empty)
+   */
+  @Override
+  public E first() {
+    if (isEmpty()) return null;
+    return data[front];
+  }
+
+  /**
+   * Removes and returns the first element of the queue.
+   * @return element removed (or null if empty)
+   */
+  @Override
+  public E dequeue() {
+    if (isEmpty()) return null;
+    E answer = data[front];
+    data[front] = null;                 // dereference to help garbage collection
+    front = (front + 1) & mask;
+    size--;
+    return answer;
+  }
+
+  /** Doubles the capacity of the array, moving the elements to the start of the new one. */
+  @SuppressWarnings({"unchecked"})
+  private void grow() {
+    if (data.length == 1 << 30) throw new IllegalStateException("Queue is full");
+    E[] bigger = (E[]) new Object[data.length << 1];   // safe cast; compiler may give warning
+    int firstPart = data.length - front;               // elements from front to the end of the array
+    System.arraycopy(data, front, bigger, 0, firstPart);
+    System.arraycopy(data, 0, bigger, firstPart, front);
+    data = bigger;
+    mask = data.length - 1;
+    front = 0;
+  }
+
+  /** Produces a string representation of the contents of the queue.
+   *  (from front to back). This exists for debugging purposes only.
+   */
+  public String toString() {
+    StringBuilder sb = new StringBuilder("(");
+    for (int k = 0; k < size; k++) {
+      if (k > 0) sb.append(", ");
+      sb.append(data[(front + k) & mask]);
+    }
+    sb.append(")");
+    return sb.toString();
+  }
+}
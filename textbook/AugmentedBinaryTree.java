@@ -0,0 +1,257 @@
+package textbook;
+
+/**
+ * A linked binary tree in which every node also stores the size and height of
+ * the subtree rooted at it.
+ *
+ * The stored values are updated along the path to the root by every update
+ * method, so height and subtree size queries take O(1) time, and depth takes
+ * O(depth) time without recursion. Updates take O(depth) time instead of O(1).
+ */
+public class AugmentedBinaryTree<E> extends LinkedBinaryTree<E> {
+
+  //---------------- nested AugmentedNode class ----------------
+  /** Nested static class for a node which knows the size and height of its subtree. */
+  protected static class AugmentedNode<E> extends Node<E> {
+    private int size = 1;       // number of nodes in the subtree rooted here
+    private int height = 0;     // height of the subtree rooted here
+
+    /**
+     * Constructs a node with the given element and neighbors.
+     *
+     * @param e  the element to be stored
+     * @param above       reference to a parent node
+     * @param leftChild   reference to a left child node
+     * @param rightChild  reference to a right child node
+     */
+    public AugmentedNode(E e, Node<E> above, Node<E> leftChild, Node<E> rightChild) {
+      super(e, above, leftChild, rightChild);
+    }
+
+    // accessor methods
+    public int getSize() { return size; }
+    public int getHeight() { return height; }
+
+    /** Recomputes the size and height from the (already correct) children. */
+    public void update() {
+      AugmentedNode<E> left = (AugmentedNode<E>) getLeft();
+      AugmentedNode<E> right = (AugmentedNode<E>) getRight();
+      size = 1;
+      height = 0;
+      if (left != null) {
+        size += left.size;
+        height = 1 + left.height;
+      }
+      if (right != null) {
+        size += right.size;
+        height = Math.max(height, 1 + right.height);
+      }
+    }
+  } //----------- end of nested AugmentedNode class -----------
+
+  /** Factory function to create a new node storing element e. */
+  @Override
+  protected Node<E> createNode(E e, Node<E> parent,
+                                  Node<E> left, Node<E> right) {
+    return new AugmentedNode<E>(e, parent, left, right);
+  }
+
+  // constructor
+  /** Constructs an empty binary tree. */
+  public AugmentedBinaryTree() { }
+
+  /** Factory function to create a new, empty tree of the same kind as this one. */
+  @Override
+  protected LinkedBinaryTree<E> createTree() {
+    return new AugmentedBinaryTree<E>();
+  }
+
+  // nonpublic utility
+  /**
+   * Verifies that a Position is a valid node of an augmented tree.
+   *
+   * @param p   a Position (that should belong to this tree)
+   * @return    the underlying AugmentedNode instance for the position
+   * @throws IllegalArgumentException if an invalid position is detected
+   */
+  protected AugmentedNode<E> validateAugmented(Position<E> p) throws IllegalArgumentException {
+    Node<E> node = validate(p);
+    if (!(node instanceof AugmentedNode))
+      throw new IllegalArgumentException("Not valid position type");
+    return (AugmentedNode<E>) node;
+  }
+
+  /** Returns the stored number of nodes in the subtree rooted at node. */
+  @Override
+  protected int cachedSubtreeSize(Node<E> node) {
+    return ((AugmentedNode<E>) node).getSize();
+  }
+
+  /** Computes the stored values of a copied node, once its subtrees have been copied. */
+  @Override
+  protected void subtreeCopied(Node<E> node) {
+    ((AugmentedNode<E>) node).update();
+  }
+
+  /** Recomputes the stored values of node and all of its ancestors. */
+  protected void updateAncestors(Node<E> node) {
+    while (node != null) {
+      ((AugmentedNode<E>) node).update();
+      node = node.getParent();
+    }
+  }
+
+  // accessor methods
+  /**
+   * Returns the number of nodes in the subtree rooted at Position p.
+   *
+   * @param p A valid Position within the tree
+   * @return number of nodes in the subtree rooted at p (including p)
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   */
+  public int subtreeSize(Position<E> p) throws IllegalArgumentException {
+    return validateAugmented(p).getSize();
+  }
+
+  /**
+   * Returns the height of the subtree rooted at Position p, in O(1) time.
+   *
+   * @param p A valid Position within the tree
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   */
+  @Override
+  public int height(Position<E> p) throws IllegalArgumentException {
+    return validateAugmented(p).getHeight();
+  }
+
+  /**
+   * Returns the number of levels separating Position p from the root, by
+   * following parent links (rather than recursing).
+   *
+   * @param p A valid Position within the tree
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   */
+  @Override
+  public int depth(Position<E> p) throws IllegalArgumentException {
+    Node<E> node = validate(p);
+    int d = 0;
+    while (node.getParent() != null) {
+      node = node.getParent();
+      d++;
+    }
+    return d;
+  }
+
+  // update methods
+  /**
+   * Creates a new left child of Position p storing element e and returns its Position.
+   *
+   * @param p   the Position to the left of which the new element is inserted
+   * @param e   the new element
+   * @return the Position of the new element
+   * @throws IllegalArgumentException if p is not a valid Position for this tree
+   * @throws IllegalArgumentException if p already has a left child
+   */
+  @Override
+  public Position<E> addLeft(Position<E> p, E e)
+                          throws IllegalArgumentException {
+    Position<E> child = super.addLeft(p, e);
+    updateAncestors(validate(p));
+    return child;
+  }
+
+  /**
+   * Creates a new right child of Position p storing element e and returns its Position.
+   *
+   * @param p   the Position to the right of which the new element is inserted
+   * @param e   the new element
+   * @return the Position of the new element
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   * @throws IllegalArgumentException if p already has a right child
+   */
+  @Override
+  public Position<E> addRight(Position<E> p, E e)
+                          throws IllegalArgumentException {
+    Position<E> child = super.addRight(p, e);
+    updateAncestors(validate(p));
+    return child;
+  }
+
+  /**
+   * Attaches trees t1 and t2, respectively, as the left and right subtree of the
+   * leaf Position p. As a side effect, t1 and t2 are set to empty trees.
+   *
+   * @param p   a leaf of the tree
+   * @param t1  an independent tree whose structure becomes the left child of p
+   * @param t2  an independent tree whose structure becomes the right child of p
+   * @throws IllegalArgumentException if p is not a valid Position for this tree
+   * @throws IllegalArgumentException if p is not a leaf
+   * @throws IllegalArgumentException if t1 or t2 was not built from augmented nodes
+   */
+  @Override
+  public void attach(Position<E> p, LinkedBinaryTree<E> t1,
+                    LinkedBinaryTree<E> t2) throws IllegalArgumentException {
+    if (!isAugmented(t1) || !isAugmented(t2))
+      throw new IllegalArgumentException("Attached trees must be augmented");
+    super.attach(p, t1, t2);
+    updateAncestors(validate(p));
+  }
+
+  /**
+   * Removes the node at Position p and replaces it with its child, if any.
+   *
+   * @param p   the relevant Position
+   * @return element that was removed
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   * @throws IllegalArgumentException if p has two children.
+   */
+  @Override
+  public E remove(Position<E> p) throws IllegalArgumentException {
+    Node<E> parent = validate(p).getParent();
+    E temp = super.remove(p);
+    updateAncestors(parent);
+    return temp;
+  }
+
+  /**
+   * Cuts off the whole subtree rooted at Position p, and returns it as an
+   * independent tree.
+   *
+   * @param p   the root of the subtree to cut off
+   * @return a tree whose root is p
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   */
+  @Override
+  public LinkedBinaryTree<E> prune(Position<E> p) throws IllegalArgumentException {
+    Node<E> parent = validate(p).getParent();
+    LinkedBinaryTree<E> t = super.prune(p);
+    updateAncestors(parent);
+    return t;
+  }
+
+  /**
+   * Replaces the whole subtree rooted at Position p with the structure of tree t.
+   * As a side effect, t is set to an empty tree.
+   *
+   * @param p   the root of the subtree to replace
+   * @param t   an independent, non-empty tree whose structure replaces the subtree
+   * @return element that was stored at p
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   * @throws IllegalArgumentException if t is empty, is this tree, or was not
+   *         built from augmented nodes.
+   */
+  @Override
+  public E graft(Position<E> p, LinkedBinaryTree<E> t) throws IllegalArgumentException {
+    if (!isAugmented(t))
+      throw new IllegalArgumentException("Grafted tree must be augmented");
+    Node<E> parent = validate(p).getParent();
+    E temp = super.graft(p, t);
+    updateAncestors(parent);
+    return temp;
+  }
+
+  /** Returns true if every node of tree t stores the size and height of its subtree. */
+  private static <E> boolean isAugmented(LinkedBinaryTree<E> t) {
+    return t.root == null || t.root instanceof AugmentedNode;
+  }
+} //----------- end of AugmentedBinaryTree class -----------
@@ -0,0 +1,112 @@
+package textbook;
+
+/**
+ * A FIFO queue of primitive int values (e.g. node indices, for a breadth-first
+ * traversal of an array-based tree), stored in a growable circular array just
+ * as ArrayQueue stores its elements, so that values are never boxed.
+ *
+ * This does not implement Queue, whose methods would box every value. An empty
+ * queue has no first element, so first and dequeue throw an exception rather
+ * than returning null.
+ *
+ * @see ArrayQueue
+ */
+public class IntArrayQueue {
+
+  // instance variables
+  private int[] data;             // circular array used for storage
+  private int mask;               // data.length - 1
+  private int front = 0;          // index of the first value
+  private int size = 0;           // number of values in the queue
+
+  // constructors
+  /** Constructs an initially empty queue with the default initial capacity. */
+  public IntArrayQueue() { this(ArrayQueue.DEFAULT_CAPACITY); }
+
+  /**
+   * Constructs an initially empty queue with at least the given initial capacity.
+   * @param capacity  the number of values the queue can hold before it grows
+   * @throws IllegalArgumentException if capacity is not positive, or more than 2^30
+   */
+  public IntArrayQueue(int capacity) {
+    data = new int[ArrayQueue.powerOfTwo(capacity)];
+    mask = data.length - 1;
+  }
+
+  // methods
+  /**
+   * Returns the number of values in the queue.
+   * @return number of values in the queue
+   */
+  public int size() { return size; }
+
+  /**
+   * Tests whether the queue is empty.
+   * @return true if the queue is empty, false otherwise
+   */
+  public boolean isEmpty() { return size == 0; }
+
+  /**
+   * Inserts a value at the rear of the queue, doubling the capacity if it is full.
+   * @param value   the value to be inserted
+   */
+  public void enqueue(int value) {
+    if (size == data.length) grow();
+    data[(front + size) & mask] = value;
+    size++;
+  }
+
+  /**
+   * Returns, but does not remove, the first value of the queue.
+   * @return the first value of the queue
+   * @throws IllegalStateException if the queue is empty
+   */
+  public int first() throws IllegalStateException {
+    if (isEmpty()) throw new IllegalStateException("Queue is empty");
+    return data[front];
+  }
+
+  /**
+   * Removes and returns the first value of the queue.
+   * @return value removed
+   * @throws IllegalStateException if the queue is empty
+   */
+  public int dequeue() throws IllegalStateException {
+    if (isEmpty()) throw new IllegalStateException("Queue is empty");
+    int answer = data[front];
+    front = (front + 1) & mask;
+    size--;
+    return answer;
+  }
+
+  /** Removes every value from the queue, keeping its capacity. */
+  public void clear() {
+    front = 0;
+    size = 0;
+  }
+
+  /** Doubles the capacity of the array, moving the values to the start of the new one. */
+  private void grow() {
+    if (data.length == 1 << 30) throw new IllegalStateException("Queue is full");
+    int[] bigger = new int[data.length << 1];
+    int firstPart = data.length - front;             // values from front to the end of the array
+    System.arraycopy(data, front, bigger, 0, firstPart);
+    System.arraycopy(data, 0, bigger, firstPart, front);
+    data = bigger;
+    mask = data.length - 1;
+    front = 0;
+  }
+
+  /** Produces a string representation of the contents of the queue.
+   *  (from front to back). This exists for debugging purposes only.
+   */
+  public String toString() {
+    StringBuilder sb = new StringBuilder("(");
+    for (int k = 0; k < size; k++) {
+      if (k > 0) sb.append(", ");
+      sb.append(data[(front + k) & mask]);
+    }
+    sb.append(")");
+    return sb.toString();
+  }
+}
@@ -25,6 +25,14 @@ package textbook;
 /**
  * Concrete implementation of a binary tree using a node-based, linked structure.
  *
+ * Besides its element and links, each node records the tree it was last found
+ * to be in, so that positions cut out of the tree by prune or graft are
+ * detected (see validate). For a tree which doesn't store subtree sizes, prune
+ * and graft count the nodes they cut out, so they take time proportional to the
+ * size of the subtree cut out; for a tree which does (such as
+ * AugmentedBinaryTree) they take O(1) time. detach cuts out a subtree in O(1)
+ * time on any tree, leaving the sizes to be recounted when next asked for.
+ *
  * @author Michael T. Goodrich
  * @author Roberto Tamassia
  * @author Michael H. Goldwasser
@@ -38,6 +46,8 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
     private Node<E> parent;     // a reference to the parent node (if any)
     private Node<E> left;       // a reference to the left child (if any)
     private Node<E> right;      // a reference to the right child (if any)
+    private LinkedBinaryTree<E> owner;  // the tree this node was last found to be in (if any)
+    private int verified;       // the number of cuts that tree had made when it was found
 
     /**
      * Constructs a node with the given element and neighbors.
@@ -77,19 +87,43 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
   /** The root of the binary tree */
   protected Node<E> root = null;     // root of the tree
 
-  /** The number of nodes in the binary tree */
+  /** The number of nodes in the binary tree (or -1 if it must be recounted) */
   private int size = 0;              // number of nodes in the tree
 
+  /** The number of times the binary tree has been modified */
+  private int modCount = 0;          // incremented by every update method
+
+  /** The modification count when the tree was last marked as checked */
+  private long checkedAt = Long.MIN_VALUE;  // no modification count is ever equal to the initial value
+
+  /** The number of times prune or graft has cut out nodes without visiting them */
+  private int cuts = 0;              // nodes found in the tree since the last cut are still in it
+
   // constructor
   /** Construts an empty binary tree. */
   public LinkedBinaryTree() { }      // constructs an empty binary tree
 
+  /** Factory function to create a new, empty tree of the same kind as this one. */
+  protected LinkedBinaryTree<E> createTree() {
+    return new LinkedBinaryTree<E>();
+  }
+
+  /**
+   * Called by copy on each node of the new tree, once both of its subtrees have
+   * been copied. Subclasses which store information about subtrees should
+   * override this method to compute it.
+   *
+   * @param node   a node of the new tree
+   */
+  protected void subtreeCopied(Node<E> node) { }
+
   // nonpublic utility
   /**
    * Verifies that a Position belongs to the appropriate class, and is
-   * not one that has been previously removed. Note that our current
-   * implementation does not actually verify that the position belongs
-   * to this particular list instance.
+   * not one that has been previously removed. Since prune and graft cut
+   * whole subtrees out of the tree without visiting their nodes, the first
+   * time a node is validated after a cut it is also checked to still be in
+   * this tree, by walking up towards the root (see ownedNode).
    *
    * @param p   a Position (that should belong to this tree)
    * @return    the underlying Node instance for the position
@@ -101,9 +135,113 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
     Node<E> node = (Node<E>) p;       // safe cast
     if (node.getParent() == node)     // our convention for defunct node
       throw new IllegalArgumentException("p is no longer in the tree");
+    if (node.owner != this || node.verified != cuts)
+      ownedNode(node);
     return node;
   }
 
+  /**
+   * Checks that a node not yet found in this tree since the last cut is in it,
+   * by walking up until reaching either the root or a node already found since
+   * the last cut, and records every node on the way as found. So between two
+   * cuts, each node is walked over at most once, and validate takes O(1)
+   * amortized time.
+   *
+   * @param node   a node which is not defunct
+   * @throws IllegalArgumentException if the node is not in this tree
+   */
+  private void ownedNode(Node<E> node) throws IllegalArgumentException {
+    Node<E> walk = node;
+    while (walk.owner != this || walk.verified != cuts) {
+      Node<E> above = walk.getParent();
+      if (above == walk)              // below a node removed by graft
+        throw new IllegalArgumentException("p is no longer in the tree");
+      if (above == null) {            // the top of the node's tree
+        if (walk != root)
+          throw new IllegalArgumentException("p is not in this tree");
+        break;
+      }
+      walk = above;
+    }
+    for (Node<E> found = node; found != walk; found = found.getParent()) {
+      found.owner = this;
+      found.verified = cuts;
+    }
+    walk.owner = this;
+    walk.verified = cuts;
+  }
+
+  /** Records that a new node is in this tree. */
+  private Node<E> owned(Node<E> node) {
+    node.owner = this;
+    node.verified = cuts;
+    return node;
+  }
+
+  /**
+   * Returns the number of nodes in the subtree rooted at the given node, if that
+   * is known without walking the subtree. Subclasses which store subtree sizes
+   * should override this method.
+   *
+   * @param node   a node of the tree
+   * @return the number of nodes in the subtree (or -1 if it is not known)
+   */
+  protected int cachedSubtreeSize(Node<E> node) {
+    return -1;
+  }
+
+  /**
+   * Returns the number of nodes in the subtree rooted at node, which is about
+   * to be cut out of the tree, and makes sure none of its nodes is still taken
+   * to be in the tree. If the size is stored, every node of the tree has to be
+   * found again after the cut; otherwise the nodes are counted, and forgotten
+   * as they are counted, so the rest of the tree is unaffected.
+   */
+  private int cutSize(Node<E> node) {
+    int stored = cachedSubtreeSize(node);
+    if (stored >= 0 || node == root) {
+      cuts++;
+      return (node == root ? size() : stored);
+    }
+    return countNodes(node, true);
+  }
+
+  /** Adds delta to the number of nodes (unless the number must be recounted anyway). */
+  private void adjustSize(int delta) {
+    if (size >= 0)
+      size += delta;
+  }
+
+  /**
+   * Counts the nodes in the subtree rooted at the given node, by following
+   * parent and child links (so without recursion or an auxiliary stack), and
+   * optionally forgets which tree each of them was found in.
+   */
+  private static <E> int countNodes(Node<E> top, boolean disown) {
+    int count = 0;
+    Node<E> node = top;
+    Node<E> previous = (top == null ? null : top.getParent());
+    while (node != null) {
+      Node<E> next;
+      if (previous == node.getParent()) {             // arrived from above
+        count++;
+        if (disown) node.owner = null;
+        if (node.getLeft() != null) next = node.getLeft();
+        else if (node.getRight() != null) next = node.getRight();
+        else next = node.getParent();
+      } else if (previous == node.getLeft() && node.getRight() != null) {
+        next = node.getRight();                       // finished the left subtree
+      } else {
+        next = node.getParent();                      // finished both subtrees
+      }
+      if (node == top && next == top.getParent())
+        break;
+      previous = node;
+      node = next;
+    }
+    return count;
+  }
+
   // accessor methods (not already implemented in AbstractBinaryTree)
   /**
    * Returns the number of nodes in the tree.
@@ -111,6 +249,8 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
    */
   @Override
   public int size() {
+    if (size < 0)
+      size = countNodes(root, false);
     return size;
   }
 
@@ -123,6 +263,32 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
     return root;
   }
 
+  /**
+   * Returns the number of times the tree has been modified. Every update method
+   * (including set) changes this count, so two equal counts mean the tree has not
+   * been modified in between.
+   * @return the modification count of the tree
+   */
+  public int modCount() {
+    return modCount;
+  }
+
+  /**
+   * Records that the tree, as it is now, has been checked by a client (e.g. found
+   * to have some structure), until the tree is next modified.
+   */
+  public void markChecked() {
+    checkedAt = modCount;
+  }
+
+  /**
+   * Tests whether the tree has been marked as checked since it was last modified.
+   * @return true if markChecked has been called since the last update, false otherwise
+   */
+  public boolean isChecked() {
+    return checkedAt == modCount;
+  }
+
   /**
    * Returns the Position of p's parent (or null if p is root).
    *
@@ -172,8 +338,9 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
    */
   public Position<E> addRoot(E e) throws IllegalStateException {
     if (!isEmpty()) throw new IllegalStateException("Tree is not empty");
-    root = createNode(e, null, null, null);
+    root = owned(createNode(e, null, null, null));
     size = 1;
+    modCount++;
     return root;
   }
 
@@ -191,9 +358,10 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
     Node<E> parent = validate(p);
     if (parent.getLeft() != null)
       throw new IllegalArgumentException("p already has a left child");
-    Node<E> child = createNode(e, parent, null, null);
+    Node<E> child = owned(createNode(e, parent, null, null));
     parent.setLeft(child);
-    size++;
+    adjustSize(1);
+    modCount++;
     return child;
   }
 
@@ -211,9 +379,10 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
     Node<E> parent = validate(p);
     if (parent.getRight() != null)
       throw new IllegalArgumentException("p already has a right child");
-    Node<E> child = createNode(e, parent, null, null);
+    Node<E> child = owned(createNode(e, parent, null, null));
     parent.setRight(child);
-    size++;
+    adjustSize(1);
+    modCount++;
     return child;
   }
 
@@ -229,6 +398,7 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
     Node<E> node = validate(p);
     E temp = node.getElement();
     node.setElement(e);
+    modCount++;
     return temp;
   }
 
@@ -246,18 +416,24 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
                     LinkedBinaryTree<E> t2) throws IllegalArgumentException {
     Node<E> node = validate(p);
     if (isInternal(p)) throw new IllegalArgumentException("p must be a leaf");
-    size += t1.size() + t2.size();
-    if (!t1.isEmpty()) {                  // attach t1 as left subtree of node
+    if (t1.size < 0 || t2.size < 0)
+      size = -1;                          // recount when next asked, rather than now
+    else
+      adjustSize(t1.size + t2.size);
+    modCount++;
+    if (t1.root != null) {                // attach t1 as left subtree of node
       t1.root.setParent(node);
       node.setLeft(t1.root);
       t1.root = null;
       t1.size = 0;
+      t1.modCount++;
     }
-    if (!t2.isEmpty()) {                  // attach t2 as right subtree of node
+    if (t2.root != null) {                // attach t2 as right subtree of node
       t2.root.setParent(node);
       node.setRight(t2.root);
       t2.root = null;
       t2.size = 0;
+      t2.modCount++;
     }
   }
 
@@ -285,7 +461,162 @@ public class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
       else
         parent.setRight(child);
     }
-    size--;
+    adjustSize(-1);
+    modCount++;
+    E temp = node.getElement();
+    node.setElement(null);                // help garbage collection
+    node.setLeft(null);
+    node.setRight(null);
+    node.setParent(node);                 // our convention for defunct node
+    return temp;
+  }
+
+  /**
+   * Returns a copy of the tree, of the same kind as this one, with the same
+   * structure and the same element objects (elements are shared, not copied).
+   * The copy is made in a single pass, following parent and child links, so it
+   * takes O(n) time and no auxiliary stack, however deep the tree is.
+   *
+   * @return an independent tree with the same structure and elements
+   */
+  public LinkedBinaryTree<E> copy() {
+    LinkedBinaryTree<E> t = createTree();
+    if (root == null)
+      return t;
+    t.root = t.createNode(root.getElement(), null, null, null);
+    Node<E> node = root;
+    Node<E> previous = null;
+    Node<E> copy = t.root;                // the node of t corresponding to node
+    while (node != null) {
+      Node<E> next;
+      if (previous == node.getParent() && node.getLeft() != null) {
+        next = node.getLeft();                        // arrived from above
+        copy.setLeft(t.createNode(next.getElement(), copy, null, null));
+        copy = copy.getLeft();
+      } else if (previous != node.getRight() && node.getRight() != null) {
+        next = node.getRight();                       // finished the left subtree
+        copy.setRight(t.createNode(next.getElement(), copy, null, null));
+        copy = copy.getRight();
+      } else {
+        t.subtreeCopied(copy);                        // finished both subtrees
+        next = node.getParent();
+        copy = copy.getParent();
+      }
+      previous = node;
+      node = next;
+    }
+    t.size = size();
+    t.modCount++;
+    return t;
+  }
+
+  /**
+   * Cuts off the whole subtree rooted at Position p, and returns it as an
+   * independent tree. Only a constant number of links are changed, so positions
+   * within the subtree stay valid, as positions of the returned tree (and are
+   * no longer valid for this tree). If the returned tree is simply discarded,
+   * its nodes become garbage.
+   *
+   * This takes O(1) time only for a tree which stores subtree sizes. Otherwise
+   * the nodes of the subtree are counted, to keep the sizes of both trees known,
+   * so it takes time proportional to the size of the subtree.
+   *
+   * @param p   the root of the subtree to cut off
+   * @return a tree whose root is p
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   */
+  public LinkedBinaryTree<E> prune(Position<E> p) throws IllegalArgumentException {
+    Node<E> node = validate(p);
+    boolean wholeTree = (node == root);
+    int removed = cutSize(node);
+    if (wholeTree)
+      root = null;
+    else {
+      Node<E> parent = node.getParent();
+      if (node == parent.getLeft())
+        parent.setLeft(null);
+      else
+        parent.setRight(null);
+    }
+    node.setParent(null);
+    if (wholeTree)
+      size = 0;
+    else
+      adjustSize(-removed);
+    modCount++;
+    LinkedBinaryTree<E> t = createTree();
+    t.root = node;
+    t.size = removed;
+    return t;
+  }
+
+  /**
+   * Cuts off the whole subtree rooted at Position p, and returns it as an
+   * independent tree, as prune does, but always in O(1) time. For a tree which
+   * doesn't store subtree sizes, the nodes are not counted: the sizes of both
+   * trees are recounted the next time they are asked for, and positions are
+   * checked again as they are next used (see validate). So detach suits cutting
+   * a large tree into a few parts, e.g. to work on them in separate threads,
+   * while prune suits cutting off many small subtrees.
+   *
+   * @param p   the root of the subtree to cut off
+   * @return a tree whose root is p
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   */
+  public LinkedBinaryTree<E> detach(Position<E> p) throws IllegalArgumentException {
+    Node<E> node = validate(p);
+    if (node == root || cachedSubtreeSize(node) >= 0)
+      return prune(p);                    // the sizes are already known
+    cuts++;                               // nodes left in the tree have to be found again
+    Node<E> parent = node.getParent();
+    if (node == parent.getLeft())
+      parent.setLeft(null);
+    else
+      parent.setRight(null);
+    node.setParent(null);
+    size = -1;
+    modCount++;
+    LinkedBinaryTree<E> t = createTree();
+    t.root = node;
+    t.size = -1;
+    return t;
+  }
+
+  /**
+   * Replaces the whole subtree rooted at Position p with the structure of tree
+   * t, in O(1) time for a tree which stores subtree sizes (otherwise the nodes
+   * of the replaced subtree are counted, in time proportional to its size). As a
+   * side effect, t is set to an empty tree. Position p becomes defunct, and so do positions below p, which are
+   * detected as invalid (by validate) the next time they are used.
+   *
+   * @param p   the root of the subtree to replace
+   * @param t   an independent, non-empty tree whose structure replaces the subtree
+   * @return element that was stored at p
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   * @throws IllegalArgumentException if t is empty or is this tree.
+   */
+  public E graft(Position<E> p, LinkedBinaryTree<E> t) throws IllegalArgumentException {
+    Node<E> node = validate(p);
+    if (t == this) throw new IllegalArgumentException("Can't graft a tree onto itself");
+    if (t.root == null) throw new IllegalArgumentException("t must not be empty");
+    int removed = cutSize(node);
+    Node<E> parent = node.getParent();
+    Node<E> replacement = t.root;
+    replacement.setParent(parent);
+    if (node == root)
+      root = replacement;
+    else if (node == parent.getLeft())
+      parent.setLeft(replacement);
+    else
+      parent.setRight(replacement);
+    if (t.size < 0)
+      size = -1;                          // recount when next asked, rather than now
+    else
+      adjustSize(t.size - removed);
+    modCount++;
+    t.root = null;
+    t.size = 0;
+    t.modCount++;
     E temp = node.getElement();
     node.setElement(null);                // help garbage collection
     node.setLeft(null);
@@ -0,0 +1,310 @@
+package textbook;
+
+/**
+ * A linked binary tree which recycles the nodes of removed positions, rather
+ * than allocating a new node for every element that is added.
+ *
+ * Removed nodes are kept in a bounded pool belonging to the tree, and are handed
+ * out again by createNode. Since a reused node would otherwise be mistaken for
+ * the removed one, positions are not the nodes themselves: each node carries a
+ * generation number, which remove increments, and the position of a node is a
+ * small stamp recording the node and its generation at the time. validate
+ * rejects a stamp whose generation is out of date, so a removed position is
+ * still detected after its node has been reused.
+ */
+public class PooledBinaryTree<E> extends LinkedBinaryTree<E> {
+
+  /** Default number of removed nodes kept for reuse. */
+  public static final int DEFAULT_CAPACITY = 256;
+
+  //---------------- nested PooledNode class ----------------
+  /** Nested static class for a node which may be reused for another element. */
+  protected static class PooledNode<E> extends Node<E> {
+    private int generation = 0;     // the number of times the node has been removed
+    private Stamp<E> position;      // the position of the node in its generation (made when needed)
+
+    /**
+     * Constructs a node with the given element and neighbors.
+     *
+     * @param e  the element to be stored
+     * @param above       reference to a parent node
+     * @param leftChild   reference to a left child node
+     * @param rightChild  reference to a right child node
+     */
+    public PooledNode(E e, Node<E> above, Node<E> leftChild, Node<E> rightChild) {
+      super(e, above, leftChild, rightChild);
+    }
+
+    /** Starts a new generation, so positions of the old one are no longer valid. */
+    public void retire() {
+      generation++;
+      position = null;
+    }
+
+    /** Returns the position of the node in its current generation. */
+    public Stamp<E> getPosition() {
+      if (position == null)
+        position = new Stamp<E>(this);
+      return position;
+    }
+  } //----------- end of nested PooledNode class -----------
+
+  //---------------- nested Stamp class ----------------
+  /** The position of a node in one generation. */
+  protected static class Stamp<E> implements Position<E> {
+    private final PooledNode<E> node;   // the node holding the element
+    private final int generation;       // the generation of the node this position belongs to
+
+    public Stamp(PooledNode<E> n) {
+      node = n;
+      generation = n.generation;
+    }
+
+    /** Returns true if the node has not been removed since this position was made. */
+    public boolean isCurrent() { return generation == node.generation; }
+
+    public E getElement() throws IllegalStateException {
+      if (!isCurrent()) throw new IllegalStateException("Position is no longer valid");
+      return node.getElement();
+    }
+  } //----------- end of nested Stamp class -----------
+
+  // instance variables
+  private Node<E>[] pool;         // circular array of removed nodes, oldest first
+  private int first = 0;          // index of the oldest node in the pool
+  private int pooled = 0;         // number of nodes in the pool
+
+  // constructors
+  /** Constructs an empty binary tree which keeps up to DEFAULT_CAPACITY removed nodes. */
+  public PooledBinaryTree() { this(DEFAULT_CAPACITY); }
+
+  /**
+   * Constructs an empty binary tree which keeps up to the given number of removed nodes.
+   * @param capacity  the largest number of nodes held for reuse
+   * @throws IllegalArgumentException if capacity is negative
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public PooledBinaryTree(int capacity) {
+    if (capacity < 0) throw new IllegalArgumentException("Capacity must not be negative");
+    pool = (Node<E>[]) new Node[capacity];   // safe cast; compiler may give warning
+  }
+
+  /** Factory function to create a new, empty tree of the same kind as this one. */
+  @Override
+  protected LinkedBinaryTree<E> createTree() {
+    return new PooledBinaryTree<E>(pool.length);
+  }
+
+  /** Factory function to create a node storing element e, reusing a removed node if possible. */
+  @Override
+  protected Node<E> createNode(E e, Node<E> parent,
+                                  Node<E> left, Node<E> right) {
+    if (pooled == 0)
+      return new PooledNode<E>(e, parent, left, right);
+    Node<E> node = pool[first];
+    pool[first] = null;
+    first = (first + 1) % pool.length;
+    pooled--;
+    node.setElement(e);
+    node.setParent(parent);
+    node.setLeft(left);
+    node.setRight(right);
+    return node;
+  }
+
+  /** Ends the generation of a defunct node, and adds it to the pool unless the pool is full. */
+  private void recycle(Node<E> node) {
+    ((PooledNode<E>) node).retire();
+    if (pooled == pool.length) return;   // let the garbage collector have it
+    pool[(first + pooled) % pool.length] = node;
+    pooled++;
+  }
+
+  /**
+   * Returns the number of removed nodes currently held for reuse.
+   * @return number of nodes in the pool
+   */
+  public int pooled() { return pooled; }
+
+  /** Discards every node held for reuse. */
+  public void clearPool() {
+    for (int k = 0; k < pooled; k++)
+      pool[(first + k) % pool.length] = null;
+    first = 0;
+    pooled = 0;
+  }
+
+  // nonpublic utilities
+  /**
+   * Verifies that a Position is a current stamp of a node in this tree.
+   *
+   * @param p   a Position (that should belong to this tree)
+   * @return    the underlying Node instance for the position
+   * @throws IllegalArgumentException if an invalid position is detected
+   */
+  @Override
+  protected Node<E> validate(Position<E> p) throws IllegalArgumentException {
+    if (!(p instanceof Stamp))
+      return super.validate(p);         // a node used within the tree itself
+    Stamp<E> stamp = (Stamp<E>) p;      // safe cast
+    if (!stamp.isCurrent())
+      throw new IllegalArgumentException("p is no longer in the tree");
+    return super.validate(stamp.node);
+  }
+
+  /** Returns the position of a node (or null if there is no node). */
+  private Position<E> position(Node<E> node) {
+    return (node == null) ? null : ((PooledNode<E>) node).getPosition();
+  }
+
+  // accessor methods
+  /**
+   * Returns the root Position of the tree (or null if tree is empty).
+   * @return root Position of the tree (or null if tree is empty)
+   */
+  @Override
+  public Position<E> root() {
+    return position(root);
+  }
+
+  /**
+   * Returns the Position of p's parent (or null if p is root).
+   *
+   * @param p    A valid Position within the tree
+   * @return Position of p's parent (or null if p is root)
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   */
+  @Override
+  public Position<E> parent(Position<E> p) throws IllegalArgumentException {
+    return position(validate(p).getParent());
+  }
+
+  /**
+   * Returns the Position of p's left child (or null if no child exists).
+   *
+   * @param p A valid Position within the tree
+   * @return the Position of the left child (or null if no child exists)
+   * @throws IllegalArgumentException if p is not a valid Position for this tree
+   */
+  @Override
+  public Position<E> left(Position<E> p) throws IllegalArgumentException {
+    return position(validate(p).getLeft());
+  }
+
+  /**
+   * Returns the Position of p's right child (or null if no child exists).
+   *
+   * @param p A valid Position within the tree
+   * @return the Position of the right child (or null if no child exists)
+   * @throws IllegalArgumentException if p is not a valid Position for this tree
+   */
+  @Override
+  public Position<E> right(Position<E> p) throws IllegalArgumentException {
+    return position(validate(p).getRight());
+  }
+
+  // update methods
+  /**
+   * Places element e at the root of an empty tree and returns its new Position.
+   *
+   * @param e   the new element
+   * @return the Position of the new element
+   * @throws IllegalStateException if the tree is not empty
+   */
+  @Override
+  public Position<E> addRoot(E e) throws IllegalStateException {
+    return position(validate(super.addRoot(e)));
+  }
+
+  /**
+   * Creates a new left child of Position p storing element e and returns its Position.
+   *
+   * @param p   the Position to the left of which the new element is inserted
+   * @param e   the new element
+   * @return the Position of the new element
+   * @throws IllegalArgumentException if p is not a valid Position for this tree
+   * @throws IllegalArgumentException if p already has a left child
+   */
+  @Override
+  public Position<E> addLeft(Position<E> p, E e) throws IllegalArgumentException {
+    return position(validate(super.addLeft(p, e)));
+  }
+
+  /**
+   * Creates a new right child of Position p storing element e and returns its Position.
+   *
+   * @param p   the Position to the right of which the new element is inserted
+   * @param e   the new element
+   * @return the Position of the new element
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   * @throws IllegalArgumentException if p already has a right child
+   */
+  @Override
+  public Position<E> addRight(Position<E> p, E e) throws IllegalArgumentException {
+    return position(validate(super.addRight(p, e)));
+  }
+
+  /**
+   * Attaches trees t1 and t2, respectively, as the left and right subtree of the
+   * leaf Position p. As a side effect, t1 and t2 are set to empty trees.
+   *
+   * @param p   a leaf of the tree
+   * @param t1  an independent tree whose structure becomes the left child of p
+   * @param t2  an independent tree whose structure becomes the right child of p
+   * @throws IllegalArgumentException if p is not a valid Position for this tree
+   * @throws IllegalArgumentException if p is not a leaf
+   * @throws IllegalArgumentException if t1 or t2 was not built from pooled nodes
+   */
+  @Override
+  public void attach(Position<E> p, LinkedBinaryTree<E> t1,
+                    LinkedBinaryTree<E> t2) throws IllegalArgumentException {
+    if (!isPooled(t1) || !isPooled(t2))
+      throw new IllegalArgumentException("Attached trees must be pooled");
+    super.attach(p, t1, t2);
+  }
+
+  /**
+   * Removes the node at Position p and replaces it with its child, if any.
+   * The removed node is kept for reuse.
+   *
+   * @param p   the relevant Position
+   * @return element that was removed
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   * @throws IllegalArgumentException if p has two children.
+   */
+  @Override
+  public E remove(Position<E> p) throws IllegalArgumentException {
+    Node<E> node = validate(p);
+    E temp = super.remove(p);
+    recycle(node);
+    return temp;
+  }
+
+  /**
+   * Replaces the whole subtree rooted at Position p with the structure of tree t.
+   * The node at p is not kept for reuse, since the nodes below it still refer to
+   * it, and reusing it would lead their stale positions back into the tree. Its
+   * generation still ends, so p is no longer valid.
+   *
+   * @param p   the root of the subtree to replace
+   * @param t   an independent, non-empty tree whose structure replaces the subtree
+   * @return element that was stored at p
+   * @throws IllegalArgumentException if p is not a valid Position for this tree.
+   * @throws IllegalArgumentException if t is empty, is this tree, or was not
+   *         built from pooled nodes.
+   */
+  @Override
+  public E graft(Position<E> p, LinkedBinaryTree<E> t) throws IllegalArgumentException {
+    if (!isPooled(t))
+      throw new IllegalArgumentException("Grafted tree must be pooled");
+    Node<E> node = validate(p);
+    E temp = super.graft(p, t);
+    ((PooledNode<E>) node).retire();
+    return temp;
+  }
+
+  /** Returns true if every node of tree t has a generation. */
+  private static <E> boolean isPooled(LinkedBinaryTree<E> t) {
+    return t.root == null || t.root instanceof PooledNode;
+  }
+} //----------- end of PooledBinaryTree class -----------